@@ -1,20 +1,99 @@
 package fr.holo.interpreter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Random;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongBinaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
 
 import fr.holo.interpreter.JIPL.Error.RuntimeError;
-import fr.holo.interpreter.JIPL.Error.SyntaxError;
+import fr.holo.interpreter.JIPL.Interpreter.BaseFunction;
+import fr.holo.interpreter.JIPL.Interpreter.BitSet;
 import fr.holo.interpreter.JIPL.Interpreter.BuildInFunction;
 import fr.holo.interpreter.JIPL.Interpreter.BuildInObjectClass;
+import fr.holo.interpreter.JIPL.Interpreter.Deque;
+import fr.holo.interpreter.JIPL.Interpreter.Heap;
+import fr.holo.interpreter.JIPL.Interpreter.MapValue;
+import fr.holo.interpreter.JIPL.Interpreter.NativeClass;
+import fr.holo.interpreter.JIPL.Interpreter.NativeFunction;
+import fr.holo.interpreter.JIPL.Interpreter.NativeMath;
 import fr.holo.interpreter.JIPL.Interpreter.Number;
 import fr.holo.interpreter.JIPL.Interpreter.RTResult;
+import fr.holo.interpreter.JIPL.Interpreter.Range;
 import fr.holo.interpreter.JIPL.Interpreter.StringValue;
 import fr.holo.interpreter.JIPL.Interpreter.Value;
 import fr.holo.interpreter.JIPL.Parser.BinaryOperation;
@@ -22,13 +101,18 @@ import fr.holo.interpreter.JIPL.Parser.BreakNode;
 import fr.holo.interpreter.JIPL.Parser.CallNode;
 import fr.holo.interpreter.JIPL.Parser.CaseDataNode;
 import fr.holo.interpreter.JIPL.Parser.ContinueNode;
+import fr.holo.interpreter.JIPL.Parser.ForInNode;
 import fr.holo.interpreter.JIPL.Parser.ForNode;
 import fr.holo.interpreter.JIPL.Parser.FunctionDefNode;
 import fr.holo.interpreter.JIPL.Parser.IfNode;
+import fr.holo.interpreter.JIPL.Parser.InlineArgNode;
+import fr.holo.interpreter.JIPL.Parser.InlinedCallNode;
 import fr.holo.interpreter.JIPL.Parser.InstantiateNode;
 import fr.holo.interpreter.JIPL.Parser.ListNode;
+import fr.holo.interpreter.JIPL.Parser.MapNode;
 import fr.holo.interpreter.JIPL.Parser.NumberNode;
 import fr.holo.interpreter.JIPL.Parser.ObjectDefNode;
+import fr.holo.interpreter.JIPL.Parser.Operator;
 import fr.holo.interpreter.JIPL.Parser.ParseResult;
 import fr.holo.interpreter.JIPL.Parser.PointAccessNode;
 import fr.holo.interpreter.JIPL.Parser.ReturnNode;
@@ -50,86 +134,118 @@ public class JIPL {
 	
 	private static final boolean debug = false, performance = false;
 	
-	private static boolean stop = false;
-	private static boolean tokenError = false;
+	/* To be increased whenever a change of the parser, of the nodes or of the tags of CompiledFile makes the trees in .jiplc files out of date. */
+	public static final int ENGINE_VERSION = 4;
 	
-	private static Scanner scn = new Scanner(System.in);
+	private static final ParseCache parseCache = new ParseCache(256);
 	
-	public static void stop() { stop = true; }
+	private static volatile Metrics metrics = new Metrics();
 	
-	public static RTResult run(File file, Context context) {
-		try {
-			ArrayList<String> lines = new ArrayList<String>();
-			BufferedReader br = new BufferedReader(new FileReader(file));
-			while(true) {
-				String s = br.readLine();
-				if(s == null) break;
-				lines.add(s);
-			}
-			br.close();
-			return run(lines.toArray(new String[lines.size()]), context);
-		} catch (IOException e) { e.printStackTrace(); }
-		return null;
+	/*
+	 * The static methods run on the default engine, bound to the standard streams.
+	 * Use an Engine of your own for other streams, or to stop some scripts and not the others.
+	 */
+	
+	/* Stops all the scripts running on the default engine. */
+	public static void stop() { Engine.getDefault().stop(); }
+	
+	/* Runs the file, from the tree of its .jiplc file when there is one made from the same source. */
+	public static RTResult run(File file, Context context) { return Engine.getDefault().run(file, context); }
+	
+	/* Parses the file and writes its tree to the .jiplc file used by run(File, Context), unless the file does not parse. */
+	public static ParseResult compile(File file) throws IOException {
+		String text = read(file);
+		ParseResult pr = getParseResult(text);
+		if(pr != null && pr.error == null) CompiledFile.write(CompiledFile.of(file), text, pr.node);
+		return pr;
+	}
+	
+	protected static String read(File file) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		while(true) {
+			String s = br.readLine();
+			if(s == null) break;
+			lines.add(s);
+		}
+		br.close();
+		return String.join("\n", lines);
 	}
 	
 	public static RTResult run(ArrayList<String> lines, Context context) { return run(lines.toArray(new String[lines.size()]), context); }
 	
 	public static RTResult run(String[] lines, Context context) { return run(String.join("\n", lines), context); }
 	
-	public static RTResult run(String lines, Context context) {
-		ParseResult pr = getParseResult(lines);
-		
-		if(pr.error != null) {
-			pr.error.call();
-			return null;
-		}
-		
-		Interpreter in = new Interpreter();
-		
-		long m1 = System.currentTimeMillis();
-		
-		RTResult output = (RTResult) in.visit(pr.node, context);
-		if(output.error != null) output.error.call();
-		
-		if(debug) System.out.println(output);
-		
-		if(performance) System.out.println(System.currentTimeMillis()-m1 + " millis.");
-		
-		return output;
-	}
+	public static RTResult run(String lines, Context context) { return Engine.getDefault().run(lines, context); }
 	
-	public static RTResult run(ParseResult pr, Context context) {
-		Interpreter in = new Interpreter();
-		RTResult output = (RTResult) in.visit(pr.node, context);
-		if(output.error != null) output.error.call();
-		return output;
-	}
+	public static RTResult run(ParseResult pr, Context context) { return Engine.getDefault().run(pr, context); }
 	
 	public static ParseResult getParseResult(ArrayList<String> lines) { return getParseResult(lines.toArray(new String[lines.size()])); }
 	
 	public static ParseResult getParseResult(String[] lines) { return getParseResult(String.join("\n", lines)); }
 	
+	/*
+	 * Parse result of the source, shared with the previous calls with the same source through the parse cache.
+	 * It holds the tree alone, not the tokens nor the source, see getEditableParseResult for a result to edit.
+	 */
 	public static ParseResult getParseResult(String lines) {
-		stop = false;
-		tokenError = false;
 		if(lines.isEmpty()) return null;
 		
+		ByteBuffer key = ParseCache.key(lines);
+		ParseResult pr = parseCache.get(key);
+		Events.ParseCache.commit(pr != null, lines.length());
+		if(pr == null) {
+			pr = parse(lines).withoutTokens();
+			parseCache.put(key, pr);
+		}
+		return pr;
+	}
+	
+	/* Parse result of the source keeping its tokens, for the edits of Parser.reparse. It is made anew, out of the parse cache. */
+	public static ParseResult getEditableParseResult(String source) { return source.isEmpty()?null:parse(source); }
+	
+	private static ParseResult parse(String lines) {
 		if(debug) System.out.println("Running " + lines);
 		
-		ArrayList<Token> tokens = Lexer.getTokens(lines);
-		if(debug) for(Token t:tokens) System.out.println("Lexer: "+t);
-		if(tokenError) return null;
+		Events.Parse event = Events.Parse.start();
+		long start = System.nanoTime();
+		TokenBuffer tokens = Lexer.tokenize(lines);
+		long lexed = System.nanoTime();
+		metrics.histogram("lex.nanos").record(lexed-start);
+		if(event != null) event.commit("lex", lines.length());
+		if(debug) for(int i = 0; i < tokens.size(); i++) System.out.println("Lexer: "+tokens.toString(i));
+		if(tokens.error != null) return new ParseResult(null, tokens.error, tokens);
 		
-		ParseResult pr = (ParseResult) new Parser(tokens).parse();
+		if(event != null) event = Events.Parse.start();
+		ParseResult pr = new Parser(tokens).parse();
+		metrics.histogram("parse.nanos").record(System.nanoTime()-lexed);
+		if(event != null) event.commit("parse", lines.length());
 		
 		return pr;
 	}
 	
+	/*
+	 * Parse result of the source of 'previous' once 'removed' characters at 'offset' are replaced by 'inserted', see Parser.reparse.
+	 * 'previous' comes from getEditableParseResult or from an earlier edit.
+	 */
+	public static ParseResult getParseResult(ParseResult previous, int offset, int removed, String inserted) {
+		return Parser.reparse(previous, offset, removed, inserted);
+	}
+	
+	public static ParseCache getParseCache() { return parseCache; }
+	
+	public static Metrics getMetrics() { return metrics; }
+	
+	public static void setMetrics(Metrics metrics) {
+		if(metrics == null) throw new IllegalArgumentException("No metrics");
+		JIPL.metrics = metrics;
+	}
+	
 	public static final Context getGlobalContext() {
 		SymbolTable st = new SymbolTable(null);
 		
-		st.set("PI", new Number(3.1415927f));
-		st.set("PHI", new Number(1.618034f));
+		st.set("PI", new Number(Math.PI));
+		st.set("PHI", new Number(1.618033988749895));
 		st.set("true", Number.TRUE);
 		st.set("false", Number.FALSE);
 		st.set("null", Number.NULL);
@@ -143,1967 +259,5785 @@ public class JIPL {
 				return res.success(Number.NULL);
 			}
 		});
+		st.set("Map", new NativeClass("Map", 0, 0) {
+			protected Object create(Value... args) { return new MapValue(); }
+		});
+		st.set("Deque", new NativeClass("Deque", 0, 0) {
+			protected Object create(Value... args) { return new Deque(); }
+		});
+		st.set("Heap", new NativeClass("Heap", 0, 1) {
+			protected Object create(Value... args) {
+				if(args.length == 0) return new Heap(null);
+				if(args[0] instanceof BaseFunction) return new Heap((BaseFunction) args[0]);
+				return new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed as the comparator of 'Heap'", getSeq());
+			}
+		});
+		st.set("BitSet", new NativeClass("BitSet", 0, 1) {
+			protected Object create(Value... args) {
+				if(args.length == 0) return BitSet.create(0);
+				if(args[0] instanceof Number && ((Number) args[0]).getLongValue() >= 0 && ((Number) args[0]).getLongValue() <= BitSet.MAX_BITS)
+					return BitSet.create((int) ((Number) args[0]).getLongValue());
+				return new Error.RuntimeError("Invalid argument, "+args[0]+" is not allowed as the size of 'BitSet', at most "+BitSet.MAX_BITS, getSeq());
+			}
+		});
 		
 		return new Context("<Global>", null, st);
 	}
 	
 	private static void addBuildInFunctions(SymbolTable st) {
-		st.set("print", new BuildInFunction("print", "text") {
-			protected Object executeFunction(Context context, Value... args) { System.out.println(""+args[0]); return args[0]; }
+		st.set("print", new NativeFunction("print", 1) {
+			protected Object call1(Value text) { Engine.current().out.println(""+text); return text; }
 		});
-		st.set("wait", new BuildInFunction("wait", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) {
-					try { Thread.sleep((long) ((Number)args[0]).value);
-					} catch (InterruptedException e) { e.printStackTrace(); }
-				} else return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'wait'", seq));
-				return res.success(Number.NULL);
+		st.set("wait", new NativeFunction("wait", 1) {
+			protected Object call1(Value value) {
+				if(value instanceof Number) {
+					Execution execution = Execution.current();
+					if(!execution.sleep((long) ((Number) value).value)) return new Error.Stop("Stop.", null);
+					Error limit = execution.poll();
+					if(limit != null) return limit;
+				} else return new Error.RuntimeError("Invalid argument type, "+value+" is not allowed to the function 'wait'", getSeq());
+				return Number.NULL;
 			}
 		});
-		st.set("input", new BuildInFunction("input") {
-			protected Object executeFunction(Context context, Value... args) {
-				String str = scn.next();
+		st.set("input", new NativeFunction("input", 0) {
+			protected Object call0() {
+				String str = Engine.current().nextInput();
+				if(str == null) return new Error.RuntimeError("No more input for 'input'", getSeq());
 				return new StringValue(str);
 			}
 		});
-		st.set("inputNumber", new BuildInFunction("inputNumber") {
-			protected Object executeFunction(Context context, Value... args) {
-				int n = scn.nextInt();
-				return new Number(n);
+		st.set("inputNumber", new NativeFunction("inputNumber", 0) {
+			protected Object call0() {
+				String str = Engine.current().nextInput();
+				if(str == null) return new Error.RuntimeError("No more input for 'inputNumber'", getSeq());
+				try {
+					return new Number(Long.parseLong(str));
+				} catch (NumberFormatException e) {
+					return new Error.RuntimeError("Invalid number '"+str+"' for 'inputNumber'", getSeq());
+				}
+			}
+		});
+		st.set("range", new NativeFunction("range", 2) {
+			protected Object call2(Value start, Value end) {
+				if(start instanceof Number && end instanceof Number)
+					return new Range((Number) start, (Number) end, new Number(((Number) start).compare((Number) end)<0?1:-1));
+				return new Error.RuntimeError("Invalid argument type, "+start+"::"+end+" is not allowed to the function 'range'", getSeq());
+			}
+		});
+		st.set("rangeBy", new NativeFunction("rangeBy", 3) {
+			protected Object callN(Value... args) {
+				if(args[0] instanceof Number && args[1] instanceof Number && args[2] instanceof Number) {
+					if(((Number) args[2]).value == 0) return new Error.RuntimeError("The step of 'rangeBy' can not be 0", getSeq());
+					return new Range((Number) args[0], (Number) args[1], (Number) args[2]);
+				}
+				return new Error.RuntimeError("Invalid argument type, "+args[0]+"::"+args[1]+"::"+args[2]+" is not allowed to the function 'rangeBy'", getSeq());
 			}
 		});
 	}
 
 	private static void addMathFunctions(SymbolTable st) {
-		st.set("sin", new BuildInFunction("sin", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.sin(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'sin'", seq));
-			}
+		st.set("sin", new NativeMath("sin") {
+			protected double apply(double value) { return Math.sin(value); }
 		});
-		st.set("cos", new BuildInFunction("cos", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.cos(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'cos'", seq));
-			}
+		st.set("cos", new NativeMath("cos") {
+			protected double apply(double value) { return Math.cos(value); }
 		});
-		st.set("abs", new BuildInFunction("abs", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.abs(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'abs'", seq));
-			}
+		st.set("abs", new NativeMath("abs") {
+			protected double apply(double value) { return Math.abs(value); }
+			protected Number apply(long value) { return value==Long.MIN_VALUE?null:new Number(Math.abs(value)); }
 		});
-		st.set("floor", new BuildInFunction("floor", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.floor(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'floor'", seq));
-			}
+		st.set("floor", new NativeMath("floor") {
+			protected double apply(double value) { return Math.floor(value); }
+			protected Number apply(long value) { return new Number(value); }
 		});
-		st.set("ceil", new BuildInFunction("ceil", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.ceil(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'ceil'", seq));
-			}
+		st.set("ceil", new NativeMath("ceil") {
+			protected double apply(double value) { return Math.ceil(value); }
+			protected Number apply(long value) { return new Number(value); }
 		});
-		st.set("toRadians", new BuildInFunction("toRadians", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.toRadians(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'toRadians'", seq));
-			}
+		st.set("toRadians", new NativeMath("toRadians") {
+			protected double apply(double value) { return Math.toRadians(value); }
 		});
-		st.set("toDegrees", new BuildInFunction("toDegrees", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				if(args[0] instanceof Number) return res.success(new Number((float)Math.toDegrees(((Number) args[0]).value)));
-				return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'toRadians'", seq));
-			}
+		st.set("toDegrees", new NativeMath("toDegrees") {
+			protected double apply(double value) { return Math.toDegrees(value); }
 		});
-		st.set("random", new BuildInFunction("random") {
-			protected Object executeFunction(Context context, Value... args) {
-				return new Number((float)Math.random());
-			}
+		st.set("random", new NativeFunction("random", 0) {
+			protected Object call0() { return new Number(Math.random()); }
 		});
-		st.set("randomBetween", new BuildInFunction("randomBetween", "min", "max") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
+		st.set("randomBetween", new NativeFunction("randomBetween", 2) {
+			protected Object call2(Value min, Value max) {
+				if(!(min instanceof Number)) return new Error.RuntimeError("Invalid argument type " + min + " in '"+name+"'", null);
+				if(!(max instanceof Number)) return new Error.RuntimeError("Invalid argument type " + max + " in '"+name+"'", null);
 				
-				float[] values = new float[2];
-				for(int i = 0; i < values.length; i++)
-					if(args[i] instanceof Number) values[i] = ((Number) args[i]).value;
-					else return res.failure(new Error.RuntimeError("Invalid argument type " + args[i] + " in '"+name+"'", null));
+				double from = ((Number) min).value, bnd = ((Number) max).value-from;
+				if(bnd < 0) return new Number(0);
 				
-				float bnd = values[1]-values[0];
-				if(bnd < 0) return res.success(new Number(0f));
-				
-				return res.success(new Number(values[0]+new Random().nextInt((int)bnd+1)));
+				int offset = ThreadLocalRandom.current().nextInt((int)bnd+1);
+				return ((Number) min).integer?new Number(((Number) min).longValue+offset):new Number(from+offset);
 			}
 		});
-		st.set("sqrt", new BuildInFunction("sqrt", "value") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				float[] values = new float[1];
-				for(int i = 0; i < values.length; i++)
-					if(args[i] instanceof Number) values[i] = ((Number) args[i]).value;
-					else return res.failure(new Error.RuntimeError("Invalid argument type " + args[i] + " in '"+name+"'", null));
-				return new Number((float)Math.sqrt(values[0]));
-			}
+		st.set("sqrt", new NativeMath("sqrt") {
+			protected double apply(double value) { return Math.sqrt(value); }
 		});
-		st.set("distance", new BuildInFunction("distance", "x1", "y1", "x2", "y2") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				float[] values = new float[4];
+		st.set("distance", new NativeFunction("distance", 4) {
+			protected Object callN(Value... args) {
+				double[] values = new double[4];
 				for(int i = 0; i < values.length; i++)
 					if(args[i] instanceof Number) values[i] = ((Number) args[i]).value;
-					else return res.failure(new Error.RuntimeError("Invalid argument type " + args[i] + " in '"+name+"'", null));
-				return new Number((float)Math.sqrt((values[0]-values[2])*(values[0]-values[2])+(values[1]-values[3])*(values[1]-values[3])));
+					else return new Error.RuntimeError("Invalid argument type " + args[i] + " in '"+name+"'", null);
+				return new Number(Math.sqrt((values[0]-values[2])*(values[0]-values[2])+(values[1]-values[3])*(values[1]-values[3])));
 			}
 		});
-		st.set("modulo", new BuildInFunction("modulo", "value", "diviser") {
-			protected Object executeFunction(Context context, Value... args) {
-				RTResult res = new RTResult();
-				float[] values = new float[2];
-				for(int i = 0; i < values.length; i++)
-					if(args[i] instanceof Number) values[i] = ((Number) args[i]).value;
-					else return res.failure(new Error.RuntimeError("Invalid argument type " + args[i] + " in '"+name+"'", null));
-				return new Number(values[0]%values[1]);
+		st.set("modulo", new NativeFunction("modulo", 2) {
+			protected Object call2(Value value, Value diviser) {
+				if(!(value instanceof Number)) return new Error.RuntimeError("Invalid argument type " + value + " in '"+name+"'", null);
+				if(!(diviser instanceof Number)) return new Error.RuntimeError("Invalid argument type " + diviser + " in '"+name+"'", null);
+				Number a = (Number) value, b = (Number) diviser;
+				if(a.integer && b.integer && b.longValue != 0) return new Number(a.longValue%b.longValue);
+				return new Number(a.value%b.value);
 			}
 		});
 	}
 
-	public abstract static class Error {
-		private static final boolean show = debug;
+	/*
+	 * Runs scripts with its own input and output streams. Every run is an Execution with its own stop flag,
+	 * so any number of scripts can run at once, on one engine or on several. The scripts share nothing
+	 * but their parse trees, which are never modified, as long as each run is given a context of its own.
+	 */
+	public static class Engine {
 		
-		public static class IllegalCharError extends Error {
-			
-			public IllegalCharError(String text, Sequence seq) { super("Illegal Character Error", text, seq); if(show) System.err.println("> "+text); }
-
-			public void call(String... args) {
-				System.err.println(name + " : Illegal character '" + text + "'" + (seq!=null?" at " + seq.toString():""));
-			}
-			
-		}
+		private static final Engine DEFAULT = new Engine(System.in, System.out, System.err);
 		
-		public static class ExpectedCharError extends Error {
-
-			public ExpectedCharError(String text, Sequence seq) { super("Expected Character Error", text, seq); if(show) System.err.println("> "+text); }
-
-			public void call(String... args) {
-				System.err.println(name + " : Expected character '" + text + "'" + (seq!=null?" at " + seq.toString():""));
-			}
-			
+		protected final Scanner input;
+		protected final PrintStream out, err;
+		private final ReentrantLock inputLock = new ReentrantLock();
+		private final Set<Execution> running = ConcurrentHashMap.newKeySet();
+		
+		public Engine(InputStream in, PrintStream out, PrintStream err) {
+			this.input = new Scanner(in);
+			this.out = out;
+			this.err = err;
 		}
 		
-		public static class SyntaxError extends Error {
-			
-			public SyntaxError(String text, Sequence seq) { super("Syntax Error", text, seq); if(show) System.err.println("> "+text); }
-
-			public void call(String... args) {
-				System.err.println(name + " : " + getText() + (seq!=null?" at " + seq.toString():""));
-			}
-			
+		public static Engine getDefault() { return DEFAULT; }
+		
+		/* Engine of the script running on this thread, the default engine outside of any. */
+		public static Engine current() {
+			Execution execution = Execution.CURRENT.get();
+			return execution==null?DEFAULT:execution.engine;
 		}
 		
-		public static class RuntimeError extends Error {
-
-			public RuntimeError(String text, Sequence seq) { super("Runtime Error", text, seq); if(show) System.err.println("> "+text); }
-
-			public void call(String... args) {
-				System.err.println(name + " : " + text + (seq!=null?" at " + seq.toString():""));
-			}
-			
+		public PrintStream getOut() { return out; }
+		public PrintStream getErr() { return err; }
+		
+		/*
+		 * Next word of the input, or null at its end. Guarded by a lock rather than a monitor,
+		 * so that a virtual thread blocked on the input does not pin its carrier thread.
+		 */
+		protected String nextInput() {
+			inputLock.lock();
+			try {
+				return input.hasNext()?input.next():null;
+			} finally { inputLock.unlock(); }
 		}
 		
-		public static class Stop extends Error {
-
-			public Stop(String text, Sequence seq) {
-				super("Stop", text, seq);
-			}
-
-			public void call(String... args) {}
-			
+		/* Stops every script running on this engine, the others are left alone. */
+		public void stop() {
+			for(Execution execution:running)
+				execution.stop();
 		}
 		
-		protected String name, text;
-		protected Sequence seq;
+		public RTResult run(File file, Context context) { return run(file, context, new Execution(this, Limits.NONE)); }
 		
-		public Error(String name, String text, Sequence seq) {
-			this.name = name;
-			this.text = text;
-			this.seq = seq;
+		public RTResult run(File file, Context context, Execution execution) {
+			try {
+				String text = read(file);
+				ParseResult pr = CompiledFile.read(CompiledFile.of(file), text);
+				return run(pr!=null?pr:getParseResult(text), context, execution.scriptId==null?execution.named(file.getName()):execution);
+			} catch (IOException e) { e.printStackTrace(err); }
+			return null;
 		}
 		
-		public String getName() { return name; }
-		public String getText() { return text; }
-		public Sequence getSeq() { return seq; }
+		public RTResult run(String source, Context context) { return run(getParseResult(source), context); }
 		
-		public abstract void call(String... args);
+		public RTResult run(String source, Context context, Limits limits) { return run(getParseResult(source), context, limits); }
 		
-	}
-	
-	public static class Lexer {
+		public RTResult run(ParseResult pr, Context context) { return run(pr, context, Limits.NONE); }
 		
-		public static final String DIGITS = "0123456789";
-		public static final String LETTERS = "azertyuiopqsdfghjklmwxcvbnAZERTYUIOPQSDFGHJKLMWXCVBN";
-		public static final String LEGAL_CHARS = LETTERS+DIGITS+"_";
+		public RTResult run(ParseResult pr, Context context, Limits limits) { return run(pr, context, new Execution(this, limits)); }
 		
-		public static final String[] KEYWORDS = {"var", "and", "or", "not", "if", "elseif", "else", "for", "to", "by", "while", "function", "return", "continue", "break", "new", "object"};
+		/* Returns null when the source does not parse, after reporting the error. */
+		public RTResult run(ParseResult pr, Context context, Execution execution) {
+			if(pr == null) return null;
+			RTResult output = execute(pr, context, execution);
+			return pr.error!=null?null:output;
+		}
 		
-		public static ArrayList<Token> getTokens(String text) {
-			ArrayList<Token> list = new ArrayList<JIPL.Token>();
-			char[] chars = text.toCharArray();
-			int line = 0;
-			for(int i = 0; i < chars.length; i++) {
-				char c = chars[i];
-				
-				if(tokenError) return list;
-				
-				if(c == ' ') continue;
-				else if(c == '\t') continue;
-				else if(c == '\n') { line++; list.add(new Token(TokenType.NLINE, new Sequence(line, i, 1))); }
-				else if(c == ';') list.add(new Token(TokenType.NLINE, new Sequence(line, i, 1)));
-				else if(c == '(') list.add(new Token(TokenType.LPAREN, new Sequence(line, i, 1)));
-				else if(c == ')') list.add(new Token(TokenType.RPAREN, new Sequence(line, i, 1)));
-				else if(c == '[') list.add(new Token(TokenType.LSQUARE, new Sequence(line, i, 1)));
-				else if(c == ']') list.add(new Token(TokenType.RSQUARE, new Sequence(line, i, 1)));
-				else if(c == '.') list.add(new Token(TokenType.POINT, new Sequence(line, i, 1)));
-				else if(c == '{') list.add(new Token(TokenType.LBRA, new Sequence(line, i, 1)));
-				else if(c == '}') list.add(new Token(TokenType.RBRA, new Sequence(line, i, 1)));
-				else if(c == '+') list.add(new Token(TokenType.PLUS, new Sequence(line, i, 1)));
-				else if(c == '-') list.add(new Token(TokenType.MINUS, new Sequence(line, i, 1)));
-				else if(c == '*') list.add(new Token(TokenType.MULT, new Sequence(line, i, 1)));
-				else if(c == '/') list.add(new Token(TokenType.DIV, new Sequence(line, i, 1)));
-				else if(c == ':') list.add(new Token(TokenType.COLON, new Sequence(line, i, 1)));
-				else if(c == ',') list.add(new Token(TokenType.COMMAS, new Sequence(line, i, 1)));
-				else if(c == '^') list.add(new Token(TokenType.POW, new Sequence(line, i, 1)));
-				else if(c == '!') i = _not_equals(chars, i, line, list);
-				else if(c == '=') i = _comparator(chars, i, TokenType.DOUBLE_EQUALS, TokenType.EQUALS, line, list);			
-				else if(c == '<') i = _comparator(chars, i, TokenType.LESS_EQUALS, TokenType.LESS, line, list);
-				else if(c == '>') i = _comparator(chars, i, TokenType.GREATER_EQUALS, TokenType.GREATER, line, list);
-				else if(c == '"') i = _string(chars, i, line, list);
-				else if(c == '#') i = _comment(chars, i, line, list);
-				else if(DIGITS.contains(c+"")) 	i = _number(chars, i, line, list);
-				else if(LETTERS.contains(c+"")) i = _identifier(chars, i, line, list);
-				else {
-					new Error.IllegalCharError(c+"", new Sequence(0, i, 1)).call();
-					tokenError = true;
-					return list;
+		protected RTResult execute(ParseResult pr, Context context, Execution execution) { return execute(pr, context, execution, true); }
+		
+		protected RTResult execute(final ParseResult pr, final Context context, Execution execution, boolean report) {
+			return execute(execution, report, new Task() {
+				protected RTResult run(Interpreter interpreter) {
+					if(pr.error != null) return new RTResult().failure(pr.error);
+					return visit(interpreter, pr.getInlinedNode(), context);
 				}
-			}
-			list.add(new Token(TokenType.END_OF_CODE, new Sequence(line, text.length(), 0)));
-			return list;
+			});
 		}
 		
-		private static int _comment(char[] chars, int i, int line, ArrayList<Token> list) {
-			while(true) {
-				i++;
-				if(i >= chars.length || chars[i] == '\n') break;
-			}
-			return i;
-		}
-
-		private static int _number(char[] chars, int index, int line, ArrayList<Token> list) {
-			TokenType tt = TokenType.INT;
-			String str = "";
-			for(int i = index; i < chars.length; i++) {
-				char c = chars[i];
-				if(DIGITS.contains(c+"")) str += c;
-				else if(c == '.' && tt == TokenType.INT) {
-					str += c;
-					tt = TokenType.FLOAT;
-				} else {
-					list.add(new Token(tt, new Sequence(line, index, str.length()), str));
-					return i-1;
-				}
-			}
-			list.add(new Token(tt, new Sequence(line, index, str.length()), str));
-			return chars.length;
+		/* Work done as a run, on the interpreter of the run. */
+		protected abstract static class Task {
+			protected abstract RTResult run(Interpreter interpreter);
 		}
 		
-		private static int _string(char[] chars, int index, int line, ArrayList<Token> list) {
-			String str = "";
-			boolean escapingNext = false;
-			
-			HashMap<Character, String> map = new HashMap<Character, String>();
-			map.put('n', "\n");
-			map.put('t', "\t");
-			map.put('\\', "\\");
-			
-			for(int i = index+1; i < chars.length; i++) {
-				char c = chars[i];
+		/*
+		 * Runs the task as 'execution', registered so that stop() reaches it, counted in the metrics and recorded by Flight Recorder.
+		 * The error ending the run is printed on the error stream when 'report' is set, else only returned, as for a Batch.
+		 */
+		protected RTResult execute(Execution execution, boolean report, Task task) {
+			Execution outer = Execution.CURRENT.get();
+			Execution.CURRENT.set(execution);
+			execution.thread = Thread.currentThread();
+			running.add(execution);
+			execution.begin();
+			Metrics metrics = JIPL.metrics;
+			Metrics.Counter active = metrics.counter("executions.active");
+			active.increment();
+			Events.Execution event = Events.Execution.start();
+			Error error = null;
+			try {
+				long m1 = System.currentTimeMillis(), start = System.nanoTime();
 				
-				if(escapingNext) {
-					str+=map.getOrDefault(c, c+"");
-					escapingNext = false;
-					continue;
-				}
+				RTResult output = task.run(new Interpreter());
+				if(output.error != null && report) output.error.call();
 				
-				if(c == '\\') {
-					escapingNext = true;
-					continue;
-				}
+				long time = System.nanoTime()-start;
+				metrics.histogram("execution.nanos").record(time);
+				if(execution.scriptId != null) metrics.script(execution.scriptId).record(time);
+				metrics.counter("execution.nodes").add(execution.nodes);
+				metrics.counter("execution.calls").add(execution.calls);
+				if(output.error != null) metrics.counter("errors."+output.error.getClass().getSimpleName()).increment();
+				error = output.error;
 				
-				if(c == '"' || c == '\n') {
-					list.add(new Token(TokenType.STRING, new Sequence(line, index, str.length()), str));
-					return i;
-				} else str+=c;
-				escapingNext = false;
-			}
-			
-			return chars.length;
-		}
-		
-		private static int _identifier(char[] chars, int index, int line, ArrayList<Token> list) {
-			String str = "";
-			for(int i = index; i < chars.length; i++) {
-				char c = chars[i];
-				if(LEGAL_CHARS.contains(c+"")) str += c;
-				else break;
-			}
-			for(String s:KEYWORDS) {
-				if(str.equals(s)) {
-					list.add(new Token(TokenType.KEYWORD, new Sequence(line, index, str.length()), str));
-					return index+str.length()-1;
+				if(debug && report) out.println(output);
+				
+				if(performance && report) out.println(System.currentTimeMillis()-m1 + " millis.");
+				
+				return output;
+			} finally {
+				active.add(-1);
+				if(event != null) {
+					event.commit(execution, error);
+					if(error != null) Events.ScriptError.commit(execution, error);
 				}
+				execution.end();
+				running.remove(execution);
+				execution.thread = null;
+				if(outer == null) Execution.CURRENT.remove();
+				else Execution.CURRENT.set(outer);
 			}
-			
-			list.add(new Token(TokenType.IDENTIFIER, new Sequence(line, index, str.length()), str));
-			return index+str.length()-1;
 		}
 		
-		private static int _not_equals(char[] chars, int index, int line, ArrayList<Token> list) {
-			if(index < chars.length-1 && chars[index+1] == '=') {
-				list.add(new Token(TokenType.NOT_EQUALS, new Sequence(line, index, 2)));
-				return index+1;
-			} else {
-				new Error.IllegalCharError("!", new Sequence(line, index, 1)).call();
-				tokenError = true;
-				return index+1;
+		/* Visits the tree, a recursion with no end stopping it as any limit does once the stack is unwound back to here. */
+		protected static RTResult visit(Interpreter interpreter, Object node, Context context) {
+			try {
+				return (RTResult) interpreter.visit(node, context);
+			} catch (StackOverflowError e) {
+				return new RTResult().failure(new Error.LimitExceeded("Calls nested too deeply", null));
 			}
 		}
 		
-		private static int _comparator(char[] chars, int index, TokenType e, TokenType ne, int line, ArrayList<Token> list) {
-			if(index < chars.length-1) {
-				if(chars[index+1]=='=') {
-					list.add(new Token(e, new Sequence(line, index, 2)));
-					return index+1;
-				}
-				
-				list.add(new Token(ne, new Sequence(line, index, 1)));
-				return index;
-			}
-			list.add(new Token(ne, new Sequence(line, index, 1)));
-			return index;
-		}
 	}
 	
-	public static class Parser {
+	/* A single run of a script, visible from the interpreters working for it through Execution.current(). */
+	public static final class Execution {
+		
+		private static final ThreadLocal<Execution> CURRENT = new ThreadLocal<Execution>();
+		/* Used by the interpreters created outside of any run, it is never stopped. */
+		private static final Execution DETACHED = new Execution(Engine.DEFAULT, Limits.NONE);
+		
+		/* Number of steps between two readings of the clock. */
+		private static final int CLOCK_INTERVAL = 1024;
+		
+		/* Approximate sizes charged to the runs for what they create, in bytes. */
+		protected static final int CONTEXT_BYTES = 160, OBJECT_BYTES = 16, LIST_BYTES = 56, REFERENCE_BYTES = 8, STRING_BYTES = 64;
+		
+		protected final Engine engine;
+		protected final Limits limits;
+		private volatile boolean stopped = false;
+		private volatile Thread thread = null;
+		private long steps = 0, deadline = 0, allocated = 0, peak = 0;
+		protected long nodes = 0, calls = 0;
+		protected String scriptId = null;
+		protected Profiler profiler = null;
+		private volatile Profiler.Frame top = null;
+		
+		/* A run of the engine within the limits, to be given to Engine.run once and read after. */
+		public Execution(Engine engine, Limits limits) {
+			this.engine = engine;
+			this.limits = limits;
+		}
 		
-		protected static class NumberNode {
-			
-			protected Token token;
-			public NumberNode(Token token) { this.token = token; }
-			
-			public String toString() { return token.toString(); }
-			
+		public static Execution current() {
+			Execution execution = CURRENT.get();
+			return execution==null?DETACHED:execution;
 		}
 		
-		protected static class StringNode {
-			protected Token token;
-			
-			public StringNode(Token token) { this.token = token; }
-			public String toString() { return token.toString(); }
+		public Engine getEngine() { return engine; }
+		public Limits getLimits() { return limits; }
+		public boolean isStopped() { return stopped; }
+		
+		/* Loop iterations and function calls made so far. */
+		public long getSteps() { return steps; }
+		
+		/* Nodes visited and functions called so far, inlined ones included. */
+		public long getNodes() { return nodes; }
+		public long getCalls() { return calls; }
+		
+		/* Names the run in the metrics, its execution time being recorded under "execution.nanos.<id>" as well, see Metrics.script. */
+		public Execution named(String scriptId) {
+			this.scriptId = scriptId;
+			return this;
 		}
 		
-		protected static class BinaryOperation {
-			
-			protected Object leftNode, rightNode;
-			protected Token operationToken;
-			
-			public BinaryOperation(Object leftNode, Token operationToken, Object rightNode) { 
-				this.leftNode = leftNode;
-				this.operationToken = operationToken;
-				this.rightNode = rightNode;
-			}
-			
-			public String toString() { return "("+leftNode+", "+operationToken+", "+rightNode+")"; }
-			
+		public String getScriptId() { return scriptId; }
+		
+		/*
+		 * Approximate bytes of the lists, strings, objects and contexts created so far, spent from the allocation budget of the run.
+		 * Nothing is given back when they are collected, so that a long run creating many short lived values spends it all the same.
+		 */
+		public long getAllocatedBytes() { return allocated; }
+		
+		/*
+		 * Most bytes of heap seen in use during the run, read when it starts and ends and at every reading of the clock.
+		 * The heap is the one of the whole JVM, shared with whatever runs at the same time.
+		 */
+		public long getPeakBytes() { return peak; }
+		
+		/*
+		 * Charges the run for 'bytes' already allocated. Going over the budget does not undo the allocation,
+		 * the run ends at its next step instead, so only small values are charged so.
+		 */
+		protected void allocate(long bytes) {
+			if(this == DETACHED) return;
+			allocated += bytes;
 		}
 		
-		protected static class UnaryOperation {
-			
-			protected Token operationToken;
-			protected Object node;
-			
-			public UnaryOperation(Token operationToken, Object node) {
-				this.operationToken = operationToken;
-				this.node = node;
-			}
-			
-			public String toString() { return "(" + operationToken + ", " + node + ")"; }
-			
+		/*
+		 * Charges the run for 'bytes' about to be allocated, or returns the error ending the run
+		 * with nothing charged if they would go over its budget, in which case they must not be allocated.
+		 */
+		protected Error reserve(long bytes) {
+			if(this == DETACHED) return null;
+			if(bytes > limits.allocationBudget-allocated) return new Error.LimitExceeded("More than " + limits.allocationBudget + " bytes allocated", null);
+			allocated += bytes;
+			return null;
 		}
 		
-		protected static class IfNode {
-			
-			protected ArrayList<CaseDataNode> cases;
-			protected CaseDataNode else_case;
-			
-			public IfNode(ArrayList<CaseDataNode> cases, CaseDataNode else_case) {
-				this.cases = cases;
-				this.else_case = else_case;
-			}
-			
-			public String toString() { return "(" + cases + " >> " + else_case + ")"; }
-			
+		private void sample() {
+			if(this == DETACHED) return;
+			Runtime runtime = Runtime.getRuntime();
+			long used = runtime.totalMemory()-runtime.freeMemory();
+			if(used > peak) peak = used;
 		}
 		
-		protected static class VarAssignNode {
-			
-			protected Token name;
-			protected Object expression;
-			
-			public VarAssignNode(Token name, Object expression) {
-				this.name = name;
-				this.expression = expression;
-			}
-			
-			public String toString() { return "Assign::"+name+"::"+expression; }
+		public void stop() {
+			if(this == DETACHED) return;
+			stopped = true;
+			Thread t = thread;
+			if(t != null) LockSupport.unpark(t);
 		}
 		
-		protected static class VarAccessNode {
-			protected Token name;
-			public VarAccessNode(Token name) { this.name = name; }
-			public String toString() { return "Access::"+name; }
+		/*
+		 * Starts the steps, the allocation budget and the clock over, for the next of the rows of a Batch sharing the run,
+		 * each of them being held within the limits as a run of its own would be.
+		 */
+		protected void restart() {
+			steps = 0;
+			allocated = 0;
+			if(limits.timeoutMillis > 0) deadline = System.nanoTime()+limits.timeoutMillis*1000000L;
 		}
 		
-		protected static class VarModifyNode {
-			protected Token name;
-			protected Object node;
-			public VarModifyNode(Token name, Object node) {
-				this.name = name;
-				this.node = node;
+		/* Starts the clock of the run and joins its cancellation token. */
+		private void begin() {
+			if(limits.timeoutMillis > 0) deadline = System.nanoTime()+limits.timeoutMillis*1000000L;
+			if(limits.token != null) limits.token.add(this);
+			sample();
+			if(profiler != null) {
+				top = new Profiler.Frame("<main>", 0, null);
+				profiler.attach(this);
 			}
-			
-			public String toString() { return "Modify{"+name+" = "+node+"}"; }
 		}
 		
-		protected static class ForNode {
-			
-			protected Token varName;
-			protected Object start, end, step, body;
-			protected boolean shouldReturnNull;
-			
-			public ForNode(Token varName, Object startNode, Object endNode, Object stepNode, Object bodyNode, boolean shouldReturnNull) {
-				this.varName = varName;
-				this.start = startNode;
-				this.end = endNode;
-				this.step = stepNode;
-				this.body = bodyNode;
-				this.shouldReturnNull = shouldReturnNull;
+		private void end() {
+			sample();
+			if(limits.token != null) limits.token.remove(this);
+			if(profiler != null) {
+				profiler.detach(this);
+				top = null;
 			}
-			
-			public String toString() { return "For"+"::"+body; }
-			
 		}
 		
-		protected static class WhileNode {
-			
-			protected Object condition, body;
-			protected boolean shouldReturnNull;
-			
-			public WhileNode(Object condition, Object bodyNode, boolean shouldReturnNull) {
-				this.condition = condition;
-				this.body = bodyNode;
-				this.shouldReturnNull = shouldReturnNull;
-			}
-			
-			public String toString() { return "While::"+condition+"::"+body; }
-			
+		/* Samples this run with the profiler, to be set before the run starts. */
+		public Execution profile(Profiler profiler) {
+			this.profiler = profiler;
+			return this;
+		}
+		
+		/* Frames of the shadow stack, kept only while profiling. */
+		protected void enter(BaseFunction function) {
+			top = new Profiler.Frame(function.name, function.position==Sequence.NONE?0:Sequence.line(function.position), top);
+		}
+		protected void exit() { top = top.parent; }
+		
+		/* Line of the statement the top frame is running. */
+		protected void at(Object node) {
+			int line = Profiler.line(node);
+			if(line > 0) top.line = line;
+		}
+		
+		/*
+		 * Counts a step of the run, called by the interpreter on every loop iteration and function call.
+		 * Returns the error ending the run, or null to go on. The clock is only read every CLOCK_INTERVAL steps.
+		 */
+		protected Error check() {
+			if(++steps > limits.maxSteps) return new Error.LimitExceeded("More than " + limits.maxSteps + " steps", null);
+			if(steps % CLOCK_INTERVAL == 0) return poll();
+			if(allocated > limits.allocationBudget) return new Error.LimitExceeded("More than " + limits.allocationBudget + " bytes allocated", null);
+			return stopped?new Error.Stop("Stop.", null):null;
+		}
+		
+		/* Same as check without counting a step, and always reading the clock. */
+		protected Error poll() {
+			if(stopped) return new Error.Stop("Stop.", null);
+			sample();
+			if(allocated > limits.allocationBudget) return new Error.LimitExceeded("More than " + limits.allocationBudget + " bytes allocated", null);
+			if(deadline != 0 && System.nanoTime()-deadline > 0) return new Error.LimitExceeded("More than " + limits.timeoutMillis + " millis", null);
+			return null;
+		}
+		
+		/*
+		 * Parks the thread for the given time rather than sleeping, so that stop() can wake it up,
+		 * and a virtual thread gives its carrier back while waiting. Returns false if stopped or interrupted.
+		 * The wait ends early at the deadline of the run.
+		 */
+		public boolean sleep(long millis) {
+			long deadline = System.nanoTime()+millis*1000000L, left;
+			if(this.deadline != 0 && this.deadline-deadline < 0) deadline = this.deadline;
+			while(!stopped && (left = deadline-System.nanoTime()) > 0) {
+				if(Thread.currentThread().isInterrupted()) return false;
+				LockSupport.parkNanos(this, left);
+			}
+			return !stopped;
+		}
+		
+	}
+	
+	/*
+	 * Bounds of a run: the steps it may take, loop iterations and function calls, the time it may last from its start,
+	 * the bytes it may allocate and a token cancelling it from outside. A run going over them ends with a LimitExceeded error.
+	 * The bytes are an allocation budget, not a bound of the memory held at once: every value created spends from it for good.
+	 */
+	public static final class Limits {
+		
+		public static final Limits NONE = new Limits(0, 0, 0, null);
+		
+		protected final long maxSteps, timeoutMillis, allocationBudget;
+		protected final CancellationToken token;
+		
+		public Limits(long maxSteps, long timeoutMillis, CancellationToken token) { this(maxSteps, timeoutMillis, 0, token); }
+		
+		/* A bound of 0 or less is no bound, the token may be null. */
+		public Limits(long maxSteps, long timeoutMillis, long allocationBudget, CancellationToken token) {
+			this.maxSteps = maxSteps>0?maxSteps:Long.MAX_VALUE;
+			this.timeoutMillis = Math.max(0, timeoutMillis);
+			this.allocationBudget = allocationBudget>0?allocationBudget:Long.MAX_VALUE;
+			this.token = token;
+		}
+		
+		public long getMaxSteps() { return maxSteps; }
+		public long getTimeoutMillis() { return timeoutMillis; }
+		public long getAllocationBudget() { return allocationBudget; }
+		public CancellationToken getToken() { return token; }
+		
+	}
+	
+	/* Stops every run given it through their Limits, the ones running when cancelled and the ones started after. */
+	public static final class CancellationToken {
+		
+		private final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+		private volatile boolean cancelled = false;
+		
+		public boolean isCancelled() { return cancelled; }
+		
+		public void cancel() {
+			cancelled = true;
+			for(Execution execution:executions)
+				execution.stop();
+		}
+		
+		private void add(Execution execution) {
+			executions.add(execution);
+			if(cancelled) execution.stop();
+		}
+		
+		private void remove(Execution execution) { executions.remove(execution); }
+		
+	}
+	
+	/*
+	 * Sampling profiler of the runs given it through Execution.profile. A thread of its own reads their shadow stacks
+	 * of function names and lines at a fixed interval, the interpreter only keeps them while a run is profiled.
+	 * Calls inlined by the Inliner are counted in their caller.
+	 */
+	public static final class Profiler implements AutoCloseable {
+		
+		/* Frame of the shadow stack, immutable but for the line, so that the sampler can walk it while the run goes on. */
+		protected static final class Frame {
+			
+			protected final String name;
+			protected final Frame parent;
+			protected volatile int line;
+			
+			protected Frame(String name, int line, Frame parent) {
+				this.name = name;
+				this.line = line;
+				this.parent = parent;
+			}
+			
+			public String toString() { return line>0?name+":"+line:name; }
+			
+		}
+		
+		private final long intervalNanos;
+		private final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+		private final HashMap<String, long[]> stacks = new HashMap<String, long[]>(), functions = new HashMap<String, long[]>(), lines = new HashMap<String, long[]>();
+		private final Thread sampler;
+		private volatile boolean closed = false;
+		private long samples = 0;
+		
+		public Profiler(long intervalMillis) {
+			this.intervalNanos = Math.max(1, intervalMillis)*1000000L;
+			this.sampler = new Thread(new Runnable() {
+				public void run() {
+					while(!closed) {
+						LockSupport.parkNanos(intervalNanos);
+						for(Execution execution:executions)
+							sample(execution.top);
+					}
+				}
+			}, "jipl-profiler");
+			sampler.setDaemon(true);
+			sampler.start();
+		}
+		
+		protected void attach(Execution execution) { executions.add(execution); }
+		protected void detach(Execution execution) { executions.remove(execution); }
+		
+		/* Counts a stack: in the total of every function and line on it once, and in the self of its top. */
+		private synchronized void sample(Frame top) {
+			if(top == null) return;
+			ArrayList<String> names = new ArrayList<String>(), labels = new ArrayList<String>();
+			for(Frame f = top; f != null; f = f.parent) {
+				names.add(f.name);
+				labels.add(f.toString());
+			}
+			
+			StringBuilder stack = new StringBuilder();
+			for(int i = labels.size()-1; i >= 0; i--) {
+				if(stack.length() > 0) stack.append(';');
+				stack.append(labels.get(i));
+			}
+			count(stacks, stack.toString(), 0);
+			
+			count(functions, names.get(0), 0);
+			count(lines, labels.get(0), 0);
+			for(int i = 0; i < names.size(); i++) {
+				if(names.indexOf(names.get(i)) == i) count(functions, names.get(i), 1);
+				if(labels.indexOf(labels.get(i)) == i) count(lines, labels.get(i), 1);
+			}
+			samples++;
+		}
+		
+		private static void count(HashMap<String, long[]> map, String key, int index) {
+			long[] counts = map.get(key);
+			if(counts == null) map.put(key, counts = new long[2]);
+			counts[index]++;
+		}
+		
+		public synchronized long getSamples() { return samples; }
+		
+		/* Stacks in the collapsed format of flame graphs, one "<main>;f:3;g:7 count" per line. */
+		public synchronized String toCollapsed() {
+			StringBuilder sb = new StringBuilder();
+			for(Map.Entry<String, long[]> e:stacks.entrySet())
+				sb.append(e.getKey()).append(' ').append(e.getValue()[0]).append('\n');
+			return sb.toString();
+		}
+		
+		/* Self and total time of the functions then of the lines, in millis, the slowest first. */
+		public synchronized String report() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(samples).append(" samples every ").append(intervalNanos/1000000L).append(" millis\n");
+			report(sb, "function", functions);
+			report(sb, "line", lines);
+			return sb.toString();
+		}
+		
+		private void report(StringBuilder sb, String title, HashMap<String, long[]> counts) {
+			ArrayList<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(counts.entrySet());
+			entries.sort(new Comparator<Map.Entry<String, long[]>>() {
+				public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) { return Long.compare(b.getValue()[0], a.getValue()[0]); }
+			});
+			sb.append(String.format("%10s %10s  %s%n", "self", "total", title));
+			for(Map.Entry<String, long[]> e:entries)
+				sb.append(String.format("%10d %10d  %s%n", e.getValue()[0]*intervalNanos/1000000L, e.getValue()[1]*intervalNanos/1000000L, e.getKey()));
+		}
+		
+		public synchronized void reset() {
+			stacks.clear();
+			functions.clear();
+			lines.clear();
+			samples = 0;
+		}
+		
+		/* Stops sampling, the results are kept. */
+		public void close() {
+			closed = true;
+			LockSupport.unpark(sampler);
+		}
+		
+		/* Line of a statement, 0 when the node does not know it. */
+		protected static int line(Object node) {
+			int position = Sequence.NONE;
+			if(node instanceof NumberNode) position = ((NumberNode) node).position;
+			else if(node instanceof StringNode) position = ((StringNode) node).position;
+			else if(node instanceof BinaryOperation) position = ((BinaryOperation) node).position;
+			else if(node instanceof UnaryOperation) position = ((UnaryOperation) node).position;
+			else if(node instanceof VarAccessNode) position = ((VarAccessNode) node).position;
+			else if(node instanceof VarAssignNode) position = ((VarAssignNode) node).position;
+			else if(node instanceof VarModifyNode) position = ((VarModifyNode) node).position;
+			else if(node instanceof FunctionDefNode) position = ((FunctionDefNode) node).position;
+			else if(node instanceof CallNode) return line(((CallNode) node).nodeToCall);
+			else if(node instanceof InlinedCallNode) return line(((InlinedCallNode) node).call);
+			else if(node instanceof PointAccessNode) return line(((PointAccessNode) node).nodes[0]);
+			else if(node instanceof ForNode) return line(((ForNode) node).start);
+			else if(node instanceof ForInNode) return line(((ForInNode) node).iterable);
+			else if(node instanceof WhileNode) return line(((WhileNode) node).condition);
+			else if(node instanceof ReturnNode) return line(((ReturnNode) node).toReturn);
+			else if(node instanceof IfNode && !((IfNode) node).cases.isEmpty()) return line(((IfNode) node).cases.get(0).condition);
+			return position==Sequence.NONE?0:Sequence.line(position);
+		}
+		
+	}
+	
+	/*
+	 * Runs scripts as tasks, each on a thread of its own: a virtual thread when the runtime has them (Java 21 and later),
+	 * a pooled platform thread otherwise. Cancelling a future stops its script.
+	 */
+	public static final class ScriptExecutor implements AutoCloseable {
+		
+		private final ExecutorService executor;
+		private final boolean virtual;
+		
+		public ScriptExecutor() {
+			ExecutorService executor = null;
+			boolean virtual = true;
+			try {
+				executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				virtual = false;
+				executor = Executors.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "jipl-script-"+count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			this.executor = executor;
+			this.virtual = virtual;
+		}
+		
+		public ScriptExecutor(ExecutorService executor) {
+			this.executor = executor;
+			this.virtual = false;
+		}
+		
+		public boolean isVirtual() { return virtual; }
+		
+		public Future<RTResult> submit(String source, Context context) { return submit(Engine.getDefault(), source, context); }
+		
+		public Future<RTResult> submit(Engine engine, String source, Context context) { return submit(engine, source, context, Limits.NONE); }
+		
+		public Future<RTResult> submit(Engine engine, String source, Context context, Limits limits) {
+			ParseResult pr = getParseResult(source);
+			if(pr == null) pr = ParseResult.success(new ListNode(new ArrayList<Object>()));
+			return submit(engine, pr, context, limits);
+		}
+		
+		public Future<RTResult> submit(Engine engine, ParseResult pr, Context context) { return submit(engine, pr, context, Limits.NONE); }
+		
+		public Future<RTResult> submit(Engine engine, ParseResult pr, Context context, Limits limits) { return submit(new Execution(engine, limits), pr, context); }
+		
+		/* The result holds the error of the script, if any, parse errors included. */
+		public Future<RTResult> submit(final Execution execution, final ParseResult pr, final Context context) {
+			final Metrics.Counter queued = metrics.counter("executions.queued");
+			final AtomicBoolean dequeued = new AtomicBoolean();
+			queued.increment();
+			FutureTask<RTResult> task = new FutureTask<RTResult>(new Callable<RTResult>() {
+				public RTResult call() {
+					if(dequeued.compareAndSet(false, true)) queued.add(-1);
+					return execution.engine.execute(pr, context, execution);
+				}
+			}) {
+				public boolean cancel(boolean mayInterruptIfRunning) {
+					boolean cancelled = super.cancel(false);
+					execution.stop();
+					if(cancelled && dequeued.compareAndSet(false, true)) queued.add(-1);
+					return cancelled;
+				}
+			};
+			executor.execute(task);
+			return task;
+		}
+		
+		/* Lets the submitted scripts finish, see ExecutorService.shutdown. */
+		public void close() { executor.shutdown(); }
+		
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException { return executor.awaitTermination(timeout, unit); }
+		
+	}
+	
+	/*
+	 * Serves runs of scripts to the clients of a loopback port, so that a run pays neither the start of a JVM nor a cold JIT,
+	 * and finds the trees of the sources already run in the parse cache. Only the user running the daemon may use it: it writes
+	 * a random token to a file only that user can read, ~/.jipl/daemon-<port>.token, and drops the clients not sending it.
+	 * The files it runs are the ones under its root directory, the one it was started from by default.
+	 *
+	 *   java -cp . fr.holo.interpreter.JIPL$Daemon serve [port]
+	 *   java -cp . fr.holo.interpreter.JIPL$Daemon run <file> [port]
+	 *   java -cp . fr.holo.interpreter.JIPL$Daemon eval <source> [port]
+	 *
+	 * Both ways, a frame is a type byte, a length and as many bytes. The client sends the token in an AUTH frame, a FILE or
+	 * a SOURCE frame, then its input in INPUT frames ended by an empty one, while the daemon streams OUT and ERR frames back
+	 * and ends with an EXIT frame whose length is the status: 0 when the script ran without error, 1 otherwise.
+	 */
+	public static final class Daemon implements AutoCloseable {
+		
+		public static final int DEFAULT_PORT = 7391;
+		
+		private static final byte AUTH = 'a', FILE = 'f', SOURCE = 's', INPUT = 'i', OUT = 'o', ERR = 'e', EXIT = 'x';
+		private static final int TOKEN_BYTES = 32;
+		/* Largest request or input frame received, a client asking for more being refused before anything is allocated. */
+		private static final int MAX_FRAME = 1<<24;
+		
+		private final ServerSocket server;
+		private final Limits limits;
+		private final Path root, tokenFile;
+		private final byte[] token = new byte[TOKEN_BYTES];
+		private final ExecutorService connections;
+		private final Set<Execution> running = ConcurrentHashMap.newKeySet();
+		
+		public Daemon(int port, Limits limits) throws IOException { this(port, limits, Paths.get("")); }
+		
+		/*
+		 * Starts serving on the port of the loopback address, 0 for any free port, every run being held within the limits
+		 * and the files run being the ones under the root.
+		 */
+		public Daemon(int port, Limits limits, Path root) throws IOException {
+			this.root = root.toRealPath();
+			this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			this.limits = limits;
+			new SecureRandom().nextBytes(token);
+			try {
+				this.tokenFile = writeToken(tokenFile(server.getLocalPort()), token);
+			} catch (IOException e) {
+				server.close();
+				throw e;
+			}
+			this.connections = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "jipl-daemon-"+count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			new Thread(new Runnable() {
+				public void run() { accept(); }
+			}, "jipl-daemon").start();
+		}
+		
+		public int getPort() { return server.getLocalPort(); }
+		public Path getRoot() { return root; }
+		
+		/* File of the token of the daemon of the port, in a directory of the home of the user. */
+		public static Path tokenFile(int port) { return Paths.get(System.getProperty("user.home"), ".jipl", "daemon-"+port+".token"); }
+		
+		/* Writes the token to a new file readable by the owner only, in a directory open to the owner only, where the file system has permissions. */
+		private static Path writeToken(Path file, byte[] token) throws IOException {
+			Path directory = file.getParent();
+			boolean posix = Files.getFileStore(Files.exists(directory)?directory:directory.getParent()).supportsFileAttributeView("posix");
+			if(posix) {
+				if(!Files.exists(directory)) Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				else Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+				Files.deleteIfExists(file);
+				Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			} else {
+				Files.createDirectories(directory);
+				Files.deleteIfExists(file);
+				Files.createFile(file);
+			}
+			Files.write(file, HexFormat.of().formatHex(token).getBytes(StandardCharsets.US_ASCII));
+			return file;
+		}
+		
+		private static byte[] readToken(int port) throws IOException {
+			Path file = tokenFile(port);
+			if(!Files.exists(file)) throw new IOException("No daemon serving on port "+port+", "+file+" is missing");
+			return HexFormat.of().parseHex(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim());
+		}
+		
+		private void accept() {
+			while(!server.isClosed()) {
+				try {
+					final Socket socket = server.accept();
+					connections.execute(new Runnable() {
+						public void run() { serve(socket); }
+					});
+				} catch (IOException e) {
+					if(!server.isClosed()) e.printStackTrace();
+				}
+			}
+		}
+		
+		private void serve(Socket socket) {
+			try(Socket s = socket) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+				
+				/* Nothing is read nor allocated for a client before it proves it may read the token. */
+				s.setSoTimeout(10000);
+				if(in.readByte() != AUTH || in.readInt() != TOKEN_BYTES) return;
+				byte[] auth = new byte[TOKEN_BYTES];
+				in.readFully(auth);
+				if(!MessageDigest.isEqual(auth, token)) return;
+				s.setSoTimeout(0);
+				
+				byte type = in.readByte();
+				int length = in.readInt();
+				if(length < 0 || length > MAX_FRAME) {
+					byte[] message = ("Request of "+length+" bytes refused, "+MAX_FRAME+" at most\n").getBytes(StandardCharsets.UTF_8);
+					frame(out, ERR, message, 0, message.length);
+					exit(out, 1);
+					return;
+				}
+				byte[] request = new byte[length];
+				in.readFully(request);
+				
+				FrameOutputStream stdout = new FrameOutputStream(out, OUT), stderr = new FrameOutputStream(out, ERR);
+				PrintStream pout = new PrintStream(new BufferedOutputStream(stdout), true, "UTF-8"), perr = new PrintStream(new BufferedOutputStream(stderr), true, "UTF-8");
+				Engine engine = new Engine(new FrameInputStream(in), pout, perr);
+				Execution execution = new Execution(engine, limits);
+				stdout.execution = stderr.execution = execution;
+				
+				running.add(execution);
+				RTResult result;
+				try {
+					String text = new String(request, StandardCharsets.UTF_8);
+					File file = type==FILE?file(text):null;
+					if(type == FILE && file == null) {
+						perr.println("No file "+text+" under "+root);
+						result = null;
+					} else if(type == FILE) result = engine.run(file, getGlobalContext(), execution);
+					else if(type == SOURCE) result = engine.run(getParseResult(text), getGlobalContext(), execution);
+					else {
+						perr.println("Unknown request '"+(char) type+"'");
+						result = null;
+					}
+				} catch (RuntimeException | StackOverflowError e) {
+					/* A failure of the engine ends this request alone, the client being told of it like of any failed run. */
+					perr.println("Internal error: "+e);
+					result = null;
+				} finally { running.remove(execution); }
+				
+				pout.flush();
+				perr.flush();
+				exit(out, result==null||result.error!=null?1:0);
+			} catch (IOException e) {}
+		}
+		
+		private static void exit(DataOutputStream out, int status) throws IOException {
+			synchronized(out) {
+				out.writeByte(EXIT);
+				out.writeInt(status);
+				out.flush();
+			}
+		}
+		
+		/* The file of the path if it is under the root once its links are followed, else null. */
+		private File file(String path) {
+			try {
+				Path file = root.resolve(path).toRealPath();
+				return file.startsWith(root) && Files.isRegularFile(file)?file.toFile():null;
+			} catch (IOException | InvalidPathException e) {
+				return null;
+			}
+		}
+		
+		/* Stops serving, the scripts running are stopped as well. */
+		public void close() throws IOException {
+			server.close();
+			for(Execution execution:running)
+				execution.stop();
+			connections.shutdown();
+			Files.deleteIfExists(tokenFile);
+		}
+		
+		/* Runs the file on the daemon of the port, reading the file there, and returns the status of the run. The file must be under the root of the daemon. */
+		public static int runFile(int port, File file, InputStream in, PrintStream out, PrintStream err) throws IOException {
+			return request(port, FILE, file.getAbsolutePath(), in, out, err);
+		}
+		
+		public static int runSource(int port, String source, InputStream in, PrintStream out, PrintStream err) throws IOException {
+			return request(port, SOURCE, source, in, out, err);
+		}
+		
+		private static int request(int port, byte type, String text, final InputStream in, PrintStream out, PrintStream err) throws IOException {
+			byte[] token = readToken(port);
+			try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+				final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				
+				frame(output, AUTH, token, 0, token.length);
+				byte[] request = text.getBytes(StandardCharsets.UTF_8);
+				frame(output, type, request, 0, request.length);
+				
+				Thread pump = new Thread(new Runnable() {
+					public void run() {
+						byte[] buffer = new byte[8192];
+						try {
+							int n;
+							while((n = in.read(buffer)) > 0) frame(output, INPUT, buffer, 0, n);
+							frame(output, INPUT, buffer, 0, 0);
+						} catch (IOException e) {}
+					}
+				}, "jipl-daemon-input");
+				pump.setDaemon(true);
+				pump.start();
+				
+				while(true) {
+					byte frame = input.readByte();
+					int length = input.readInt();
+					if(frame == EXIT) {
+						out.flush();
+						err.flush();
+						return length;
+					}
+					byte[] bytes = new byte[length];
+					input.readFully(bytes);
+					(frame==ERR?err:out).write(bytes, 0, length);
+					(frame==ERR?err:out).flush();
+				}
+			}
+		}
+		
+		private static void frame(DataOutputStream out, byte type, byte[] bytes, int offset, int length) throws IOException {
+			synchronized(out) {
+				out.writeByte(type);
+				out.writeInt(length);
+				out.write(bytes, offset, length);
+				out.flush();
+			}
+		}
+		
+		/* Output of a run sent to the client, which stops the run when it goes away. */
+		private static final class FrameOutputStream extends OutputStream {
+			
+			private final DataOutputStream out;
+			private final byte type;
+			private volatile Execution execution;
+			
+			private FrameOutputStream(DataOutputStream out, byte type) {
+				this.out = out;
+				this.type = type;
+			}
+			
+			public void write(int b) throws IOException { write(new byte[] {(byte) b}, 0, 1); }
+			
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					frame(out, type, b, off, len);
+				} catch (IOException e) {
+					if(execution != null) execution.stop();
+					throw e;
+				}
+			}
+			
+		}
+		
+		/* Input of a run, received from the client, the end of the input being an empty frame or the end of the connection. */
+		private static final class FrameInputStream extends InputStream {
+			
+			private final DataInputStream in;
+			private byte[] frame = new byte[0];
+			private int position = 0;
+			private boolean ended = false;
+			
+			private FrameInputStream(DataInputStream in) { this.in = in; }
+			
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1)==-1?-1:b[0]&0xFF;
+			}
+			
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(len == 0) return 0;
+				while(position == frame.length) {
+					if(ended) return -1;
+					if(in.readByte() != INPUT) throw new IOException("Input expected");
+					int length = in.readInt();
+					if(length < 0 || length > MAX_FRAME) throw new IOException("Input frame of "+length+" bytes refused");
+					frame = new byte[length];
+					in.readFully(frame);
+					position = 0;
+					ended = frame.length == 0;
+				}
+				int n = Math.min(len, frame.length-position);
+				System.arraycopy(frame, position, b, off, n);
+				position += n;
+				return n;
+			}
+			
+		}
+		
+		public static void main(String[] args) throws IOException {
+			if(args.length >= 1 && args.length <= 2 && args[0].equals("serve")) {
+				Daemon daemon = new Daemon(args.length>1?Integer.parseInt(args[1]):DEFAULT_PORT, Limits.NONE);
+				System.out.println("Serving "+daemon.getRoot()+" on port "+daemon.getPort());
+			} else if(args.length >= 2 && args.length <= 3 && (args[0].equals("run") || args[0].equals("eval"))) {
+				int port = args.length>2?Integer.parseInt(args[2]):DEFAULT_PORT;
+				System.exit(args[0].equals("run")?runFile(port, new File(args[1]), System.in, System.out, System.err):runSource(port, args[1], System.in, System.out, System.err));
+			} else {
+				System.err.println("Usage: serve [port] | run <file> [port] | eval <source> [port]");
+				System.exit(2);
+			}
+		}
+		
+	}
+	
+	/*
+	 * One program evaluated over many rows of inputs, as a formula per record. The program is parsed once, and every worker
+	 * keeps its global context and the context of its rows, whose inputs are set again for each row while the variables
+	 * a row declared are only cleared when there are some. Each row is a run of its own, held within the limits.
+	 * The outputs are columns: the value of the last statement of each row, then the named variables.
+	 */
+	public static final class Batch {
+		
+		/* Rows evaluated by a worker of the pool, at least. */
+		private static final int CHUNK = 1024;
+		
+		private final Engine engine;
+		private final ParseResult pr;
+		private final String[] inputs, outputs;
+		private final Limits limits;
+		
+		public Batch(String source, String[] inputs, String... outputs) { this(Engine.getDefault(), getParseResult(source), Limits.NONE, inputs, outputs); }
+		
+		public Batch(Engine engine, ParseResult pr, Limits limits, String[] inputs, String... outputs) {
+			if(pr == null) throw new IllegalArgumentException("Nothing to evaluate");
+			this.engine = engine;
+			this.pr = pr;
+			this.limits = limits;
+			this.inputs = inputs.clone();
+			this.outputs = outputs.clone();
+		}
+		
+		public String[] getInputs() { return inputs.clone(); }
+		public String[] getOutputs() { return outputs.clone(); }
+		
+		/* Evaluates the rows on this thread, the values of a row following the order of the inputs. */
+		public Result evaluate(Value[][] rows) {
+			Result result = new Result(outputs, rows.length);
+			evaluate(rows, 0, rows.length, result);
+			return result;
+		}
+		
+		/* Evaluates the rows on the pool, each worker taking rows by chunks. */
+		public Result evaluate(Value[][] rows, ForkJoinPool pool) {
+			Result result = new Result(outputs, rows.length);
+			pool.invoke(new Chunk(rows, 0, rows.length, result));
+			return result;
+		}
+		
+		private final class Chunk extends RecursiveAction {
+			
+			private static final long serialVersionUID = 1L;
+			
+			private final Value[][] rows;
+			private final int from, to;
+			private final Result result;
+			
+			private Chunk(Value[][] rows, int from, int to, Result result) {
+				this.rows = rows;
+				this.from = from;
+				this.to = to;
+				this.result = result;
+			}
+			
+			protected void compute() {
+				if(to-from <= CHUNK) {
+					evaluate(rows, from, to, result);
+					return;
+				}
+				int middle = (from+to) >>> 1;
+				invokeAll(new Chunk(rows, from, middle, result), new Chunk(rows, middle, to, result));
+			}
+			
+		}
+		
+		private void evaluate(final Value[][] rows, final int from, final int to, final Result result) {
+			if(pr.error != null) {
+				for(int i = from; i < to; i++) result.errors[i] = pr.error;
+				return;
+			}
+			final Object node = pr.getInlinedNode();
+			final boolean statements = node instanceof ListNode;
+			final Context global = getGlobalContext();
+			final Execution execution = new Execution(engine, limits);
+			
+			/* A single run for the rows, so that Engine.stop reaches them and the metrics count them without a run of their own each. */
+			engine.execute(execution, false, new Engine.Task() {
+				protected RTResult run(Interpreter interpreter) {
+					for(int i = from; i < to; i++) {
+						Value[] row = rows[i];
+						if(row.length != inputs.length) throw new IllegalArgumentException("Row "+i+" has "+row.length+" values for "+inputs.length+" inputs");
+						execution.restart();
+						/* A context of its own for every row, so that nothing a row assigns is seen by the next one. */
+						Context context = new Context("<Row>", global, execution);
+						for(int j = 0; j < inputs.length; j++) context.symbolTable.set(inputs[j], row[j]);
+						
+						RTResult res = Engine.visit(interpreter, node, context);
+						if(res.error != null) {
+							result.errors[i] = res.error;
+							metrics.counter("errors."+res.error.getClass().getSimpleName()).increment();
+							Events.ScriptError.commit(execution, res.error);
+							continue;
+						}
+						Object value = res.value;
+						if(res.returnValue != null) value = res.returnValue;
+						else if(statements) {
+							ArrayList<Object> values = ((Interpreter.List) value).elements;
+							value = values.isEmpty()?Number.NULL:values.get(values.size()-1);
+						}
+						result.columns[0][i] = value instanceof Value?(Value) value:Number.NULL;
+						for(int j = 0; j < outputs.length; j++) {
+							Object output = context.symbolTable.get(outputs[j]);
+							result.columns[j+1][i] = output instanceof Value?(Value) output:Number.NULL;
+						}
+					}
+					return new RTResult().success(Number.NULL);
+				}
+			});
+			metrics.counter("batch.rows").add(to-from);
+		}
+		
+		/* Outputs of a batch by column, a row that failed having its error and nulls for outputs. */
+		public static final class Result {
+			
+			private final String[] outputs;
+			private final Value[][] columns;
+			private final Error[] errors;
+			
+			private Result(String[] outputs, int rows) {
+				this.outputs = outputs;
+				this.columns = new Value[outputs.length+1][rows];
+				this.errors = new Error[rows];
+			}
+			
+			public int size() { return errors.length; }
+			
+			/* Value of the last statement of each row. */
+			public Value[] getValues() { return columns[0]; }
+			
+			public Value[] getColumn(String output) {
+				for(int i = 0; i < outputs.length; i++)
+					if(outputs[i].equals(output)) return columns[i+1];
+				throw new IllegalArgumentException("No output "+output);
+			}
+			
+			public Error getError(int row) { return errors[row]; }
+			
+			public int getErrorCount() {
+				int count = 0;
+				for(Error error:errors)
+					if(error != null) count++;
+				return count;
+			}
+			
+		}
+		
+	}
+	
+	/*
+	 * Arithmetic expression over float columns, evaluated an operation at a time over whole columns rather than a row at a time.
+	 * Numbers, the columns, the global constants, the operators and the math functions are compiled, the rest of the expression
+	 * is left to the interpreter, row by row. The operations go through the Vector API when VectorLanes can be loaded, that is
+	 * when it is compiled and run with --add-modules jdk.incubator.vector, and through plain loops otherwise.
+	 * Unlike the interpreter, a row dividing by zero or failing in the interpreted part gets NaN rather than an error.
+	 */
+	public static final class Kernel {
+		
+		private static final Lanes LANES = Lanes.load();
+		
+		private final String[] columns;
+		private final Op root;
+		
+		private Kernel(String[] columns, Op root) {
+			this.columns = columns;
+			this.root = root;
+		}
+		
+		/* Compiles an expression made of a single statement, its variables being the columns, named in the order they are given. */
+		public static Kernel compile(String expression, String... columns) {
+			ParseResult pr = getParseResult(expression);
+			if(pr == null) throw new IllegalArgumentException("Nothing to compile");
+			if(pr.error != null) throw new IllegalArgumentException(pr.error.getName()+" : "+pr.error.getText());
+			Object node = pr.node;
+			if(node instanceof ListNode) {
+				if(((ListNode) node).elementNodes.size() != 1) throw new IllegalArgumentException("Not a single expression: "+expression);
+				node = ((ListNode) node).elementNodes.get(0);
+			}
+			columns = columns.clone();
+			return new Kernel(columns, new Compiler(columns, getGlobalContext()).compile(node));
+		}
+		
+		/* Whether the operations go through the Vector API. */
+		public static boolean isVectorized() { return LANES.getClass() != Lanes.class; }
+		
+		public String[] getColumns() { return columns.clone(); }
+		
+		/* Values of the expression, the columns being given in the order of their names, all of the same length. */
+		public float[] evaluate(float[]... values) {
+			if(values.length != columns.length) throw new IllegalArgumentException(values.length+" columns given for "+columns.length);
+			int n = values.length==0?1:values[0].length;
+			for(float[] column:values)
+				if(column.length != n) throw new IllegalArgumentException("Columns of different lengths");
+			float[] result = root.run(values, n);
+			return root instanceof Column?result.clone():result;
+		}
+		
+		/* Operation of the compiled expression, giving a column of n values. */
+		private abstract static class Op {
+			abstract float[] run(float[][] columns, int n);
+		}
+		
+		private static final class Column extends Op {
+			private final int index;
+			Column(int index) { this.index = index; }
+			float[] run(float[][] columns, int n) { return columns[index]; }
+		}
+		
+		private static final class Constant extends Op {
+			private final float value;
+			Constant(float value) { this.value = value; }
+			float[] run(float[][] columns, int n) {
+				float[] out = new float[n];
+				Arrays.fill(out, value);
+				return out;
+			}
+		}
+		
+		private static final class Binary extends Op {
+			private final Op left, right;
+			private final Operator operator;
+			Binary(Op left, Operator operator, Op right) {
+				this.left = left;
+				this.operator = operator;
+				this.right = right;
+			}
+			float[] run(float[][] columns, int n) {
+				float[] a = left.run(columns, n), b = right.run(columns, n), out = new float[n];
+				LANES.binary(operator, a, b, out, 0, n);
+				return out;
+			}
+		}
+		
+		private static final class Unary extends Op {
+			private final Op operand;
+			private final Operator operator;
+			Unary(Operator operator, Op operand) {
+				this.operator = operator;
+				this.operand = operand;
+			}
+			float[] run(float[][] columns, int n) {
+				float[] a = operand.run(columns, n), out = new float[n];
+				LANES.unary(operator, a, out, 0, n);
+				return out;
+			}
+		}
+		
+		private static final class Modulo extends Op {
+			private final Op left, right;
+			Modulo(Op left, Op right) {
+				this.left = left;
+				this.right = right;
+			}
+			float[] run(float[][] columns, int n) {
+				float[] a = left.run(columns, n), b = right.run(columns, n), out = new float[n];
+				LANES.modulo(a, b, out, 0, n);
+				return out;
+			}
+		}
+		
+		private static final class Apply extends Op {
+			private final String function;
+			private final Op operand;
+			Apply(String function, Op operand) {
+				this.function = function;
+				this.operand = operand;
+			}
+			float[] run(float[][] columns, int n) {
+				float[] a = operand.run(columns, n), out = new float[n];
+				LANES.math(function, a, out, 0, n);
+				return out;
+			}
+		}
+		
+		/* Part of the expression the kernel can not compile, run by the interpreter for every row. */
+		private static final class Interpreted extends Op {
+			private final Batch batch;
+			Interpreted(Object node, String[] columns) {
+				ArrayList<Object> statements = new ArrayList<Object>();
+				statements.add(node);
+				this.batch = new Batch(Engine.getDefault(), ParseResult.success(new ListNode(statements)), Limits.NONE, columns);
+			}
+			float[] run(float[][] columns, int n) {
+				float[] out = new float[n];
+				Value[][] rows = new Value[Math.min(n, Batch.CHUNK)][columns.length];
+				for(int from = 0; from < n; from += rows.length) {
+					if(n-from < rows.length) rows = Arrays.copyOf(rows, n-from);
+					for(int i = 0; i < rows.length; i++)
+						for(int j = 0; j < columns.length; j++) rows[i][j] = new Number(columns[j][from+i]);
+					Value[] values = batch.evaluate(rows).getValues();
+					for(int i = 0; i < rows.length; i++) out[from+i] = values[i] instanceof Number?(float) ((Number) values[i]).value:Float.NaN;
+				}
+				return out;
+			}
+		}
+		
+		private static final class Compiler {
+			
+			private final String[] columns;
+			private final Context global;
+			
+			Compiler(String[] columns, Context global) {
+				this.columns = columns;
+				this.global = global;
+			}
+			
+			Op compile(Object node) {
+				if(node instanceof NumberNode) return new Constant((float) ((NumberNode) node).value.value);
+				if(node instanceof VarAccessNode) {
+					String name = ((VarAccessNode) node).name;
+					for(int i = 0; i < columns.length; i++)
+						if(columns[i].equals(name)) return new Column(i);
+					Object value = global.symbolTable.symbols.get(name);
+					if(value instanceof Number) return new Constant((float) ((Number) value).value);
+				} else if(node instanceof BinaryOperation) {
+					BinaryOperation op = (BinaryOperation) node;
+					if(op.operation != Operator.NOT) return new Binary(compile(op.leftNode), op.operation, compile(op.rightNode));
+				} else if(node instanceof UnaryOperation) {
+					UnaryOperation op = (UnaryOperation) node;
+					if(op.operation == Operator.PLUS) return compile(op.node);
+					if(op.operation == Operator.MINUS || op.operation == Operator.NOT) return new Unary(op.operation, compile(op.node));
+				} else if(node instanceof CallNode && ((CallNode) node).nodeToCall instanceof VarAccessNode) {
+					CallNode call = (CallNode) node;
+					String name = ((VarAccessNode) call.nodeToCall).name;
+					if(call.args.length == 1 && Lanes.MATH.contains(name)) return new Apply(name, compile(call.args[0]));
+					if(call.args.length == 2 && name.equals("modulo")) return new Modulo(compile(call.args[0]), compile(call.args[1]));
+				}
+				return new Interpreted(node, columns);
+			}
+			
+		}
+		
+		/*
+		 * Operations over the values of columns from index 'from' to 'to' (excluded), as plain loops. VectorLanes overrides them with the Vector API,
+		 * the results staying those of the interpreter's Number, in float precision.
+		 */
+		protected static class Lanes {
+			
+			protected static final Set<String> MATH = Set.of("sin", "cos", "abs", "floor", "ceil", "sqrt", "toRadians", "toDegrees");
+			
+			/* Difference under which two numbers are equal, as in Number.isEqualTo. */
+			protected static final float EPSILON = 0.00025f;
+			
+			static Lanes load() {
+				try {
+					return (Lanes) Class.forName("fr.holo.interpreter.VectorLanes").getDeclaredConstructor().newInstance();
+				} catch (ReflectiveOperationException | LinkageError e) {
+					return new Lanes();
+				}
+			}
+			
+			protected void binary(Operator operator, float[] a, float[] b, float[] out, int from, int to) {
+				switch(operator) {
+					case PLUS: for(int i = from; i < to; i++) out[i] = a[i]+b[i]; break;
+					case MINUS: for(int i = from; i < to; i++) out[i] = a[i]-b[i]; break;
+					case MULT: for(int i = from; i < to; i++) out[i] = a[i]*b[i]; break;
+					case DIV: for(int i = from; i < to; i++) out[i] = b[i]==0?Float.NaN:a[i]/b[i]; break;
+					case EQUALS: for(int i = from; i < to; i++) out[i] = Math.abs(a[i]-b[i])<EPSILON?1:0; break;
+					case NOT_EQUALS: for(int i = from; i < to; i++) out[i] = Math.abs(a[i]-b[i])<EPSILON?0:1; break;
+					case LESS: for(int i = from; i < to; i++) out[i] = a[i]<b[i]?1:0; break;
+					case GREATER: for(int i = from; i < to; i++) out[i] = a[i]>b[i]?1:0; break;
+					case LESS_EQUALS: for(int i = from; i < to; i++) out[i] = a[i]<=b[i]?1:0; break;
+					case GREATER_EQUALS: for(int i = from; i < to; i++) out[i] = a[i]>=b[i]?1:0; break;
+					case AND: for(int i = from; i < to; i++) out[i] = Math.abs(a[i])>=EPSILON&&Math.abs(b[i])>=EPSILON?1:0; break;
+					case OR: for(int i = from; i < to; i++) out[i] = Math.abs(a[i])>=EPSILON||Math.abs(b[i])>=EPSILON?1:0; break;
+					default: throw new IllegalArgumentException("Not a binary operator "+operator);
+				}
+			}
+			
+			protected void unary(Operator operator, float[] a, float[] out, int from, int to) {
+				if(operator == Operator.MINUS) for(int i = from; i < to; i++) out[i] = a[i]*-1;
+				else if(operator == Operator.NOT) for(int i = from; i < to; i++) out[i] = a[i]==0?1:0;
+				else throw new IllegalArgumentException("Not a unary operator "+operator);
+			}
+			
+			protected void modulo(float[] a, float[] b, float[] out, int from, int to) {
+				for(int i = from; i < to; i++) out[i] = a[i]%b[i];
+			}
+			
+			protected void math(String function, float[] a, float[] out, int from, int to) {
+				switch(function) {
+					case "sin": for(int i = from; i < to; i++) out[i] = (float) Math.sin(a[i]); break;
+					case "cos": for(int i = from; i < to; i++) out[i] = (float) Math.cos(a[i]); break;
+					case "abs": for(int i = from; i < to; i++) out[i] = Math.abs(a[i]); break;
+					case "floor": for(int i = from; i < to; i++) out[i] = (float) Math.floor(a[i]); break;
+					case "ceil": for(int i = from; i < to; i++) out[i] = (float) Math.ceil(a[i]); break;
+					case "sqrt": for(int i = from; i < to; i++) out[i] = (float) Math.sqrt(a[i]); break;
+					case "toRadians": for(int i = from; i < to; i++) out[i] = (float) Math.toRadians(a[i]); break;
+					case "toDegrees": for(int i = from; i < to; i++) out[i] = (float) Math.toDegrees(a[i]); break;
+					default: throw new IllegalArgumentException("Not a math function "+function);
+				}
+			}
+			
+		}
+		
+	}
+	
+	public abstract static class Error {
+		private static final boolean show = debug;
+		
+		public static class IllegalCharError extends Error {
+			
+			public IllegalCharError(String text, Sequence seq) { super("Illegal Character Error", text, seq); if(show) System.err.println("> "+text); }
+
+			public void call(String... args) {
+				Engine.current().err.println(name + " : Illegal character '" + text + "'" + (seq!=null?" at " + seq.toString():""));
+			}
+			
+		}
+		
+		public static class ExpectedCharError extends Error {
+
+			public ExpectedCharError(String text, Sequence seq) { super("Expected Character Error", text, seq); if(show) System.err.println("> "+text); }
+
+			public void call(String... args) {
+				Engine.current().err.println(name + " : Expected character '" + text + "'" + (seq!=null?" at " + seq.toString():""));
+			}
+			
+		}
+		
+		public static class SyntaxError extends Error {
+			
+			public SyntaxError(String text, Sequence seq) { super("Syntax Error", text, seq); if(show) System.err.println("> "+text); }
+
+			public void call(String... args) {
+				Engine.current().err.println(name + " : " + getText() + (seq!=null?" at " + seq.toString():""));
+			}
+			
+		}
+		
+		public static class RuntimeError extends Error {
+
+			public RuntimeError(String text, Sequence seq) { super("Runtime Error", text, seq); if(show) System.err.println("> "+text); }
+
+			public void call(String... args) {
+				Engine.current().err.println(name + " : " + text + (seq!=null?" at " + seq.toString():""));
+			}
+			
+		}
+		
+		/* Raised when a run goes over one of its Limits. */
+		public static class LimitExceeded extends Error {
+
+			public LimitExceeded(String text, Sequence seq) { super("Limit Exceeded", text, seq); }
+
+			public void call(String... args) {
+				Engine.current().err.println(name + " : " + text + (seq!=null?" at " + seq.toString():""));
+			}
+			
+		}
+		
+		public static class Stop extends Error {
+
+			public Stop(String text, Sequence seq) {
+				super("Stop", text, seq);
+			}
+
+			public void call(String... args) {}
+			
+		}
+		
+		protected String name, text;
+		protected Sequence seq;
+		
+		public Error(String name, String text, Sequence seq) {
+			this.name = name;
+			this.text = text;
+			this.seq = seq;
+		}
+		
+		public String getName() { return name; }
+		public String getText() { return text; }
+		public Sequence getSeq() { return seq; }
+		
+		public abstract void call(String... args);
+		
+	}
+	
+	/*
+	 * Bounded cache of parse results keyed by the SHA-256 of their source, shared by all threads, so that the sources themselves are not kept.
+	 * Lookups never lock: each entry records when it was last used, and a put over the capacity evicts the least recently used entries.
+	 * Parse trees are never modified once built, so a cached tree can be run by several executions at once.
+	 */
+	public static final class ParseCache {
+		
+		private static final class Entry {
+			
+			final ParseResult pr;
+			volatile long used = System.nanoTime();
+			
+			Entry(ParseResult pr) { this.pr = pr; }
+			
+		}
+		
+		private final ConcurrentHashMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<ByteBuffer, Entry>();
+		/* Held by the thread evicting, the others leave the eviction to it. */
+		private final ReentrantLock eviction = new ReentrantLock();
+		private final int capacity;
+		private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+		
+		public ParseCache(int capacity) {
+			if(capacity < 0) throw new IllegalArgumentException("Negative capacity "+capacity);
+			this.capacity = capacity;
+		}
+		
+		public static ByteBuffer key(String source) { return ByteBuffer.wrap(CompiledFile.hash(source)); }
+		
+		public ParseResult get(String source) { return get(key(source)); }
+		
+		public ParseResult get(ByteBuffer key) {
+			Entry entry = entries.get(key);
+			if(entry == null) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			entry.used = System.nanoTime();
+			return entry.pr;
+		}
+		
+		public void put(String source, ParseResult pr) { put(key(source), pr); }
+		
+		public void put(ByteBuffer key, ParseResult pr) {
+			if(capacity == 0) return;
+			entries.put(key, new Entry(pr));
+			if(entries.size() > capacity && eviction.tryLock()) {
+				try {
+					while(entries.size() > capacity) evictOldest();
+				} finally { eviction.unlock(); }
+			}
+		}
+		
+		private void evictOldest() {
+			Map.Entry<ByteBuffer, Entry> oldest = null;
+			for(Map.Entry<ByteBuffer, Entry> e:entries.entrySet())
+				if(oldest == null || e.getValue().used - oldest.getValue().used < 0) oldest = e;
+			if(oldest != null && entries.remove(oldest.getKey(), oldest.getValue())) evictions.increment();
+		}
+		
+		public void clear() { entries.clear(); }
+		
+		public int getCapacity() { return capacity; }
+		public int size() { return entries.size(); }
+		public long getHits() { return hits.sum(); }
+		public long getMisses() { return misses.sum(); }
+		public long getEvictions() { return evictions.sum(); }
+		
+		public String toString() { return "ParseCache["+entries.size()+"/"+capacity+", "+getHits()+" hits, "+getMisses()+" misses, "+getEvictions()+" evictions]"; }
+		
+	}
+	
+	/*
+	 * Counters, histograms and gauges of the engine, by name. The instruments are made on first use, by newCounter and newHistogram,
+	 * which a subclass may override to feed another registry. Recording goes through LongAdders, so threads never wait on each other.
+	 * The registry in use is set with JIPL.setMetrics and published over JMX with registerMBean.
+	 */
+	public static class Metrics {
+		
+		public static class Counter {
+			
+			private final LongAdder adder = new LongAdder();
+			
+			public void increment() { adder.increment(); }
+			public void add(long value) { adder.add(value); }
+			public long get() { return adder.sum(); }
+			
+		}
+		
+		/* Histogram of durations in nanoseconds, by power of two. */
+		public static class Histogram {
+			
+			private final LongAdder[] buckets = new LongAdder[64];
+			private final LongAdder count = new LongAdder(), sum = new LongAdder();
+			private final LongAccumulator max = new LongAccumulator(new LongBinaryOperator() {
+				public long applyAsLong(long left, long right) { return Math.max(left, right); }
+			}, 0);
+			
+			public Histogram() {
+				for(int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+			}
+			
+			public void record(long nanos) {
+				if(nanos < 0) nanos = 0;
+				buckets[64-Long.numberOfLeadingZeros(nanos)].increment();
+				count.increment();
+				sum.add(nanos);
+				max.accumulate(nanos);
+			}
+			
+			public long getCount() { return count.sum(); }
+			public long getSum() { return sum.sum(); }
+			public long getMax() { return max.get(); }
+			public long getMean() { long c = count.sum(); return c==0?0:sum.sum()/c; }
+			
+			/* Upper bound of the bucket holding the given fraction of the values, between 0 and 1. */
+			public long getPercentile(double fraction) {
+				long total = count.sum(), seen = 0;
+				if(total == 0) return 0;
+				for(int i = 0; i < buckets.length; i++) {
+					seen += buckets[i].sum();
+					if(seen >= fraction*total) return i==0?0:Math.min((1L<<i)-1, getMax());
+				}
+				return getMax();
+			}
+			
+		}
+		
+		public static abstract class Gauge {
+			public abstract long get();
+		}
+		
+		private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+		private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+		private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+		private volatile boolean builtinTimings = false;
+		
+		/* Most scripts timed apart, the ones named after sharing "execution.nanos.<other>". */
+		public static final int SCRIPTS = 256;
+		private final AtomicInteger scripts = new AtomicInteger();
+		
+		public Metrics() {
+			gauge("parse.cache.hits", new Gauge() { public long get() { return parseCache.getHits(); } });
+			gauge("parse.cache.misses", new Gauge() { public long get() { return parseCache.getMisses(); } });
+			gauge("parse.cache.evictions", new Gauge() { public long get() { return parseCache.getEvictions(); } });
+			gauge("parse.cache.hitPercent", new Gauge() {
+				public long get() {
+					long hits = parseCache.getHits(), total = hits+parseCache.getMisses();
+					return total==0?0:hits*100/total;
+				}
+			});
+		}
+		
+		protected Counter newCounter(String name) { return new Counter(); }
+		protected Histogram newHistogram(String name) { return new Histogram(); }
+		
+		public Counter counter(String name) {
+			Counter counter = counters.get(name);
+			if(counter != null) return counter;
+			counter = newCounter(name);
+			Counter previous = counters.putIfAbsent(name, counter);
+			return previous==null?counter:previous;
+		}
+		
+		public Histogram histogram(String name) {
+			Histogram histogram = histograms.get(name);
+			if(histogram != null) return histogram;
+			histogram = newHistogram(name);
+			Histogram previous = histograms.putIfAbsent(name, histogram);
+			return previous==null?histogram:previous;
+		}
+		
+		/* Histogram of the runs named 'scriptId', so that scripts named on the fly do not grow the registry without end. */
+		public Histogram script(String scriptId) {
+			String name = "execution.nanos."+scriptId;
+			Histogram histogram = histograms.get(name);
+			if(histogram != null) return histogram;
+			if(scripts.incrementAndGet() > SCRIPTS) {
+				scripts.decrementAndGet();
+				return histogram("execution.nanos.<other>");
+			}
+			histogram = newHistogram(name);
+			Histogram previous = histograms.putIfAbsent(name, histogram);
+			if(previous == null) return histogram;
+			scripts.decrementAndGet();
+			return previous;
+		}
+		
+		public void gauge(String name, Gauge gauge) { gauges.put(name, gauge); }
+		
+		public Map<String, Counter> getCounters() { return Collections.unmodifiableMap(counters); }
+		public Map<String, Histogram> getHistograms() { return Collections.unmodifiableMap(histograms); }
+		public Map<String, Gauge> getGauges() { return Collections.unmodifiableMap(gauges); }
+		
+		/*
+		 * Times every call of every build-in function under "builtin.nanos.<name>", off by default as it reads the clock twice a call.
+		 * The calls are counted under "builtin.calls.<name>" either way.
+		 */
+		public void setBuiltinTimings(boolean builtinTimings) { this.builtinTimings = builtinTimings; }
+		public boolean hasBuiltinTimings() { return builtinTimings; }
+		
+		/* Registers the instruments as the attributes of an MBean of the platform server, "fr.holo.interpreter:type=Metrics" for instance. */
+		public ObjectName registerMBean(String name) throws JMException {
+			ObjectName objectName = new ObjectName(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), objectName);
+			return objectName;
+		}
+		
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for(String name:new TreeMap<String, Counter>(counters).keySet()) sb.append(name).append(" = ").append(counters.get(name).get()).append('\n');
+			for(String name:new TreeMap<String, Gauge>(gauges).keySet()) sb.append(name).append(" = ").append(gauges.get(name).get()).append('\n');
+			for(String name:new TreeMap<String, Histogram>(histograms).keySet()) {
+				Histogram h = histograms.get(name);
+				sb.append(name).append(" = count ").append(h.getCount()).append(", mean ").append(h.getMean()).append(", p50 ").append(h.getPercentile(0.5))
+					.append(", p99 ").append(h.getPercentile(0.99)).append(", max ").append(h.getMax()).append('\n');
+			}
+			return sb.toString();
+		}
+		
+	}
+	
+	/*
+	 * Read-only view of a Metrics over JMX, its attributes following the instruments as they are made: a counter or a gauge
+	 * is an attribute of its name, a histogram gives "<name>.count", ".mean", ".p50", ".p99" and ".max".
+	 */
+	protected static final class MetricsMBean implements DynamicMBean {
+		
+		private static final String[] HISTOGRAM_ATTRIBUTES = {"count", "mean", "p50", "p99", "max"};
+		
+		private final Metrics metrics;
+		
+		protected MetricsMBean(Metrics metrics) { this.metrics = metrics; }
+		
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Metrics.Counter counter = metrics.getCounters().get(attribute);
+			if(counter != null) return counter.get();
+			Metrics.Gauge gauge = metrics.getGauges().get(attribute);
+			if(gauge != null) return gauge.get();
+			
+			int dot = attribute.lastIndexOf('.');
+			Metrics.Histogram histogram = dot<0?null:metrics.getHistograms().get(attribute.substring(0, dot));
+			if(histogram != null) {
+				String part = attribute.substring(dot+1);
+				if(part.equals("count")) return histogram.getCount();
+				if(part.equals("mean")) return histogram.getMean();
+				if(part.equals("p50")) return histogram.getPercentile(0.5);
+				if(part.equals("p99")) return histogram.getPercentile(0.99);
+				if(part.equals("max")) return histogram.getMax();
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+		
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for(String attribute:attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException e) {}
+			}
+			return list;
+		}
+		
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException { throw new AttributeNotFoundException("Read-only "+attribute.getName()); }
+		
+		public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+		
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+		
+		public MBeanInfo getMBeanInfo() {
+			ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+			for(String name:new TreeMap<String, Metrics.Counter>(metrics.getCounters()).keySet())
+				attributes.add(new MBeanAttributeInfo(name, "long", "Counter "+name, true, false, false));
+			for(String name:new TreeMap<String, Metrics.Gauge>(metrics.getGauges()).keySet())
+				attributes.add(new MBeanAttributeInfo(name, "long", "Gauge "+name, true, false, false));
+			for(String name:new TreeMap<String, Metrics.Histogram>(metrics.getHistograms()).keySet())
+				for(String part:HISTOGRAM_ATTRIBUTES)
+					attributes.add(new MBeanAttributeInfo(name+"."+part, "long", "Histogram "+name+" in nanoseconds, "+part, true, false, false));
+			return new MBeanInfo(getClass().getName(), "JIPL engine metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+		}
+		
+	}
+	
+	/*
+	 * Flight Recorder events of the engine, so that a recording of the JVM shows the scripts next to its GC, lock and I/O events.
+	 * An event is made where it happens and dropped at once unless a running recording enables its type: while none does,
+	 * isEnabled is a constant to the JIT and making the event and checking it costs next to nothing.
+	 */
+	public static final class Events {
+		
+		private Events() {}
+		
+		@Name("fr.holo.jipl.Execution")
+		@Label("Script Execution")
+		@Category("JIPL")
+		@StackTrace(false)
+		public static final class Execution extends jdk.jfr.Event {
+			
+			@Label("Script") String script;
+			@Label("Nodes") long nodes;
+			@Label("Calls") long calls;
+			@Label("Allocated Bytes") @Description("Approximate bytes of the values created by the script") long allocated;
+			@Label("Failed") boolean failed;
+			
+			/* The event begun, or null when no recording enables it. */
+			static Execution start() {
+				Execution event = new Execution();
+				if(!event.isEnabled()) return null;
+				event.begin();
+				return event;
+			}
+			
+			void commit(JIPL.Execution execution, Error error) {
+				end();
+				if(!shouldCommit()) return;
+				script = execution.scriptId;
+				nodes = execution.nodes;
+				calls = execution.calls;
+				allocated = execution.getAllocatedBytes();
+				failed = error != null;
+				commit();
+			}
+			
+		}
+		
+		/* Calls of script functions, inlined ones included, recorded above 1 ms unless the recording settings say otherwise. */
+		@Name("fr.holo.jipl.Call")
+		@Label("Script Function Call")
+		@Category("JIPL")
+		@Threshold("1 ms")
+		public static final class Call extends jdk.jfr.Event {
+			
+			@Label("Function") String function;
+			@Label("Line") int line;
+			
+			static Call start() {
+				Call event = new Call();
+				if(!event.isEnabled()) return null;
+				event.begin();
+				return event;
+			}
+			
+			void commit(String function, CallNode node) {
+				end();
+				if(!shouldCommit()) return;
+				this.function = function==null?"<anonymous>":function;
+				this.line = Profiler.line(node);
+				commit();
+			}
+			
+		}
+		
+		@Name("fr.holo.jipl.Parse")
+		@Label("Script Parse")
+		@Category("JIPL")
+		@StackTrace(false)
+		public static final class Parse extends jdk.jfr.Event {
+			
+			@Label("Phase") String phase;
+			@Label("Source Length") int length;
+			
+			static Parse start() {
+				Parse event = new Parse();
+				if(!event.isEnabled()) return null;
+				event.begin();
+				return event;
+			}
+			
+			void commit(String phase, int length) {
+				end();
+				if(!shouldCommit()) return;
+				this.phase = phase;
+				this.length = length;
+				commit();
+			}
+			
+		}
+		
+		@Name("fr.holo.jipl.ParseCache")
+		@Label("Parse Cache Lookup")
+		@Category("JIPL")
+		@StackTrace(false)
+		public static final class ParseCache extends jdk.jfr.Event {
+			
+			@Label("Hit") boolean hit;
+			@Label("Source Length") int length;
+			
+			static void commit(boolean hit, int length) {
+				ParseCache event = new ParseCache();
+				if(!event.shouldCommit()) return;
+				event.hit = hit;
+				event.length = length;
+				event.commit();
+			}
+			
+		}
+		
+		@Name("fr.holo.jipl.Error")
+		@Label("Script Error")
+		@Category("JIPL")
+		@StackTrace(false)
+		public static final class ScriptError extends jdk.jfr.Event {
+			
+			@Label("Script") String script;
+			@Label("Type") String type;
+			@Label("Message") String message;
+			@Label("Line") int line;
+			
+			static void commit(JIPL.Execution execution, Error error) {
+				ScriptError event = new ScriptError();
+				if(!event.shouldCommit()) return;
+				event.script = execution.scriptId;
+				event.type = error.getName();
+				event.message = error.getText();
+				event.line = error.getSeq()==null?0:error.getSeq().getLine();
+				event.commit();
+			}
+			
+		}
+		
+	}
+	
+	/*
+	 * Parse trees stored in .jiplc files: a header (magic, format version, engine version and SHA-256 of the source)
+	 * followed by the nodes, each written as a tag and its fields. A tree is only read back for the very source it was made from.
+	 */
+	public static final class CompiledFile {
+		
+		private static final int MAGIC = 0x4A495043, HASH_LENGTH = 32;
+		private static final short FORMAT = 1;
+		/* Deepest tree read back, a deeper one being parsed from its source rather than read on a stack it could overflow. */
+		private static final int MAX_DEPTH = 2048;
+		
+		/* Adding a tag calls for a new ENGINE_VERSION, so that the files of an older engine are not taken for valid. */
+		private static final byte NULL = 0, NUMBER = 1, STRING = 2, BINARY = 3, UNARY = 4, IF = 5, VAR_ASSIGN = 6, VAR_ACCESS = 7, VAR_MODIFY = 8,
+				FOR = 9, WHILE = 10, FUNCTION_DEF = 11, CALL = 12, LIST = 13, POINT_ACCESS = 14, CASE = 15, RETURN = 16, CONTINUE = 17, BREAK = 18,
+				OBJECT_DEF = 19, INSTANTIATE = 20, FOR_IN = 21, MAP = 22;
+		
+		private static final Operator[] OPERATORS = Operator.values();
+		
+		public static File of(File source) {
+			String name = source.getName();
+			int dot = name.lastIndexOf('.');
+			return new File(source.getAbsoluteFile().getParentFile(), (dot>0?name.substring(0, dot):name)+".jiplc");
+		}
+		
+		public static byte[] hash(String source) {
+			try {
+				return MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+			} catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+		}
+		
+		/* Written to a temporary file first, so that a concurrent reader never maps a partial file. */
+		public static void write(File file, String source, Object node) throws IOException {
+			File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeShort(FORMAT);
+				out.writeInt(ENGINE_VERSION);
+				out.write(hash(source));
+				write(out, node);
+			} catch (IOException e) {
+				tmp.delete();
+				throw e;
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		
+		/* The tree stored for 'source', or null if the file is missing, out of date or unreadable. */
+		public static ParseResult read(File file, String source) {
+			if(!file.isFile()) return null;
+			try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				
+				if(in.remaining() < 10+HASH_LENGTH || in.getInt() != MAGIC || in.getShort() != FORMAT || in.getInt() != ENGINE_VERSION) return null;
+				byte[] hash = new byte[HASH_LENGTH];
+				in.get(hash);
+				if(!Arrays.equals(hash, hash(source))) return null;
+				
+				return ParseResult.success(read(in, 0));
+			} catch (IOException | RuntimeException e) {
+				/* A corrupted file is as good as a missing one: the source gets parsed instead. */
+				return null;
+			}
+		}
+		
+		private static void write(DataOutputStream out, Object node) throws IOException {
+			if(node == null) {
+				out.writeByte(NULL);
+			} else if(node instanceof NumberNode) {
+				NumberNode n = (NumberNode) node;
+				out.writeByte(NUMBER);
+				out.writeBoolean(n.value.integer);
+				if(n.value.integer) out.writeLong(n.value.longValue);
+				else out.writeDouble(n.value.value);
+				out.writeInt(n.position);
+			} else if(node instanceof StringNode) {
+				StringNode n = (StringNode) node;
+				out.writeByte(STRING);
+				write(out, n.value);
+				out.writeInt(n.position);
+			} else if(node instanceof BinaryOperation) {
+				BinaryOperation n = (BinaryOperation) node;
+				out.writeByte(BINARY);
+				out.writeByte(n.operation.ordinal());
+				out.writeInt(n.position);
+				write(out, n.leftNode);
+				write(out, n.rightNode);
+			} else if(node instanceof UnaryOperation) {
+				UnaryOperation n = (UnaryOperation) node;
+				out.writeByte(UNARY);
+				out.writeByte(n.operation.ordinal());
+				out.writeInt(n.position);
+				write(out, n.node);
+			} else if(node instanceof IfNode) {
+				IfNode n = (IfNode) node;
+				out.writeByte(IF);
+				out.writeInt(n.cases.size());
+				for(CaseDataNode c:n.cases) write(out, c);
+				write(out, n.else_case);
+			} else if(node instanceof CaseDataNode) {
+				CaseDataNode n = (CaseDataNode) node;
+				out.writeByte(CASE);
+				out.writeBoolean(n.shouldReturnNull);
+				write(out, n.condition);
+				write(out, n.statements);
+			} else if(node instanceof VarAssignNode) {
+				VarAssignNode n = (VarAssignNode) node;
+				out.writeByte(VAR_ASSIGN);
+				write(out, n.name);
+				out.writeInt(n.position);
+				write(out, n.expression);
+			} else if(node instanceof VarAccessNode) {
+				VarAccessNode n = (VarAccessNode) node;
+				out.writeByte(VAR_ACCESS);
+				write(out, n.name);
+				out.writeInt(n.position);
+			} else if(node instanceof VarModifyNode) {
+				VarModifyNode n = (VarModifyNode) node;
+				out.writeByte(VAR_MODIFY);
+				write(out, n.name);
+				out.writeInt(n.position);
+				write(out, n.node);
+			} else if(node instanceof ForNode) {
+				ForNode n = (ForNode) node;
+				out.writeByte(FOR);
+				write(out, n.varName);
+				out.writeBoolean(n.shouldReturnNull);
+				write(out, n.start);
+				write(out, n.end);
+				write(out, n.step);
+				write(out, n.body);
+			} else if(node instanceof ForInNode) {
+				ForInNode n = (ForInNode) node;
+				out.writeByte(FOR_IN);
+				write(out, n.varName);
+				out.writeBoolean(n.shouldReturnNull);
+				write(out, n.iterable);
+				write(out, n.body);
+			} else if(node instanceof WhileNode) {
+				WhileNode n = (WhileNode) node;
+				out.writeByte(WHILE);
+				out.writeBoolean(n.shouldReturnNull);
+				write(out, n.condition);
+				write(out, n.body);
+			} else if(node instanceof FunctionDefNode) {
+				FunctionDefNode n = (FunctionDefNode) node;
+				out.writeByte(FUNCTION_DEF);
+				write(out, n.name);
+				out.writeInt(n.position);
+				out.writeBoolean(n.shouldAutoReturn);
+				write(out, n.args);
+				write(out, n.body);
+			} else if(node instanceof CallNode) {
+				CallNode n = (CallNode) node;
+				out.writeByte(CALL);
+				write(out, n.nodeToCall);
+				write(out, n.args);
+			} else if(node instanceof ListNode) {
+				ListNode n = (ListNode) node;
+				out.writeByte(LIST);
+				write(out, n.elementNodes.toArray());
+				out.writeInt(n.spans==null?-1:n.spans.length);
+				if(n.spans != null) for(int span:n.spans) out.writeInt(span);
+			} else if(node instanceof MapNode) {
+				MapNode n = (MapNode) node;
+				out.writeByte(MAP);
+				write(out, n.keys);
+				write(out, n.values);
+				out.writeInt(n.position);
+			} else if(node instanceof PointAccessNode) {
+				out.writeByte(POINT_ACCESS);
+				write(out, ((PointAccessNode) node).nodes);
+			} else if(node instanceof ReturnNode) {
+				out.writeByte(RETURN);
+				write(out, ((ReturnNode) node).toReturn);
+			} else if(node instanceof ContinueNode) {
+				out.writeByte(CONTINUE);
+			} else if(node instanceof BreakNode) {
+				out.writeByte(BREAK);
+			} else if(node instanceof ObjectDefNode) {
+				ObjectDefNode n = (ObjectDefNode) node;
+				out.writeByte(OBJECT_DEF);
+				write(out, n.name);
+				write(out, n.args);
+				write(out, n.body);
+			} else if(node instanceof InstantiateNode) {
+				InstantiateNode n = (InstantiateNode) node;
+				out.writeByte(INSTANTIATE);
+				write(out, n.nodeToCall);
+				write(out, n.args);
+			} else throw new IllegalArgumentException("No encoding for " + node.getClass().getSimpleName());
+		}
+		
+		private static void write(DataOutputStream out, Object[] nodes) throws IOException {
+			out.writeInt(nodes.length);
+			for(Object node:nodes) write(out, node);
+		}
+		
+		private static void write(DataOutputStream out, String[] names) throws IOException {
+			out.writeInt(names.length);
+			for(String name:names) write(out, name);
+		}
+		
+		private static void write(DataOutputStream out, String text) throws IOException {
+			if(text == null) {
+				out.writeInt(-1);
+				return;
+			}
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		
+		/* Every count and length is checked against the bytes left before anything is allocated for it. */
+		private static Object read(ByteBuffer in, int depth) {
+			if(depth > MAX_DEPTH) throw new IllegalArgumentException("Tree deeper than " + MAX_DEPTH);
+			depth++;
+			byte tag = in.get();
+			switch(tag) {
+				case NULL: return null;
+				case NUMBER: return new NumberNode(in.get()!=0?new Number(in.getLong()):new Number(in.getDouble()), in.getInt());
+				case STRING: return new StringNode(string(in), in.getInt());
+				case BINARY: {
+					Operator operation = OPERATORS[in.get()];
+					int position = in.getInt();
+					Object left = read(in, depth);
+					return new BinaryOperation(left, operation, read(in, depth), position);
+				}
+				case UNARY: {
+					Operator operation = OPERATORS[in.get()];
+					int position = in.getInt();
+					return new UnaryOperation(operation, read(in, depth), position);
+				}
+				case IF: {
+					int count = count(in, 1);
+					ArrayList<CaseDataNode> cases = new ArrayList<CaseDataNode>(count);
+					for(int i = 0; i < count; i++) cases.add((CaseDataNode) read(in, depth));
+					return new IfNode(cases, (CaseDataNode) read(in, depth));
+				}
+				case CASE: {
+					boolean shouldReturnNull = in.get() != 0;
+					Object condition = read(in, depth);
+					return new CaseDataNode(condition, read(in, depth), shouldReturnNull);
+				}
+				case VAR_ASSIGN: {
+					String name = string(in);
+					int position = in.getInt();
+					return new VarAssignNode(name, read(in, depth), position);
+				}
+				case VAR_ACCESS: return new VarAccessNode(string(in), in.getInt());
+				case VAR_MODIFY: {
+					String name = string(in);
+					int position = in.getInt();
+					return new VarModifyNode(name, read(in, depth), position);
+				}
+				case FOR: {
+					String varName = string(in);
+					boolean shouldReturnNull = in.get() != 0;
+					Object start = read(in, depth), end = read(in, depth), step = read(in, depth);
+					return new ForNode(varName, start, end, step, read(in, depth), shouldReturnNull);
+				}
+				case WHILE: {
+					boolean shouldReturnNull = in.get() != 0;
+					Object condition = read(in, depth);
+					return new WhileNode(condition, read(in, depth), shouldReturnNull);
+				}
+				case FUNCTION_DEF: {
+					String name = string(in);
+					int position = in.getInt();
+					boolean shouldAutoReturn = in.get() != 0;
+					String[] args = strings(in);
+					return new FunctionDefNode(name, position, read(in, depth), shouldAutoReturn, args);
+				}
+				case CALL: {
+					Object nodeToCall = read(in, depth);
+					return new CallNode(nodeToCall, nodes(in, depth));
+				}
+				case LIST: {
+					ArrayList<Object> elementNodes = new ArrayList<Object>(Arrays.asList(nodes(in, depth)));
+					int length = in.getInt();
+					int[] spans = length==-1?null:new int[check(length, in, 4)];
+					for(int i = 0; i < length; i++) spans[i] = in.getInt();
+					return new ListNode(elementNodes, spans);
+				}
+				case MAP: {
+					Object[] keys = nodes(in, depth);
+					Object[] values = nodes(in, depth);
+					return new MapNode(keys, values, in.getInt());
+				}
+				case POINT_ACCESS: return new PointAccessNode(nodes(in, depth));
+				case RETURN: return new ReturnNode(read(in, depth));
+				case CONTINUE: return new ContinueNode();
+				case BREAK: return new BreakNode();
+				case OBJECT_DEF: {
+					String name = string(in);
+					String[] args = strings(in);
+					return new ObjectDefNode(name, args, read(in, depth));
+				}
+				case INSTANTIATE: {
+					Object nodeToCall = read(in, depth);
+					return new InstantiateNode(nodeToCall, nodes(in, depth));
+				}
+				case FOR_IN: {
+					String varName = string(in);
+					boolean shouldReturnNull = in.get() != 0;
+					Object iterable = read(in, depth);
+					return new ForInNode(varName, iterable, read(in, depth), shouldReturnNull);
+				}
+				default: throw new IllegalArgumentException("Unknown tag " + tag);
+			}
+		}
+		
+		private static Object[] nodes(ByteBuffer in, int depth) {
+			Object[] nodes = new Object[count(in, 1)];
+			for(int i = 0; i < nodes.length; i++) nodes[i] = read(in, depth);
+			return nodes;
+		}
+		
+		private static String[] strings(ByteBuffer in) {
+			String[] strings = new String[count(in, 4)];
+			for(int i = 0; i < strings.length; i++) strings[i] = string(in);
+			return strings;
+		}
+		
+		/* A count of elements of at least 'size' bytes each, which the bytes left must hold. */
+		private static int count(ByteBuffer in, int size) { return check(in.getInt(), in, size); }
+		
+		private static int check(int count, ByteBuffer in, int size) {
+			if(count < 0 || count > in.remaining()/size) throw new IllegalArgumentException("Count " + count + " past the end of the file");
+			return count;
+		}
+		
+		private static String string(ByteBuffer in) {
+			int length = in.getInt();
+			if(length == -1) return null;
+			byte[] bytes = new byte[check(length, in, 1)];
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+	}
+	
+	public static class Lexer {
+		
+		public static final String DIGITS = "0123456789";
+		public static final String LETTERS = "azertyuiopqsdfghjklmwxcvbnAZERTYUIOPQSDFGHJKLMWXCVBN";
+		public static final String LEGAL_CHARS = LETTERS+DIGITS+"_";
+		
+		public static final String[] KEYWORDS = {"var", "and", "or", "not", "if", "elseif", "else", "for", "to", "by", "while", "function", "return", "continue", "break", "new", "object"};
+		
+		public static ArrayList<Token> getTokens(String text) {
+			TokenBuffer buffer = tokenize(text);
+			if(buffer.error != null) buffer.error.call();
+			ArrayList<Token> list = new ArrayList<JIPL.Token>(buffer.size());
+			for(int i = 0; i < buffer.size(); i++)
+				list.add(buffer.get(i));
+			return list;
+		}
+		
+		public static TokenBuffer tokenize(String text) {
+			TokenBuffer buffer = new TokenBuffer(text);
+			if(scan(buffer, 0, text.length()))
+				buffer.add(TokenType.END_OF_CODE, text.length(), 0);
+			return buffer;
+		}
+		
+		/*
+		 * Lexes the source of the buffer from 'from' to 'to'. Strings and comments end with their line, so lexing can resume at any line start.
+		 * On an illegal character the error is kept in the buffer and false is returned.
+		 */
+		protected static boolean scan(TokenBuffer buffer, int from, int to) {
+			String text = buffer.source;
+			for(int i = from; i < to; i++) {
+				char c = text.charAt(i);
+				switch(c) {
+					case ' ': case '\t': break;
+					case '\n': buffer.newLine(i); buffer.add(TokenType.NLINE, i, 1); break;
+					case ';': buffer.add(TokenType.NLINE, i, 1); break;
+					case '(': buffer.add(TokenType.LPAREN, i, 1); break;
+					case ')': buffer.add(TokenType.RPAREN, i, 1); break;
+					case '[': buffer.add(TokenType.LSQUARE, i, 1); break;
+					case ']': buffer.add(TokenType.RSQUARE, i, 1); break;
+					case '.': buffer.add(TokenType.POINT, i, 1); break;
+					case '{': buffer.add(TokenType.LBRA, i, 1); break;
+					case '}': buffer.add(TokenType.RBRA, i, 1); break;
+					case '+': buffer.add(TokenType.PLUS, i, 1); break;
+					case '-': buffer.add(TokenType.MINUS, i, 1); break;
+					case '*': buffer.add(TokenType.MULT, i, 1); break;
+					case '/': buffer.add(TokenType.DIV, i, 1); break;
+					case ':': buffer.add(TokenType.COLON, i, 1); break;
+					case ',': buffer.add(TokenType.COMMAS, i, 1); break;
+					case '^': buffer.add(TokenType.POW, i, 1); break;
+					case '!':
+						if(i < to-1 && text.charAt(i+1) == '=') {
+							buffer.add(TokenType.NOT_EQUALS, i, 2);
+							i++;
+							break;
+						}
+						buffer.error = new Error.IllegalCharError("!", buffer.sequence(i, 1));
+						return false;
+					case '=': i = _comparator(text, i, to, TokenType.DOUBLE_EQUALS, TokenType.EQUALS, buffer); break;
+					case '<': i = _comparator(text, i, to, TokenType.LESS_EQUALS, TokenType.LESS, buffer); break;
+					case '>': i = _comparator(text, i, to, TokenType.GREATER_EQUALS, TokenType.GREATER, buffer); break;
+					case '"': i = _string(text, i, to, buffer); break;
+					case '#': i = _comment(text, i, to); break;
+					default:
+						if(isDigit(c)) i = _number(text, i, to, buffer);
+						else if(isLetter(c)) i = _identifier(text, i, to, buffer);
+						else {
+							buffer.error = new Error.IllegalCharError(c+"", buffer.sequence(i, 1));
+							return false;
+						}
+				}
+			}
+			return true;
+		}
+		
+		private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+		private static boolean isLetter(char c) { return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'); }
+		
+		private static int _comment(String text, int index, int end) {
+			int i = index;
+			while(i+1 < end && text.charAt(i+1) != '\n') i++;
+			return i;
+		}
+
+		private static int _number(String text, int index, int end, TokenBuffer buffer) {
+			TokenType tt = TokenType.INT;
+			int i = index;
+			for(; i < end; i++) {
+				char c = text.charAt(i);
+				if(isDigit(c)) continue;
+				if(c == '.' && tt == TokenType.INT) tt = TokenType.FLOAT;
+				else break;
+			}
+			buffer.add(tt, index, i-index);
+			return i-1;
+		}
+		
+		/*
+		 * Only the bounds of the literal are recorded, quotes included;
+		 * the escape sequences are resolved when the parser asks for the value.
+		 */
+		private static int _string(String text, int index, int end, TokenBuffer buffer) {
+			int i = index+1;
+			while(i < end) {
+				char c = text.charAt(i);
+				if(c == '\n') break;
+				i++;
+				if(c == '"') break;
+				if(c == '\\' && i < end && text.charAt(i) != '\n') i++;
+			}
+			buffer.add(TokenType.STRING, index, i-index);
+			return i-1;
+		}
+		
+		private static int _identifier(String text, int index, int end, TokenBuffer buffer) {
+			int i = index;
+			while(i < end && (isLetter(text.charAt(i)) || isDigit(text.charAt(i)) || text.charAt(i) == '_')) i++;
+			
+			int size = i-index;
+			for(String s:KEYWORDS) {
+				if(s.length() == size && text.startsWith(s, index)) {
+					buffer.add(TokenType.KEYWORD, index, size);
+					return i-1;
+				}
+			}
+			
+			buffer.add(TokenType.IDENTIFIER, index, size);
+			return i-1;
+		}
+		
+		private static int _comparator(String text, int index, int end, TokenType e, TokenType ne, TokenBuffer buffer) {
+			if(index < end-1 && text.charAt(index+1) == '=') {
+				buffer.add(e, index, 2);
+				return index+1;
+			}
+			buffer.add(ne, index, 1);
+			return index;
+		}
+	}
+	
+	/*
+	 * Lexer output stored as parallel arrays, one slot per token, instead of one Token and one Sequence object each.
+	 * Token values are sliced from the source on demand.
+	 */
+	public static final class TokenBuffer {
+		
+		private static final TokenType[] TYPES = TokenType.values();
+		private static final HashMap<Character, String> ESCAPES = new HashMap<Character, String>();
+		static {
+			ESCAPES.put('n', "\n");
+			ESCAPES.put('t', "\t");
+			ESCAPES.put('\\', "\\");
+		}
+		
+		protected final String source;
+		protected int[] types, starts, lengths, lines, lineStarts;
+		protected int size = 0, line = 0;
+		protected Error error = null;
+		
+		public TokenBuffer(String source) {
+			this(source, Math.max(16, source.length()/3));
+			lineStarts = new int[16];
+		}
+		
+		/* Without line starts: only used to re-lex a window of lines, see splice. */
+		private TokenBuffer(String source, int capacity) {
+			this.source = source;
+			types = new int[capacity];
+			starts = new int[capacity];
+			lengths = new int[capacity];
+			lines = new int[capacity];
+		}
+		
+		protected void add(TokenType type, int start, int length) {
+			if(size == types.length) {
+				int capacity = size*2;
+				types = Arrays.copyOf(types, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+			}
+			types[size] = type.ordinal();
+			starts[size] = start;
+			lengths[size] = length;
+			lines[size] = line;
+			size++;
+		}
+		
+		protected void newLine(int index) {
+			line++;
+			if(lineStarts == null) return;
+			if(line == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, line*2);
+			lineStarts[line] = index+1;
+		}
+		
+		protected Sequence sequence(int start, int length) { return new Sequence(line, start, length); }
+		
+		public int size() { return size; }
+		public String getSource() { return source; }
+		public Error getError() { return error; }
+		
+		public TokenType type(int i) { return TYPES[types[i]]; }
+		public int start(int i) { return starts[i]; }
+		public int length(int i) { return lengths[i]; }
+		public int line(int i) { return lines[i]; }
+		public int end(int i) { return starts[i]+lengths[i]; }
+		
+		/* Index of the first token starting at or after 'offset'. */
+		public int find(int offset) {
+			int lo = 0, hi = size;
+			while(lo < hi) {
+				int mid = (lo+hi)>>>1;
+				if(starts[mid] < offset) lo = mid+1;
+				else hi = mid;
+			}
+			return lo;
+		}
+		
+		/* Line of the character at 'offset'. */
+		public int lineOf(int offset) {
+			int lo = 0, hi = line;
+			while(lo < hi) {
+				int mid = (lo+hi+1)>>>1;
+				if(lineStarts[mid] <= offset) lo = mid;
+				else hi = mid-1;
+			}
+			return lo;
+		}
+		
+		/*
+		 * Tokens of 'text', this source once edited between the line starting at 'from' and the line end at 'to' (in this source),
+		 * 'delta' being the change in length. Only the lines of the edit are lexed again, the tokens around are copied and shifted.
+		 * Returns null if the edited lines do not lex.
+		 */
+		protected TokenBuffer splice(String text, int from, int to, int delta) {
+			int first = find(from), last = find(to);
+			int firstLine = lineOf(from), lastLine = lineOf(to);
+			
+			TokenBuffer window = new TokenBuffer(text, 16);
+			window.line = firstLine;
+			if(!Lexer.scan(window, from, to+delta)) return null;
+			
+			int lineDelta = window.line-lastLine, tail = size-last;
+			TokenBuffer buffer = new TokenBuffer(text, Math.max(16, first+window.size+tail));
+			buffer.size = first+window.size+tail;
+			buffer.line = line+lineDelta;
+			
+			int[][] kept = {types, starts, lengths, lines}, lexed = {window.types, window.starts, window.lengths, window.lines};
+			int[][] copies = {buffer.types, buffer.starts, buffer.lengths, buffer.lines};
+			for(int a = 0; a < copies.length; a++) {
+				System.arraycopy(kept[a], 0, copies[a], 0, first);
+				System.arraycopy(lexed[a], 0, copies[a], first, window.size);
+				System.arraycopy(kept[a], last, copies[a], first+window.size, tail);
+			}
+			for(int i = first+window.size; i < buffer.size; i++) {
+				buffer.starts[i] += delta;
+				buffer.lines[i] += lineDelta;
+			}
+			
+			buffer.lineStarts = new int[buffer.line+1];
+			System.arraycopy(lineStarts, 0, buffer.lineStarts, 0, firstLine+1);
+			int l = firstLine+1;
+			for(int i = from; i < to+delta; i++)
+				if(text.charAt(i) == '\n') buffer.lineStarts[l++] = i+1;
+			for(int i = lastLine+1; i <= line; i++)
+				buffer.lineStarts[l++] = lineStarts[i]+delta;
+			
+			return buffer;
+		}
+		
+		public boolean matches(int i, TokenType type) { return types[i] == type.ordinal(); }
+		public boolean matches(int i, String value, TokenType type) {
+			return types[i] == type.ordinal() && lengths[i] == value.length() && source.startsWith(value, starts[i]);
+		}
+		
+		public String text(int i) { return source.substring(starts[i], starts[i]+lengths[i]); }
+		
+		public Object value(int i) {
+			switch(TYPES[types[i]]) {
+				case STRING: return string(i);
+				case INT: case FLOAT: case KEYWORD: case IDENTIFIER: return text(i);
+				default: return null;
+			}
+		}
+		
+		private String string(int i) {
+			int end = starts[i]+lengths[i];
+			if(end-starts[i] > 1 && source.charAt(end-1) == '"') end--;
+			StringBuilder sb = new StringBuilder(end-starts[i]);
+			for(int j = starts[i]+1; j < end; j++) {
+				char c = source.charAt(j);
+				if(c == '\\' && j+1 < end) sb.append(ESCAPES.getOrDefault(source.charAt(++j), source.charAt(j)+""));
+				else sb.append(c);
+			}
+			return sb.toString();
+		}
+		
+		/* Position of the token packed as by Sequence.pack, with its column in the line. */
+		public int position(int i) { return Sequence.pack(lines[i], starts[i]-lineStarts[lines[i]]); }
+		
+		public Sequence getSeq(int i) { return new Sequence(lines[i], starts[i], lengths[i]); }
+		
+		public Token get(int i) { return new Token(type(i), getSeq(i), value(i)); }
+		
+		public String toString(int i) {
+			Object value = value(i);
+			return value == null?type(i)+"":type(i)+":"+value;
+		}
+		
+	}
+	
+	public static class Parser {
+		
+		/*
+		 * Nodes keep their source position packed in an int (see Sequence.pack)
+		 * and the values of their tokens, so the token buffer can be dropped once parsed.
+		 */
+		
+		public static enum Operator {
+			PLUS, MINUS, MULT, DIV,
+			EQUALS, NOT_EQUALS, LESS, GREATER, LESS_EQUALS, GREATER_EQUALS,
+			AND, OR, NOT;
+		}
+		
+		protected static class NumberNode {
+			
+			/* Never given to a script as it is, the interpreter hands out copies. */
+			protected final Number value;
+			protected final int position;
+			
+			public NumberNode(Number value, int position) {
+				this.value = value;
+				this.position = position;
+			}
+			
+			public String toString() { return "NUMBER:"+value; }
+			
+		}
+		
+		protected static class StringNode {
+			
+			protected final String value;
+			protected final int position;
+			
+			public StringNode(String value, int position) {
+				this.value = value;
+				this.position = position;
+			}
+			
+			public String toString() { return "STRING:"+value; }
+		}
+		
+		protected static class BinaryOperation {
+			
+			protected final Object leftNode, rightNode;
+			protected final Operator operation;
+			protected final int position;
+			
+			public BinaryOperation(Object leftNode, Operator operation, Object rightNode, int position) { 
+				this.leftNode = leftNode;
+				this.operation = operation;
+				this.rightNode = rightNode;
+				this.position = position;
+			}
+			
+			public String toString() { return "("+leftNode+", "+operation+", "+rightNode+")"; }
+			
+		}
+		
+		protected static class UnaryOperation {
+			
+			protected final Operator operation;
+			protected final Object node;
+			protected final int position;
+			
+			public UnaryOperation(Operator operation, Object node, int position) {
+				this.operation = operation;
+				this.node = node;
+				this.position = position;
+			}
+			
+			public String toString() { return "(" + operation + ", " + node + ")"; }
+			
+		}
+		
+		protected static class IfNode {
+			
+			protected final ArrayList<CaseDataNode> cases;
+			protected final CaseDataNode else_case;
+			
+			public IfNode(ArrayList<CaseDataNode> cases, CaseDataNode else_case) {
+				this.cases = cases;
+				this.else_case = else_case;
+			}
+			
+			public String toString() { return "(" + cases + " >> " + else_case + ")"; }
+			
+		}
+		
+		protected static class VarAssignNode {
+			
+			protected final String name;
+			protected final Object expression;
+			protected final int position;
+			
+			public VarAssignNode(String name, Object expression, int position) {
+				this.name = name;
+				this.expression = expression;
+				this.position = position;
+			}
+			
+			public String toString() { return "Assign::"+name+"::"+expression; }
+		}
+		
+		protected static class VarAccessNode {
+			
+			protected final String name;
+			protected final int position;
+			
+			public VarAccessNode(String name, int position) {
+				this.name = name;
+				this.position = position;
+			}
+			
+			public String toString() { return "Access::"+name; }
+		}
+		
+		protected static class VarModifyNode {
+			
+			protected final String name;
+			protected final Object node;
+			protected final int position;
+			
+			public VarModifyNode(String name, Object node, int position) {
+				this.name = name;
+				this.node = node;
+				this.position = position;
+			}
+			
+			public String toString() { return "Modify{"+name+" = "+node+"}"; }
+		}
+		
+		protected static class ForNode {
+			
+			protected final String varName;
+			protected final Object start, end, step, body;
+			protected final boolean shouldReturnNull;
+			
+			public ForNode(String varName, Object startNode, Object endNode, Object stepNode, Object bodyNode, boolean shouldReturnNull) {
+				this.varName = varName;
+				this.start = startNode;
+				this.end = endNode;
+				this.step = stepNode;
+				this.body = bodyNode;
+				this.shouldReturnNull = shouldReturnNull;
+			}
+			
+			public String toString() { return "For"+"::"+body; }
+			
+		}
+		
+		protected static class ForInNode {
+			
+			protected final String varName;
+			protected final Object iterable, body;
+			protected final boolean shouldReturnNull;
+			
+			public ForInNode(String varName, Object iterable, Object bodyNode, boolean shouldReturnNull) {
+				this.varName = varName;
+				this.iterable = iterable;
+				this.body = bodyNode;
+				this.shouldReturnNull = shouldReturnNull;
+			}
+			
+			public String toString() { return "ForIn::"+varName+"::"+iterable+"::"+body; }
+			
+		}
+		
+		protected static class WhileNode {
+			
+			protected final Object condition, body;
+			protected final boolean shouldReturnNull;
+			
+			public WhileNode(Object condition, Object bodyNode, boolean shouldReturnNull) {
+				this.condition = condition;
+				this.body = bodyNode;
+				this.shouldReturnNull = shouldReturnNull;
+			}
+			
+			public String toString() { return "While::"+condition+"::"+body; }
+			
 		}
 		
 		protected static class FunctionDefNode {
 			
-			protected Token name;
-			protected Object body;
-			protected Token[] args;
-			protected boolean shouldAutoReturn;
+			protected final String name;
+			protected final Object body;
+			protected final String[] args;
+			protected final boolean shouldAutoReturn;
+			protected final int position;
+			
+			public FunctionDefNode(String name, int position, Object bodyNode, boolean shouldAutoReturn, String... args) {
+				this.name = name;
+				this.position = position;
+				this.body = bodyNode;
+				this.args = args;
+				this.shouldAutoReturn = shouldAutoReturn;
+			}
+			
+			public String toString() { return "Definition of " + name; }
+			
+		}
+		
+		protected static class CallNode {
+			
+			protected final Object nodeToCall;
+			protected final Object[] args;
+			
+			public CallNode(Object nodeToCall, Object... args) {
+				this.nodeToCall = nodeToCall;
+				this.args = args;
+			}
+			
+			public String toString() { return "Call of "+nodeToCall; }
+			
+		}
+		
+		/* Call of a small function replaced by a copy of its body, see Inliner. The plain call is kept for when the guard fails. */
+		protected static class InlinedCallNode {
+			
+			protected final CallNode call;
+			protected final FunctionDefNode function;
+			protected final Object body;
+			protected final String[] free;
+			
+			public InlinedCallNode(CallNode call, FunctionDefNode function, Object body, String[] free) {
+				this.call = call;
+				this.function = function;
+				this.body = body;
+				this.free = free;
+			}
+			
+			public String toString() { return "Inlined::"+function.name+"::"+body; }
+			
+		}
+		
+		/* Argument of an inlined call, read from its slot. */
+		protected static class InlineArgNode {
+			
+			protected final int index, position;
+			
+			public InlineArgNode(int index, int position) {
+				this.index = index;
+				this.position = position;
+			}
+			
+			public String toString() { return "Arg::"+index; }
+			
+		}
+		
+		protected static class ListNode {
+			
+			protected final ArrayList<Object> elementNodes;
+			/* Statement blocks only: token range [start, end) of each statement, relative to the first token of the enclosing statement. */
+			protected final int[] spans;
+
+			public ListNode(ArrayList<Object> elementNodes) {
+				this(elementNodes, null);
+			}
+			
+			public ListNode(ArrayList<Object> elementNodes, int[] spans) {
+				this.elementNodes = elementNodes;
+				this.spans = spans;
+			}
+			
+			public String toString() {
+				return "ListNode>"+elementNodes;
+			}
+			
+		}
+		
+		protected static class MapNode {
+			
+			protected final Object[] keys, values;
+			protected final int position;
+			
+			public MapNode(Object[] keys, Object[] values, int position) {
+				this.keys = keys;
+				this.values = values;
+				this.position = position;
+			}
+			
+			public String toString() { return "MapNode>"+Arrays.toString(keys); }
+			
+		}
+		
+		protected static class PointAccessNode {
+			
+			protected final Object[] nodes;
+			
+			protected PointAccessNode(Object... nodes) {
+				this.nodes = nodes;
+			}
+			
+			public String toString() { 
+				String s = "";
+				for(int i = 0; i < nodes.length; i++)
+					s+=nodes[i];
+				return "("+s+")";
+			}
+			
+		}
+		
+		protected static class CaseDataNode {
+			
+			protected final Object condition, statements;
+			protected final boolean shouldReturnNull;
+			
+			public CaseDataNode(Object condition, Object statements, boolean shouldReturnNull) {
+				this.condition = condition;
+				this.statements = statements;
+				this.shouldReturnNull = shouldReturnNull;
+			}
+			
+			public String toString() { return condition+"><"+statements; }
+			
+		}
+		
+		protected static class ReturnNode {
+			
+			protected final Object toReturn;
+			public ReturnNode(Object toReturn) {
+				this.toReturn = toReturn;
+			}
 			
-			public FunctionDefNode(Token name, Object bodyNode, boolean shouldAutoReturn, Token... args) {
+		}
+		
+		protected static class ContinueNode {}
+		protected static class BreakNode {}
+		
+		protected static class ObjectDefNode {
+			
+			protected final String name;
+			protected final String[] args;
+			protected final Object body;
+			
+			public ObjectDefNode(String name, String[] args, Object body) {
 				this.name = name;
-				this.body = bodyNode;
 				this.args = args;
-				this.shouldAutoReturn = shouldAutoReturn;
+				this.body = body;
 			}
 			
-			public String toString() { return "Definition of " + name; }
+			public String toString() { return name+">"+args; }
 			
 		}
 		
-		protected static class CallNode {
+		protected static class InstantiateNode {
 			
-			protected Object nodeToCall;
-			protected Object[] args;
+			protected final Object nodeToCall;
+			protected final Object[] args;
 			
-			public CallNode(Object nodeToCall, Object... args) {
+			public InstantiateNode(Object nodeToCall, Object... args) {
 				this.nodeToCall = nodeToCall;
 				this.args = args;
 			}
 			
-			public String toString() { return "Call of "+nodeToCall; }
+			public String toString() { return "Instantiate of "+nodeToCall; }
 			
 		}
 		
-		protected static class ListNode {
+		/* Never changed once made, the parse cache sharing it between threads, but for the inlined tree made on its first run. */
+		public static class ParseResult {
 			
-			protected ArrayList<Object> elementNodes;
-
-			public ListNode(ArrayList<Object> elementNodes) {
-				this.elementNodes = elementNodes;
+			protected final Error error;
+			protected final Object node;
+			/* Tokens of the source, for Parser.reparse, left out of the results of the parse cache. */
+			protected final TokenBuffer tokens;
+			private volatile Object inlined = null;
+			
+			protected ParseResult(Object node, Error error, TokenBuffer tokens) {
+				this.node = node;
+				this.error = error;
+				this.tokens = tokens;
+			}
+			
+			public static ParseResult success(Object node) { return new ParseResult(node, null, null); }
+			public static ParseResult failure(Error error) { return new ParseResult(null, error, null); }
+			
+			/* The same result without the tokens, so that the source is not kept with the tree. */
+			protected ParseResult withoutTokens() { return tokens==null?this:new ParseResult(node, error, null); }
+			
+			public TokenBuffer getTokens() { return tokens; }
+			
+			/* Tree run by the interpreter, made by the Inliner on the first run and shared by the next ones. */
+			protected Object getInlinedNode() {
+				Object tree = inlined;
+				if(tree == null) inlined = tree = Inliner.inline(node);
+				return tree;
 			}
 			
 			public String toString() {
-				return "ListNode>"+elementNodes;
+				if(error != null) error.call(); return node.toString();
+			}
+		}
+		
+		/*
+		 * Binding powers of the binary operators, from the loosest to the tightest.
+		 * 'not' is a prefix operator binding tighter than 'and'/'or' but looser than comparisons.
+		 */
+		private static final int LOGIC = 1, COMPARISON = 2, SUM = 3, PRODUCT = 4;
+		
+		private static final String[] STATEMENT_KEYWORDS = {"var", "not", "if", "for", "while", "function", "object", "new", "return", "continue", "break"};
+		
+		protected TokenBuffer tokens;
+		protected int index = 0, statementStart = 0;
+		protected Error error = null;
+		
+		public Parser(TokenBuffer tokens) {
+			this.tokens = tokens;
+		}
+
+		private void advance() {
+			if(index < tokens.size()-1) index++;
+		}
+		
+		private boolean at(TokenType type) { return tokens.matches(index, type); }
+		private boolean at(String value, TokenType type) { return tokens.matches(index, value, type); }
+		
+		private void advanceNewLines() {
+			while(at(TokenType.NLINE))
+				advance();
+		}
+		
+		private int peekPastNewLines() {
+			int i = index;
+			while(i < tokens.size()-1 && tokens.matches(i, TokenType.NLINE)) i++;
+			return i;
+		}
+		
+		private Object fail(String text, int token) {
+			if(error == null) error = new Error.SyntaxError(text, tokens.getSeq(token));
+			return null;
+		}
+		
+		private Object unexpected(int token) { return fail("Unexpected <"+tokens.toString(token)+">", token); }
+		
+		private boolean expect(TokenType type, String text) {
+			if(!at(type)) {
+				fail(text, index);
+				return false;
+			}
+			advance();
+			return true;
+		}
+		
+		private int precedence(int t) {
+			switch(tokens.type(t)) {
+				case MULT: case DIV: return PRODUCT;
+				case PLUS: case MINUS: return SUM;
+				case DOUBLE_EQUALS: case NOT_EQUALS: case LESS: case LESS_EQUALS: case GREATER: case GREATER_EQUALS: return COMPARISON;
+				case KEYWORD: return tokens.matches(t, "and", TokenType.KEYWORD) || tokens.matches(t, "or", TokenType.KEYWORD)?LOGIC:0;
+				default: return 0;
+			}
+		}
+		
+		private Operator operator(int t) {
+			switch(tokens.type(t)) {
+				case MULT: return Operator.MULT;
+				case DIV: return Operator.DIV;
+				case PLUS: return Operator.PLUS;
+				case MINUS: return Operator.MINUS;
+				case DOUBLE_EQUALS: return Operator.EQUALS;
+				case NOT_EQUALS: return Operator.NOT_EQUALS;
+				case LESS: return Operator.LESS;
+				case LESS_EQUALS: return Operator.LESS_EQUALS;
+				case GREATER: return Operator.GREATER;
+				case GREATER_EQUALS: return Operator.GREATER_EQUALS;
+				default: return tokens.matches(t, "and", TokenType.KEYWORD)?Operator.AND:Operator.OR;
+			}
+		}
+		
+		private boolean startsStatement(int t) {
+			switch(tokens.type(t)) {
+				case INT: case FLOAT: case STRING: case IDENTIFIER: case LSQUARE: case LBRA: case LPAREN: case PLUS: case MINUS: return true;
+				case KEYWORD:
+					for(String s:STATEMENT_KEYWORDS)
+						if(tokens.matches(t, s, TokenType.KEYWORD)) return true;
+					return false;
+				default: return false;
+			}
+		}
+		
+		private boolean startsExpression(int t) {
+			return startsStatement(t) && !tokens.matches(t, "return", TokenType.KEYWORD) && !tokens.matches(t, "continue", TokenType.KEYWORD) && !tokens.matches(t, "break", TokenType.KEYWORD);
+		}
+		
+		private Object factor() {
+			advanceNewLines();
+			
+			int t = index;
+			
+			switch(tokens.type(t)) {
+				case INT: case FLOAT:
+					advance();
+					return new NumberNode(Number.valueOf(tokens.text(t)), tokens.position(t));
+				case STRING:
+					advance();
+					return new StringNode((String) tokens.value(t), tokens.position(t));
+				case IDENTIFIER:
+					advance();
+					if(at(TokenType.EQUALS)) {
+						advance();
+						Object o = expression();
+						if(error != null) return null;
+						return new VarModifyNode(tokens.text(t), o, tokens.position(t));
+					}
+					return new VarAccessNode(tokens.text(t), tokens.position(t));
+				case LSQUARE:
+					return list_expression();
+				case LBRA:
+					return map_expression();
+				case PLUS: case MINUS: {
+					advance();
+					advanceNewLines();
+					Object f = call();
+					if(error != null) return null;
+					return new UnaryOperation(tokens.matches(t, TokenType.PLUS)?Operator.PLUS:Operator.MINUS, f, tokens.position(t));
+				}
+				case LPAREN: {
+					advance();
+					advanceNewLines();
+					Object ex = expression();
+					if(error != null) return null;
+					advanceNewLines();
+					if(!expect(TokenType.RPAREN, "Expected ')'")) return null;
+					return ex;
+				}
+				case KEYWORD:
+					if(at("if", TokenType.KEYWORD)) return if_expression();
+					if(at("for", TokenType.KEYWORD)) return for_expression();
+					if(at("while", TokenType.KEYWORD)) return while_expression();
+					if(at("function", TokenType.KEYWORD)) return function_expression();
+					if(at("object", TokenType.KEYWORD)) {
+						advance();
+						advanceNewLines();
+						return object_expression();
+					}
+					if(at("new", TokenType.KEYWORD)) {
+						advance();
+						advanceNewLines();
+						return new_expression();
+					}
+					return unexpected(t);
+				default:
+					return unexpected(t);
+			}
+		}
+		
+		private ListNode statements() { return statements(statementStart, tokens.size()); }
+		
+		/*
+		 * Statements separated by new lines, up to the first token not starting one or the token 'end'.
+		 * Their spans are kept relative to 'base', the first token of the enclosing statement, so that a reused subtree stays valid wherever it moves.
+		 */
+		private ListNode statements(int base, int end) {
+			if(debug) System.out.println("Parser: multi-lines statements");
+			
+			ArrayList<Object> statements = new ArrayList<Object>();
+			int[] spans = new int[8];
+			
+			advanceNewLines();
+			
+			while(index < end && startsStatement(index)) {
+				int start = index;
+				statementStart = start;
+				Object stat = statement();
+				statementStart = base;
+				if(error != null) return null;
+				
+				if(statements.size()*2 == spans.length) spans = Arrays.copyOf(spans, spans.length*2);
+				spans[statements.size()*2] = start-base;
+				spans[statements.size()*2+1] = index-base;
+				statements.add(stat);
+				
+				if(!at(TokenType.NLINE)) break;
+				advanceNewLines();
+			}
+			
+			if(debug) System.out.println("Parser: " + statements);
+			
+			return new ListNode(statements, Arrays.copyOf(spans, statements.size()*2));
+		}
+		
+		private Object statement() {
+			if(at("return", TokenType.KEYWORD)) {
+				advance();
+				advanceNewLines();
+				Object expr = null;
+				if(startsExpression(index)) {
+					expr = expression();
+					if(error != null) return null;
+				}
+				return new ReturnNode(expr);
+			} else if(at("continue", TokenType.KEYWORD)) {
+				advance();
+				return new ContinueNode();
+			} else if(at("break", TokenType.KEYWORD)) {
+				advance();
+				return new BreakNode();
+			}
+			
+			return expression();
+		}
+		
+		private Object list_expression() {
+			if(debug) System.out.println("Parser: List node");
+			
+			ArrayList<Object> elementNodes = new ArrayList<Object>();
+			
+			if(!expect(TokenType.LSQUARE, "Expected '['")) return null;
+			
+			advanceNewLines();
+			
+			if(at(TokenType.RSQUARE)) {
+				advance();
+				return new ListNode(elementNodes);
+			}
+			
+			elementNodes.add(expression());
+			if(error != null) return null;
+			while(at(TokenType.COMMAS)) {
+				advance();
+				elementNodes.add(expression());
+				if(error != null) return null;
+			}
+			
+			advanceNewLines();
+			if(!expect(TokenType.RSQUARE, "Expected ']'")) return null;
+			
+			return new ListNode(elementNodes);
+		}
+		
+		/* Map literal, '{key: value, ...}', the keys being expressions as the values. */
+		private Object map_expression() {
+			if(debug) System.out.println("Parser: Map node");
+			
+			ArrayList<Object> keys = new ArrayList<Object>(), values = new ArrayList<Object>();
+			int position = tokens.position(index);
+			
+			if(!expect(TokenType.LBRA, "Expected '{'")) return null;
+			
+			advanceNewLines();
+			while(!at(TokenType.RBRA)) {
+				if(!keys.isEmpty()) {
+					if(!expect(TokenType.COMMAS, "Expected ',' or '}'")) return null;
+					advanceNewLines();
+				}
+				keys.add(expression());
+				if(error != null) return null;
+				advanceNewLines();
+				if(!expect(TokenType.COLON, "Expected ':'")) return null;
+				values.add(expression());
+				if(error != null) return null;
+				advanceNewLines();
+			}
+			advance();
+			
+			return new MapNode(keys.toArray(), values.toArray(), position);
+		}
+		
+		private Object if_expression() {
+			ArrayList<CaseDataNode> cases = new ArrayList<CaseDataNode>();
+			CaseDataNode else_case = if_expression_cases(cases);
+			if(error != null) return null;
+			return new IfNode(cases, else_case);
+		}
+		
+		/*
+		 * Parses an 'if' or 'elseif' case, then looks past the new lines for a following 'elseif' or 'else'.
+		 * The new lines are only consumed when the chain goes on, so nothing has to be given back.
+		 * Returns the 'else' case, if any.
+		 */
+		private CaseDataNode if_expression_cases(ArrayList<CaseDataNode> cases) {
+			advance();
+			advanceNewLines();
+			
+			Object condition = expression();
+			if(error != null) return null;
+			
+			if(at(TokenType.COLON)) advance();
+			
+			advanceNewLines();
+			
+			if(at(TokenType.LBRA)) {
+				advance();
+				Object statements = statements();
+				if(error != null) return null;
+				if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+				cases.add(new CaseDataNode(condition, statements, true));
+			} else {
+				Object expr = statement();
+				if(error != null) return null;
+				cases.add(new CaseDataNode(condition, expr, false));
+			}
+			
+			int next = peekPastNewLines();
+			if(tokens.matches(next, "elseif", TokenType.KEYWORD)) {
+				advanceNewLines();
+				return if_expression_cases(cases);
+			} else if(tokens.matches(next, "else", TokenType.KEYWORD)) {
+				advanceNewLines();
+				return if_expression_else();
+			}
+			return null;
+		}
+		
+		private CaseDataNode if_expression_else() {
+			advance();
+			
+			if(at(TokenType.COLON)) advance();
+			
+			advanceNewLines();
+			
+			if(at(TokenType.LBRA)) {
+				advance();
+				Object statements = statements();
+				if(error != null) return null;
+				if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+				return new CaseDataNode(null, statements, true);
+			} else {
+				Object expr = statement();
+				if(error != null) return null;
+				return new CaseDataNode(null, expr, false);
+			}
+		}
+		
+		private Object for_expression() {
+			if(debug) System.out.println("Parser: for");
+			
+			if(!at("for", TokenType.KEYWORD))
+				return fail("Expected 'for'", index);
+			
+			advance();
+			advanceNewLines();
+			
+			if(!at(TokenType.IDENTIFIER))
+				return fail("Expected identifier", index);
+			
+			String varName = tokens.text(index);
+			
+			advance();
+			advanceNewLines();
+			
+			/* 'in' is only a keyword here, scripts may still name a variable so. */
+			if(at("in", TokenType.IDENTIFIER)) return for_in_expression(varName);
+			
+			if(!expect(TokenType.EQUALS, "Expected '=' or 'in'")) return null;
+			
+			advanceNewLines();
+			
+			Object start = expression();
+			if(error != null) return null;
+			
+			advanceNewLines();
+			
+			if(!at("to", TokenType.KEYWORD))
+				return fail("Expected 'to'", index);
+			
+			advance();
+			advanceNewLines();
+			
+			Object end = expression();
+			if(error != null) return null;
+			
+			Object by = null;
+			
+			advanceNewLines();
+			
+			if(at("by", TokenType.KEYWORD)) {
+				advance();
+				by = expression();
+				if(error != null) return null;
+			}
+			
+			advanceNewLines();
+			
+			if(at(TokenType.COLON)) advance();
+			
+			advanceNewLines();
+			
+			if(at(TokenType.LBRA)) {
+				advance();
+				
+				Object body = statements();
+				if(error != null) return null;
+				
+				if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+				
+				return new ForNode(varName, start, end, by, body, true);
 			}
 			
+			Object body = expression();
+			if(error != null) return null;
+			
+			return new ForNode(varName, start, end, by, body, false);
 		}
 		
-		protected static class PointAccessNode {
+		private Object for_in_expression(String varName) {
+			advance();
+			advanceNewLines();
 			
-			protected Object[] nodes;
+			Object iterable = expression();
+			if(error != null) return null;
 			
-			protected PointAccessNode(Object... nodes) {
-				this.nodes = nodes;
-			}
+			advanceNewLines();
 			
-			public String toString() { 
-				String s = "";
-				for(int i = 0; i < nodes.length; i++)
-					s+=nodes[i];
-				return "("+s+")";
+			if(at(TokenType.COLON)) advance();
+			
+			advanceNewLines();
+			
+			if(at(TokenType.LBRA)) {
+				advance();
+				
+				Object body = statements();
+				if(error != null) return null;
+				
+				if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+				
+				return new ForInNode(varName, iterable, body, true);
 			}
 			
+			Object body = expression();
+			if(error != null) return null;
+			
+			return new ForInNode(varName, iterable, body, false);
 		}
 		
-		protected static class CaseDataNode {
+		private Object while_expression() {
+			if(debug) System.out.println("Parser: while");
 			
-			protected Object condition, statements;
-			protected boolean shouldReturnNull;
+			if(!at("while", TokenType.KEYWORD))
+				return fail("Expected 'while'", index);
 			
-			public CaseDataNode(Object condition, Object statements, boolean shouldReturnNull) {
-				this.condition = condition;
-				this.statements = statements;
-				this.shouldReturnNull = shouldReturnNull;
+			advance();
+			advanceNewLines();
+			
+			Object condition = expression();
+			if(error != null) return null;
+			
+			if(at(TokenType.COLON)) advance();
+			
+			advanceNewLines();
+			
+			if(at(TokenType.LBRA)) {
+				advance();
+				
+				Object body = statements();
+				if(error != null) return null;
+				
+				if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+				
+				return new WhileNode(condition, body, true);
 			}
 			
-			public String toString() { return condition+"><"+statements; }
+			Object body = statement();
+			if(error != null) return null;
 			
+			return new WhileNode(condition, body, false);
 		}
 		
-		protected static class ReturnNode {
+		private String[] identifiers() {
+			ArrayList<String> names = new ArrayList<String>();
 			
-			protected Object toReturn;
-			public ReturnNode(Object toReturn) {
-				this.toReturn = toReturn;
+			if(at(TokenType.IDENTIFIER)) {
+				names.add(tokens.text(index));
+				advance();
+				advanceNewLines();
+				while(at(TokenType.COMMAS)) {
+					advance();
+					advanceNewLines();
+					if(!at(TokenType.IDENTIFIER)) {
+						fail("Expected identifier", index);
+						return null;
+					}
+					names.add(tokens.text(index));
+					advance();
+					advanceNewLines();
+				}
 			}
 			
+			return names.toArray(new String[names.size()]);
 		}
 		
-		protected static class ContinueNode {}
-		protected static class BreakNode {}
-		
-		protected static class ObjectDefNode {
+		private Object function_expression() {
+			if(debug) System.out.println("Parser: function");
 			
-			protected Token name;
-			protected Token[] args;
-			protected Object body;
+			if(!at("function", TokenType.KEYWORD))
+				return fail("Expected 'function'", index);
+
+			advance();
+			advanceNewLines();
 			
-			public ObjectDefNode(Token name, Token[] args, Object body) {
-				this.name = name;
-				this.args = args;
-				this.body = body;
-			}
+			String function_name = null;
+			int position = Sequence.NONE;
+			if(at(TokenType.IDENTIFIER)) {
+				function_name = tokens.text(index);
+				position = tokens.position(index);
+				advance();
+				advanceNewLines();
+				if(!expect(TokenType.LPAREN, "Expected '('")) return null;
+			} else if(!expect(TokenType.LPAREN, "Expected '(' or identifier")) return null;
 			
-			public String toString() { return name+">"+args; }
+			advanceNewLines();
 			
-		}
-		
-		protected static class InstantiateNode {
+			boolean empty = !at(TokenType.IDENTIFIER);
+			String[] args = identifiers();
+			if(error != null) return null;
 			
-			protected Object nodeToCall;
-			protected Object[] args;
+			if(!expect(TokenType.RPAREN, empty?"Expected identifier or ')'":"Expected ',' or ')'")) return null;
 			
-			public InstantiateNode(Object nodeToCall, Object... args) {
-				this.nodeToCall = nodeToCall;
-				this.args = args;
+			advanceNewLines();
+			
+			if(at(TokenType.COLON)) {
+				advance();
+				advanceNewLines();
+				
+				Object body = expression();
+				if(error != null) return null;
+				
+				return new FunctionDefNode(function_name, position, body, true, args);
 			}
 			
-			public String toString() { return "Instantiate of "+nodeToCall; }
+			if(!expect(TokenType.LBRA, "Expected ':' or '{'")) return null;
+			
+			advanceNewLines();
 			
+			Object body = statements();
+			if(error != null) return null;
+			
+			if(!expect(TokenType.RBRA, "Function: expected '}'")) return null;
+			
+			return new FunctionDefNode(function_name, position, body, false, args);
 		}
 		
-		public static class ParseResult {
+		private Object object_expression() {
+			if(debug) System.out.println("Parser: object");
 			
-			protected Error error = null;
-			protected Object node = null;
-			protected int last_registered_advance = 0, advance_count = 0, reverse_count = 0;
+			if(!at(TokenType.IDENTIFIER))
+				return fail("Expected identifier for the object.", index);
 			
-			public void register_advancement() {
-				last_registered_advance = 1;
-				advance_count++;
-			}
+			String name = tokens.text(index);
 			
-			public Object register(Object node) {
-				ParseResult pr = (ParseResult) node;
-				last_registered_advance = pr.advance_count;
-				advance_count += pr.advance_count;
-				if(pr.error != null) error = pr.error;
-				return pr.node;
-			}
+			advance();
+			advanceNewLines();
 			
-			public Object try_register(ParseResult node) {
-				if(node.error != null) {
-					reverse_count = node.advance_count;
-					return null;
-				}
-				return register(node);
-			}
+			if(!expect(TokenType.LPAREN, "Expected '('.")) return null;
 			
-			public ParseResult success(Object node) {
-				this.node = node;
-				return this;
-			}
+			advanceNewLines();
 			
-			public ParseResult failure(Error error) {
-				this.error = error;
-				return this;
-			}
+			String[] args = identifiers();
+			if(error != null) return null;
 			
-			public String toString() {
-				if(error != null) error.call(); return node.toString();
-			}
+			if(!expect(TokenType.RPAREN, "Expected ')'.")) return null;
+			
+			if(!expect(TokenType.LBRA, "Expected ':' or '{'")) return null;
+			
+			Object body = statements();
+			if(error != null) return null;
+			
+			if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+			
+			return new ObjectDefNode(name, args, body);
 		}
 		
-		protected ArrayList<Token> tokens;
-		protected Token currentToken;
-		protected int index = -1;
-		
-		public Parser(ArrayList<Token> tokens) {
-			this.tokens = tokens;
+		private Object new_expression() {
+			if(!at(TokenType.IDENTIFIER))
+				return fail("Expected identifier", index);
+			
+			String name = tokens.text(index);
+			int position = tokens.position(index);
+			
 			advance();
-		}
-
-		private Token advance() {
-			index++;
-			updateCurrentToken();
-			return currentToken;
-		}
-		
-		private Token reverse(int amount) {
-			index-=amount;
-			if(debug) System.out.println("Parser: Reversing "+amount);
-			updateCurrentToken();
-			return currentToken;
+			advanceNewLines();
+			
+			if(!at(TokenType.LPAREN))
+				return fail("Expected '('", index);
+			
+			Object[] args = arguments();
+			if(error != null) return null;
+			
+			return new InstantiateNode(new VarAccessNode(name, position), args);
 		}
 		
-		private void advanceNewLines(ParseResult pr) {
-			while(currentToken.matches(TokenType.NLINE)) {
-				pr.register_advancement();
+		private Object[] arguments() {
+			advance();
+			advanceNewLines();
+			
+			ArrayList<Object> args = new ArrayList<Object>();
+			
+			if(at(TokenType.RPAREN)) {
 				advance();
+				return args.toArray();
 			}
-		}
-		
-		private void updateCurrentToken() {
-			if(index < tokens.size() && index >= 0) currentToken = tokens.get(index);
-		}
-		
-		private Object factor() {
-			ParseResult pr = new ParseResult();
 			
-			advanceNewLines(pr);
+			args.add(expression());
+			if(error != null) return null;
 			
-			Token t = currentToken;
-			
-			if(t.matches(TokenType.INT, TokenType.FLOAT)) {
-				pr.register_advancement();
-				advance();
-				return pr.success(new NumberNode(t));
-			} if(t.matches(TokenType.STRING)) {
-				pr.register_advancement();
-				advance();
-				return pr.success(new StringNode(t));
-			} else if(t.matches(TokenType.IDENTIFIER)) {
-				pr.register_advancement();
-				advance();
-				if(currentToken.matches(TokenType.EQUALS)) {
-					pr.register_advancement();
-					advance();
-					
-					Object o = pr.register(expression());
-					if(pr.error != null) return pr;
-					
-					return pr.success(new VarModifyNode(t, o));
-				}
-				return pr.success(new VarAccessNode(t));
-			} else if(t.matches(TokenType.LSQUARE)) {
-				Object o = pr.register(list_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches(TokenType.PLUS, TokenType.MINUS)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object f = pr.register(call());
-				if(pr.error != null) return pr;
-				return pr.success(new UnaryOperation(t, f));
-			} else if(t.matches("if", TokenType.KEYWORD)) {
-				Object o = pr.register(if_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches("for", TokenType.KEYWORD)) {
-				Object o = pr.register(for_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches("while", TokenType.KEYWORD)) {
-				Object o = pr.register(while_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches("function", TokenType.KEYWORD)) {
-				Object o = pr.register(function_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches("object", TokenType.KEYWORD)) {
-				pr.register_advancement();
+			while(at(TokenType.COMMAS)) {
 				advance();
-				advanceNewLines(pr);
-				Object o = pr.register(object_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches("new", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object o = pr.register(new_expression());
-				if(pr.error != null) return pr;
-				return pr.success(o);
-			} else if(t.matches(TokenType.LPAREN)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object ex = pr.register(expression());
-				if(pr.error != null) return pr;
-				if(currentToken.matches(TokenType.RPAREN)) {
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
-					return pr.success(ex);
-				} else return pr.failure(new Error.SyntaxError("Expected ')'", currentToken.getSeq()));
+				advanceNewLines();
+				args.add(expression());
+				if(error != null) return null;
 			}
 			
-			return pr.failure(new Error.SyntaxError("Unexpected <"+t+">", t.getSeq()));
+			advanceNewLines();
+			if(!expect(TokenType.RPAREN, "Expected ')'")) return null;
+			
+			return args.toArray();
 		}
 		
-		private ParseResult statements() {
-			if(debug) System.out.println("Parser: multi-lines statements");
+		private Object call() {
+			Object atom = factor();
+			if(error != null) return null;
 			
-			ParseResult pr = new ParseResult();
-			ArrayList<Object> statements = new ArrayList<Object>();
+			if(at(TokenType.LPAREN)) {
+				if(debug) System.out.println("Parser: call_"+atom);
+				Object[] args = arguments();
+				if(error != null) return null;
+				atom = new CallNode(atom, args);
+			}
 			
-			advanceNewLines(pr);
+			if(!at(TokenType.POINT)) return atom;
 			
-			Object stat = pr.register(statement());
-			if(pr.error != null) return pr;
-			statements.add(stat);
+			ArrayList<Object> calls = new ArrayList<Object>();
+			calls.add(atom);
 			
-			boolean more = true;
-			while(true) {
-				int newline_count = 0;
-				while(currentToken.matches(TokenType.NLINE)) {
-					pr.register_advancement();
-					advance();
-					newline_count++;
-				}
-				if(newline_count == 0) more = false;
+			while(at(TokenType.POINT)) {
+				advance();
+				advanceNewLines();
 				
-				if(!more) break;
-				stat = pr.try_register(statement());
-				if(stat == null) {
-					reverse(pr.reverse_count);
-					more = false;
-					continue;
+				if(at(TokenType.LBRA)) {
+					advance();
+					advanceNewLines();
+					Object obj = statements();
+					if(error != null) return null;
+					if(!expect(TokenType.RBRA, "Expected '}'")) return null;
+					calls.add(obj);
+				} else {
+					Object obj = factor();
+					if(error != null) return null;
+					if(at(TokenType.LPAREN)) {
+						Object[] args = arguments();
+						if(error != null) return null;
+						obj = new CallNode(obj, args);
+					}
+					calls.add(obj);
 				}
-				
-				statements.add(stat);
 			}
 			
-			if(debug) System.out.println("Parser: " + statements);
-			
-			return pr.success(new ListNode(statements));
+			return new PointAccessNode(calls.toArray());
 		}
 		
-		private ParseResult statement() {
-			ParseResult pr = new ParseResult();
+		/*
+		 * Operator-precedence climbing: parses operands with call() and folds every following
+		 * operator binding at least as tight as 'precedence', so each operand costs a single call.
+		 */
+		private Object binary(int precedence) {
+			Object left;
 			
-			if(currentToken.matches("return", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object expr = pr.try_register(expression());
-				if(expr == null) reverse(pr.reverse_count);
-				return pr.success(new ReturnNode(expr==null?Number.NULL:expr));
-			} else if(currentToken.matches("continue", TokenType.KEYWORD)) {
-				pr.register_advancement();
+			if(precedence <= COMPARISON && at("not", TokenType.KEYWORD)) {
+				int position = tokens.position(index);
 				advance();
-				return pr.success(new ContinueNode());
-			} else if(currentToken.matches("break", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
-				return pr.success(new BreakNode());				
+				advanceNewLines();
+				Object o = binary(COMPARISON);
+				if(error != null) return null;
+				left = new UnaryOperation(Operator.NOT, o, position);
+			} else {
+				left = call();
+				if(error != null) return null;
 			}
 			
-			Object expr = pr.register(expression());
-			if(pr.error != null)
-				return pr;
+			while(true) {
+				int p = precedence(index);
+				if(p == 0 || p < precedence) break;
+				
+				Operator op = operator(index);
+				int position = tokens.position(index);
+				advance();
+				advanceNewLines();
+				Object right = binary(p+1);
+				if(error != null) return null;
+				left = new BinaryOperation(left, op, right, position);
+			}
 			
-			return pr.success(expr);
+			return left;
 		}
 		
-		private ParseResult list_expression() {
-			if(debug) System.out.println("Parser: List node");
-			
-			ParseResult pr = new ParseResult();
-			
-			ArrayList<Object> elementNodes = new ArrayList<Object>();
-			
-			if(!currentToken.matches(TokenType.LSQUARE))
-				return pr.failure(new Error.SyntaxError("Expected '['", currentToken.getSeq()));
-			
-			pr.register_advancement();
-			advance();
-			
-			advanceNewLines(pr);
-			
-			if(currentToken.matches(TokenType.RSQUARE)) {
-				pr.register_advancement();
+		private Object expression() {
+			if(at("var", TokenType.KEYWORD)) {
 				advance();
-			} else {
-				elementNodes.add(pr.register(expression()));
-				if(pr.error != null)
-					return pr.failure(new Error.SyntaxError("Expected ']'", currentToken.getSeq()));
-				while(currentToken.matches(TokenType.COMMAS)) {
-					pr.register_advancement();
-					advance();
-					elementNodes.add(pr.register(expression()));
-					if(pr.error != null) return pr;
-				}
-				advanceNewLines(pr);
-				if(!currentToken.matches(TokenType.RSQUARE))
-					return pr.failure(new Error.SyntaxError("Expected ']'", currentToken.getSeq()));
-				pr.register_advancement();
+				advanceNewLines();
+				
+				if(!at(TokenType.IDENTIFIER)) 
+					return fail("Expected identifier for the variable", index);
+				
+				String vname = tokens.text(index);
+				int position = tokens.position(index);
+				
 				advance();
+				advanceNewLines();
+				
+				if(!expect(TokenType.EQUALS, "Expected '='")) return null;
+				
+				advanceNewLines();
+				
+				Object o = expression();
+				if(error != null) return null;
+				
+				return new VarAssignNode(vname, o, position);
 			}
 			
-			return pr.success(new ListNode(elementNodes));
+			return binary(LOGIC);
 		}
 		
-		private ParseResult if_expression() {
-			ParseResult pr = new ParseResult();
-			IfNode all_cases = new IfNode(new ArrayList<CaseDataNode>(), null);
-			pr.register(if_expression_cases("if", all_cases));
-			if(pr.error != null) return pr;
-			return pr.success(new IfNode(all_cases.cases, all_cases.else_case));
+		public ParseResult parse() {
+			Object node = statements();
+			if(error == null && !at(TokenType.END_OF_CODE))
+				unexpected(index);
+			
+			if(error != null) return new ParseResult(null, error, tokens);
+			return new ParseResult(node, null, tokens);
 		}
 		
-		private ParseResult if_expression_cases(String keyword, IfNode node) {
-			ParseResult pr = new ParseResult();
-			
-			if(!currentToken.matches(keyword, TokenType.KEYWORD))
-				return pr.failure(new Error.SyntaxError("Expected '"+keyword+"'", currentToken.getSeq()));
+		/*
+		 * Incremental parsing of the source of 'previous' once 'removed' characters at 'offset' are replaced by 'inserted'.
+		 * Only the lines touched by the edit are lexed again and only the statements holding them, in the innermost
+		 * function, object or loop body around the edit, are parsed again; the rest of the tree is shared with 'previous', left untouched.
+		 * As positions hold line numbers, an edit adding or removing lines also parses again the top-level statements after it.
+		 * Anything that can not be kept within these statements (syntax errors included) falls back to a full parse.
+		 */
+		public static ParseResult reparse(ParseResult previous, int offset, int removed, String inserted) {
+			if(previous != null && previous.tokens == null) throw new IllegalArgumentException("No tokens to edit, see JIPL.getEditableParseResult");
+			String source = previous==null?"":previous.tokens.source;
+			if(offset < 0 || removed < 0 || offset+removed > source.length())
+				throw new IndexOutOfBoundsException("Edit at "+offset+" of "+removed+" characters out of "+source.length());
+			
+			String text = source.substring(0, offset)+inserted+source.substring(offset+removed);
+			if(text.isEmpty() || previous == null || previous.error != null || !(previous.node instanceof ListNode))
+				return getEditableParseResult(text);
+			
+			Edit edit = new Edit(previous.tokens, text, offset, offset+removed);
+			ListNode node = edit.reparse((ListNode) previous.node, 0, false);
+			if(node == null) return getEditableParseResult(text);
+			
+			return new ParseResult(node, null, edit.tokens);
+		}
+		
+		private static final class Edit {
 			
-			pr.register_advancement();
-			advance();
+			private final TokenBuffer old;
+			private final String text;
+			private final int from, to, delta, lineDelta;
+			private TokenBuffer tokens;
+			private boolean failed = false;
 			
-			advanceNewLines(pr);
+			private Edit(TokenBuffer old, String text, int from, int to) {
+				this.old = old;
+				this.text = text;
+				this.from = from;
+				this.to = to;
+				this.delta = text.length()-old.source.length();
+				this.lineDelta = lines(text, from, to+delta)-lines(old.source, from, to);
+			}
 			
-			Object condition = pr.register(expression());
-			if(pr.error != null) return pr;
+			private static int lines(String text, int from, int to) {
+				int count = 0;
+				for(int i = from; i < to; i++)
+					if(text.charAt(i) == '\n') count++;
+				return count;
+			}
 			
-			if(currentToken.matches(TokenType.COLON)) {
-//				return pr.failure(new Error.SyntaxError("Expected ':'", currentToken.getSeq()));
-				pr.register_advancement();
-				advance();
+			private int lineStart(int offset) { return old.source.lastIndexOf('\n', offset-1)+1; }
+			private int lineEnd(int offset) {
+				int i = old.source.indexOf('\n', offset);
+				return i<0?old.source.length():i;
 			}
 			
-			advanceNewLines(pr);
+			private int startOf(ListNode list, int base, int k) { return old.start(base+list.spans[k*2]); }
+			private int endOf(ListNode list, int base, int k) { return old.end(base+list.spans[k*2+1]-1); }
 			
-			if(currentToken.matches(TokenType.LBRA)) {
-				pr.register_advancement();
-				advance();
-				Object statements = pr.register(statements());
-				if(pr.error != null) return pr;
-				node.cases.add(new CaseDataNode(condition, statements, true));
+			/* New version of 'list', whose spans are relative to 'base', or null if the edit does not fit in its statements. */
+			private ListNode reparse(ListNode list, int base, boolean nested) {
+				int n = list.elementNodes.size();
 				
-				if(currentToken.matches(TokenType.RBRA)) {
-					pr.register_advancement();
-					advance();
-				} else {
-					return pr.failure(new SyntaxError("Expected '}'", currentToken.getSeq()));
+				if(lineDelta == 0) for(int k = 0; k < n; k++) {
+					if(from < startOf(list, base, k) || to > endOf(list, base, k)) continue;
+					
+					Object statement = list.elementNodes.get(k);
+					ListNode body = body(statement);
+					if(body == null) break;
+					
+					ListNode edited = reparse(body, base+list.spans[k*2], true);
+					if(failed) return null;
+					if(edited != null) return replace(list, k, withBody(statement, edited));
+					break;
+				}
+				
+				return window(list, base, nested);
+			}
+			
+			private ListNode window(ListNode list, int base, boolean nested) {
+				int n = list.elementNodes.size();
+				int start = lineStart(from), end = lineEnd(to), lo, hi;
+				
+				while(true) {
+					lo = 0;
+					while(lo < n && endOf(list, base, lo) <= start) lo++;
+					hi = n-1;
+					while(hi >= 0 && startOf(list, base, hi) >= end) hi--;
+					if(lo > hi) break;
+					
+					int s = Math.min(start, lineStart(startOf(list, base, lo))), e = Math.max(end, lineEnd(endOf(list, base, hi)));
+					if(s == start && e == end) break;
+					start = s;
+					end = e;
+				}
+				
+				/* Lines holding none of the statements of a block may as well be outside of its braces. */
+				if(nested && lo > hi) return null;
+				
+				int first = old.find(start), last = old.find(end);
+				int statementsFirst = lo<=hi?base+list.spans[lo*2]:last, statementsLast = lo<=hi?base+list.spans[hi*2+1]:last;
+				for(int i = first; i < last; i++)
+					if((i < statementsFirst || i >= statementsLast) && !old.matches(i, TokenType.NLINE)) return null;
+				
+				tokens = old.splice(text, start, end, delta);
+				if(tokens == null) {
+					failed = true;
+					return null;
+				}
+				
+				int shift = tokens.size()-old.size(), parseEnd = last+shift, next = hi+1;
+				if(lineDelta != 0 && next < n) {
+					parseEnd = base+list.spans[n*2-1]+shift;
+					next = n;
 				}
-				IfNode tempnode = (IfNode) pr.register(if_expression_bc());
-				if(pr.error != null) return pr;
-				node.cases.addAll(tempnode.cases);
-				node.else_case = tempnode.else_case;
-			} else {
-				advanceNewLines(pr);
-				Object expr = pr.register(statement());
-				if(pr.error != null) return pr;
-				node.cases.add(new CaseDataNode(condition, expr, false));
 				
-				IfNode tempnode = (IfNode) pr.register(if_expression_bc());
-				if(pr.error != null) return pr;
-				node.cases.addAll(tempnode.cases);
-				node.else_case = tempnode.else_case;
+				Parser parser = new Parser(tokens);
+				parser.index = first;
+				parser.statementStart = base;
+				ListNode parsed = parser.statements(base, parseEnd);
+				if(parser.error != null || !ends(parsed, first, base, parseEnd)) {
+					failed = true;
+					return null;
+				}
+				
+				ArrayList<Object> elements = new ArrayList<Object>(lo+parsed.elementNodes.size()+n-next);
+				elements.addAll(list.elementNodes.subList(0, lo));
+				elements.addAll(parsed.elementNodes);
+				elements.addAll(list.elementNodes.subList(next, n));
+				
+				int[] spans = new int[elements.size()*2];
+				System.arraycopy(list.spans, 0, spans, 0, lo*2);
+				System.arraycopy(parsed.spans, 0, spans, lo*2, parsed.spans.length);
+				for(int i = next*2, j = lo*2+parsed.spans.length; i < n*2; i++, j++)
+					spans[j] = list.spans[i]+shift;
+				
+				return new ListNode(elements, spans);
+			}
+			
+			/* The parsed statements must end before 'end' with only new lines left in between. */
+			private boolean ends(ListNode parsed, int first, int base, int end) {
+				int i = parsed.spans.length==0?first:base+parsed.spans[parsed.spans.length-1];
+				if(i > end) return false;
+				for(; i < end; i++)
+					if(!tokens.matches(i, TokenType.NLINE)) return false;
+				return true;
+			}
+			
+			private ListNode replace(ListNode list, int k, Object statement) {
+				ArrayList<Object> elements = new ArrayList<Object>(list.elementNodes);
+				elements.set(k, statement);
+				
+				int shift = tokens.size()-old.size();
+				int[] spans = list.spans.clone();
+				for(int i = k*2+1; i < spans.length; i++)
+					spans[i] += shift;
+				
+				return new ListNode(elements, spans);
+			}
+			
+			private static ListNode body(Object node) {
+				if(node instanceof VarAssignNode) return body(((VarAssignNode) node).expression);
+				if(node instanceof FunctionDefNode && !((FunctionDefNode) node).shouldAutoReturn) return (ListNode) ((FunctionDefNode) node).body;
+				if(node instanceof ObjectDefNode) return (ListNode) ((ObjectDefNode) node).body;
+				if(node instanceof WhileNode && ((WhileNode) node).shouldReturnNull) return (ListNode) ((WhileNode) node).body;
+				if(node instanceof ForNode && ((ForNode) node).shouldReturnNull) return (ListNode) ((ForNode) node).body;
+				if(node instanceof ForInNode && ((ForInNode) node).shouldReturnNull) return (ListNode) ((ForInNode) node).body;
+				return null;
+			}
+			
+			private static Object withBody(Object node, ListNode body) {
+				if(node instanceof VarAssignNode) {
+					VarAssignNode n = (VarAssignNode) node;
+					return new VarAssignNode(n.name, withBody(n.expression, body), n.position);
+				} else if(node instanceof FunctionDefNode) {
+					FunctionDefNode n = (FunctionDefNode) node;
+					return new FunctionDefNode(n.name, n.position, body, n.shouldAutoReturn, n.args);
+				} else if(node instanceof ObjectDefNode) {
+					ObjectDefNode n = (ObjectDefNode) node;
+					return new ObjectDefNode(n.name, n.args, body);
+				} else if(node instanceof WhileNode) {
+					WhileNode n = (WhileNode) node;
+					return new WhileNode(n.condition, body, true);
+				} else if(node instanceof ForInNode) {
+					ForInNode n = (ForInNode) node;
+					return new ForInNode(n.varName, n.iterable, body, true);
+				}
+				ForNode n = (ForNode) node;
+				return new ForNode(n.varName, n.start, n.end, n.step, body, true);
+			}
+			
+		}
+	}
+	
+	/*
+	 * Copies the bodies of small functions in place of their calls. A function is inlined when it is defined once,
+	 * by name, returns its only expression and calls neither itself nor anything but plain variables. The copy
+	 * reads the arguments from slots instead of a new symbol table, and the interpreter only uses it while the
+	 * called value is still that function, seeing the same variables from the call site as from its definition.
+	 */
+	protected static final class Inliner {
+		
+		/* Largest body inlined, in nodes. */
+		private static final int MAX_SIZE = 24;
+		
+		private final HashMap<String, FunctionDefNode> definitions = new HashMap<String, FunctionDefNode>();
+		private final HashMap<String, InlinedCallNode> candidates = new HashMap<String, InlinedCallNode>();
+		private boolean collecting = true;
+		
+		private Inliner() {}
+		
+		/* Tree of the program with its calls to small functions inlined, the tree itself when there are none. */
+		public static Object inline(Object root) {
+			Inliner inliner = new Inliner();
+			inliner.rewrite(root);
+			
+			for(FunctionDefNode node:inliner.definitions.values()) {
+				if(node == null || !node.shouldAutoReturn || inliner.size(node.body, node.name) > MAX_SIZE) continue;
+				ArrayList<String> free = new ArrayList<String>();
+				Object body = inliner.substitute(node.body, node.args, free);
+				inliner.candidates.put(node.name, new InlinedCallNode(null, node, body, free.toArray(new String[free.size()])));
 			}
+			if(inliner.candidates.isEmpty()) return root;
 			
-			return pr.success(node);
+			inliner.collecting = false;
+			return inliner.rewrite(root);
+		}
+		
+		/* Number of nodes of the body, more than MAX_SIZE when it can not be inlined. */
+		private int size(Object node, String self) {
+			if(node instanceof NumberNode || node instanceof StringNode) return 1;
+			if(node instanceof VarAccessNode) return ((VarAccessNode) node).name.equals(self)?MAX_SIZE+1:1;
+			if(node instanceof BinaryOperation) return 1+size(((BinaryOperation) node).leftNode, self)+size(((BinaryOperation) node).rightNode, self);
+			if(node instanceof UnaryOperation) return 1+size(((UnaryOperation) node).node, self);
+			if(node instanceof CallNode) {
+				CallNode n = (CallNode) node;
+				if(!(n.nodeToCall instanceof VarAccessNode)) return MAX_SIZE+1;
+				int size = 1+size(n.nodeToCall, self);
+				for(Object arg:n.args) size += size(arg, self);
+				return size;
+			}
+			if(node instanceof IfNode) {
+				IfNode n = (IfNode) node;
+				int size = 1+(n.else_case==null?0:size(n.else_case, self));
+				for(CaseDataNode c:n.cases) size += size(c, self);
+				return size;
+			}
+			if(node instanceof CaseDataNode) {
+				CaseDataNode n = (CaseDataNode) node;
+				return (n.condition==null?0:size(n.condition, self))+size(n.statements, self);
+			}
+			return MAX_SIZE+1;
+		}
+		
+		/* Copy of a body accepted by size, reading the arguments from their slots. */
+		private Object substitute(Object node, String[] args, ArrayList<String> free) {
+			if(node instanceof VarAccessNode) {
+				VarAccessNode n = (VarAccessNode) node;
+				for(int i = 0; i < args.length; i++)
+					if(args[i].equals(n.name)) return new InlineArgNode(i, n.position);
+				if(!free.contains(n.name)) free.add(n.name);
+				return node;
+			}
+			if(node instanceof BinaryOperation) {
+				BinaryOperation n = (BinaryOperation) node;
+				return new BinaryOperation(substitute(n.leftNode, args, free), n.operation, substitute(n.rightNode, args, free), n.position);
+			}
+			if(node instanceof UnaryOperation) {
+				UnaryOperation n = (UnaryOperation) node;
+				return new UnaryOperation(n.operation, substitute(n.node, args, free), n.position);
+			}
+			if(node instanceof CallNode) {
+				CallNode n = (CallNode) node;
+				Object[] callArgs = new Object[n.args.length];
+				for(int i = 0; i < callArgs.length; i++) callArgs[i] = substitute(n.args[i], args, free);
+				return new CallNode(substitute(n.nodeToCall, args, free), callArgs);
+			}
+			if(node instanceof IfNode) {
+				IfNode n = (IfNode) node;
+				ArrayList<CaseDataNode> cases = new ArrayList<CaseDataNode>();
+				for(CaseDataNode c:n.cases) cases.add((CaseDataNode) substitute(c, args, free));
+				return new IfNode(cases, n.else_case==null?null:(CaseDataNode) substitute(n.else_case, args, free));
+			}
+			if(node instanceof CaseDataNode) {
+				CaseDataNode n = (CaseDataNode) node;
+				return new CaseDataNode(n.condition==null?null:substitute(n.condition, args, free), substitute(n.statements, args, free), n.shouldReturnNull);
+			}
+			return node;
+		}
+		
+		/* Copy-on-write walk of the tree, recording the named definitions while collecting and inlining the calls after. */
+		private Object rewrite(Object node) {
+			if(node instanceof BinaryOperation) {
+				BinaryOperation n = (BinaryOperation) node;
+				Object left = rewrite(n.leftNode), right = rewrite(n.rightNode);
+				return left==n.leftNode&&right==n.rightNode?node:new BinaryOperation(left, n.operation, right, n.position);
+			} else if(node instanceof UnaryOperation) {
+				UnaryOperation n = (UnaryOperation) node;
+				Object operand = rewrite(n.node);
+				return operand==n.node?node:new UnaryOperation(n.operation, operand, n.position);
+			} else if(node instanceof VarAssignNode) {
+				VarAssignNode n = (VarAssignNode) node;
+				Object expression = rewrite(n.expression);
+				return expression==n.expression?node:new VarAssignNode(n.name, expression, n.position);
+			} else if(node instanceof VarModifyNode) {
+				VarModifyNode n = (VarModifyNode) node;
+				Object expression = rewrite(n.node);
+				return expression==n.node?node:new VarModifyNode(n.name, expression, n.position);
+			} else if(node instanceof IfNode) {
+				IfNode n = (IfNode) node;
+				boolean changed = false;
+				ArrayList<CaseDataNode> cases = new ArrayList<CaseDataNode>();
+				for(CaseDataNode c:n.cases) {
+					CaseDataNode r = (CaseDataNode) rewrite(c);
+					changed |= r != c;
+					cases.add(r);
+				}
+				CaseDataNode else_case = (CaseDataNode) rewrite(n.else_case);
+				return !changed&&else_case==n.else_case?node:new IfNode(cases, else_case);
+			} else if(node instanceof CaseDataNode) {
+				CaseDataNode n = (CaseDataNode) node;
+				Object condition = rewrite(n.condition), statements = rewrite(n.statements);
+				return condition==n.condition&&statements==n.statements?node:new CaseDataNode(condition, statements, n.shouldReturnNull);
+			} else if(node instanceof ForNode) {
+				ForNode n = (ForNode) node;
+				Object start = rewrite(n.start), end = rewrite(n.end), step = rewrite(n.step), body = rewrite(n.body);
+				return start==n.start&&end==n.end&&step==n.step&&body==n.body?node:new ForNode(n.varName, start, end, step, body, n.shouldReturnNull);
+			} else if(node instanceof ForInNode) {
+				ForInNode n = (ForInNode) node;
+				Object iterable = rewrite(n.iterable), body = rewrite(n.body);
+				return iterable==n.iterable&&body==n.body?node:new ForInNode(n.varName, iterable, body, n.shouldReturnNull);
+			} else if(node instanceof WhileNode) {
+				WhileNode n = (WhileNode) node;
+				Object condition = rewrite(n.condition), body = rewrite(n.body);
+				return condition==n.condition&&body==n.body?node:new WhileNode(condition, body, n.shouldReturnNull);
+			} else if(node instanceof FunctionDefNode) {
+				FunctionDefNode n = (FunctionDefNode) node;
+				if(collecting && n.name != null) definitions.put(n.name, definitions.containsKey(n.name)?null:n);
+				/* The body of an inlined function is left as it is, the guard of its calls compares it with the function called. */
+				if(!collecting && n.name != null && candidates.containsKey(n.name) && candidates.get(n.name).function == n) return node;
+				Object body = rewrite(n.body);
+				return body==n.body?node:new FunctionDefNode(n.name, n.position, body, n.shouldAutoReturn, n.args);
+			} else if(node instanceof CallNode) {
+				CallNode n = (CallNode) node;
+				Object nodeToCall = rewrite(n.nodeToCall);
+				Object[] args = rewrite(n.args);
+				CallNode call = nodeToCall==n.nodeToCall&&args==n.args?n:new CallNode(nodeToCall, args);
+				if(collecting || !(nodeToCall instanceof VarAccessNode)) return call;
+				InlinedCallNode candidate = candidates.get(((VarAccessNode) nodeToCall).name);
+				if(candidate == null || candidate.function.args.length != args.length) return call;
+				return new InlinedCallNode(call, candidate.function, candidate.body, candidate.free);
+			} else if(node instanceof ListNode) {
+				ListNode n = (ListNode) node;
+				boolean changed = false;
+				ArrayList<Object> elements = new ArrayList<Object>(n.elementNodes.size());
+				for(Object e:n.elementNodes) {
+					Object r = rewrite(e);
+					changed |= r != e;
+					elements.add(r);
+				}
+				return changed?new ListNode(elements, n.spans):node;
+			} else if(node instanceof MapNode) {
+				MapNode n = (MapNode) node;
+				Object[] keys = rewrite(n.keys), values = rewrite(n.values);
+				return keys==n.keys&&values==n.values?node:new MapNode(keys, values, n.position);
+			} else if(node instanceof PointAccessNode) {
+				PointAccessNode n = (PointAccessNode) node;
+				Object[] nodes = rewrite(n.nodes);
+				return nodes==n.nodes?node:new PointAccessNode(nodes);
+			} else if(node instanceof ReturnNode) {
+				ReturnNode n = (ReturnNode) node;
+				Object toReturn = rewrite(n.toReturn);
+				return toReturn==n.toReturn?node:new ReturnNode(toReturn);
+			} else if(node instanceof ObjectDefNode) {
+				ObjectDefNode n = (ObjectDefNode) node;
+				Object body = rewrite(n.body);
+				return body==n.body?node:new ObjectDefNode(n.name, n.args, body);
+			} else if(node instanceof InstantiateNode) {
+				InstantiateNode n = (InstantiateNode) node;
+				Object nodeToCall = rewrite(n.nodeToCall);
+				Object[] args = rewrite(n.args);
+				return nodeToCall==n.nodeToCall&&args==n.args?node:new InstantiateNode(nodeToCall, args);
+			}
+			return node;
 		}
 		
-		private Object if_expression_bc() {
-			ParseResult pr = new ParseResult();
-			IfNode node = new IfNode(new ArrayList<CaseDataNode>(), null);
+		private Object[] rewrite(Object[] nodes) {
+			Object[] copy = null;
+			for(int i = 0; i < nodes.length; i++) {
+				Object r = rewrite(nodes[i]);
+				if(r == nodes[i]) continue;
+				if(copy == null) copy = nodes.clone();
+				copy[i] = r;
+			}
+			return copy==null?nodes:copy;
+		}
+		
+	}
+	
+	public static class Interpreter {
+		
+		public static class Value {
+			protected Context context;
+			protected int position = Sequence.NONE;
+			
+			protected Error.RuntimeError illegal_operation(Object obj) { return new RuntimeError("Illegal operation with " + obj, getSeq()); }
+			
+			protected Object execute(Value... args) { Engine.current().err.println("No execution defined for " + this); return null; }
+			public Value copy() { return this; }
+			
+			public Context getContext() { return context; }
+			public Value setContext(Context context) { this.context = context; return this; }
+			
+			public Context generateContext(Context context) {
+				if(this.context != null) return this.context;
+				Context selfContext = new Context("<value>", context);
+				selfContext.symbolTable.set("this", this);
+				this.context = selfContext;
+				return this.context;
+			}
+			
+			protected Object add(Object obj) { return StringValue.concat(toString(), String.valueOf(obj)); }
+			protected Object sub(Object obj) { return illegal_operation(obj); }
+			protected Object mult(Object obj) { return illegal_operation(obj); }
+			protected Object div(Object obj) { return illegal_operation(obj); }
 			
-			advanceNewLines(pr);
+			public Object _equals(Object obj) { return this.equals(obj)?Number.TRUE:Number.FALSE; }
+			public Object _not_equals(Object obj) { return illegal_operation(obj); }
+			public Object _less(Object obj) { return illegal_operation(obj); }
+			public Object _greater(Object obj) { return illegal_operation(obj); }
+			public Object _less_equals(Object obj) { return illegal_operation(obj); }
+			public Object _greater_equals(Object obj) { return illegal_operation(obj); }
+			public Object _and(Object obj) { return illegal_operation(obj); }
+			public Object _or(Object obj) { return illegal_operation(obj); }
 			
-			boolean reverse = true;
+			public boolean isTrue() { return false; }
 			
-			if(currentToken.matches("elseif", TokenType.KEYWORD)) {
-				Object o = pr.register(if_expression_b());
-				if(pr.error != null) return pr;
-				IfNode tempnode = (IfNode) o;
-				node.cases = tempnode.cases;
-				node.else_case = tempnode.else_case;
-				reverse = false;
-			} else {
-				Object o = pr.register(if_expression_c());
-				if(pr.error != null) return pr;
-				node.else_case = (CaseDataNode) o;
-				if(o != null) reverse = false;
-			}
+			public Object _not() { return !isTrue(); }
 			
-			if(reverse) reverse(pr.advance_count);
+			public Sequence getSeq() { return Sequence.of(position); }
+			public Value setSeq(Sequence seq) { this.position = seq==null?Sequence.NONE:Sequence.pack(seq.getLine(), seq.getOffset()); return this; }
 			
-			return pr.success(node);
-		}
-
-		private Object if_expression_b() {
-			return if_expression_cases("elseif", new IfNode(new ArrayList<CaseDataNode>(), null));
+			public int getPosition() { return position; }
+			public Value setPosition(int position) { this.position = position; return this; }
 		}
 		
-		private Object if_expression_c() {
-			ParseResult pr = new ParseResult();
-			Object else_case = null;
+		/*
+		 * An integer, held exactly in a long, or a double. Between two integers, an operation gives an integer as long as
+		 * the result fits in a long, and a division only when it is exact. Any double makes the result a double.
+		 */
+		public static class Number extends Value {
 			
-			if(currentToken.matches("else", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
+			/* Difference under which two numbers, one of them a double, are equal. */
+			private static final double EPSILON = 0.00025;
+			
+			public static final Number NULL = new Constant(0);
+			public static final Number FALSE = new Constant(0);
+			public static final Number TRUE = new Constant(1);
+			
+			/* The constants are shared by every execution, so they never keep a context or a position. */
+			private static final class Constant extends Number {
 				
-				if(currentToken.matches(TokenType.COLON)) {
-//					return pr.failure(new Error.SyntaxError("Expected ':'", currentToken.getSeq()));
-					pr.register_advancement();
-					advance();
-				}
+				private Constant(long value) { super(value); }
 				
-				advanceNewLines(pr);
+				public Value setContext(Context context) { return this; }
+				public Value setPosition(int position) { return this; }
 				
-				if(currentToken.matches(TokenType.LBRA)) {
-					pr.register_advancement();
-					advance();
-					
-					Object statements = pr.register(statements());
-					if(pr.error != null) return pr;
-					
-					else_case = new CaseDataNode(null, statements, true);
-					
-					if(currentToken.matches(TokenType.RBRA)) {
-						pr.register_advancement();
-						advance();
-					} else return pr.failure(new Error.SyntaxError("Expected '}'", currentToken.getSeq()));
-				} else {
-					advanceNewLines(pr);
-					Object expr = pr.register(statement());
-					if(pr.error != null) return pr;
-					else_case = new CaseDataNode(null, expr, false);
+				public Context generateContext(Context context) {
+					Context selfContext = new Context("<value>", context);
+					selfContext.symbolTable.set("this", this);
+					return selfContext;
 				}
+				
 			}
 			
-			return pr.success(else_case);
-		}
-		
-		private ParseResult for_expression() {
-			if(debug) System.out.println("Parser: for");
-			
-			ParseResult pr = new ParseResult();
+			/* For an integer, value is longValue as a double. */
+			protected boolean integer;
+			protected long longValue;
+			protected double value;
 			
-			if(!currentToken.matches("for", TokenType.KEYWORD))
-				return pr.failure(new Error.SyntaxError("Expected 'for'", currentToken.getSeq()));
+			public Number(long value) { setValue(value); }
+			public Number(double value) { setValue(value); }
+			public Number(Object value) {
+				Number n = valueOf((String) value);
+				integer = n.integer;
+				longValue = n.longValue;
+				this.value = n.value;
+			}
 			
-			pr.register_advancement();
-			advance();
+			/* Number of a literal, an integer unless it has a decimal point or does not fit in a long. */
+			public static Number valueOf(String text) {
+				if(text.indexOf('.') < 0) {
+					try {
+						return new Number(Long.parseLong(text));
+					} catch (NumberFormatException e) {}
+				}
+				return new Number(Double.parseDouble(text));
+			}
 			
-			advanceNewLines(pr);
+			protected Object add(Object obj) {
+				if(obj instanceof Number) {
+					Number n = (Number) obj;
+					if(integer && n.integer) {
+						long r = longValue+n.longValue;
+						if(((longValue^r)&(n.longValue^r)) >= 0) return new Number(r);
+					}
+					return new Number(value+n.value);
+				}
+				else if(obj instanceof StringValue) return StringValue.concat(toString(), ((StringValue)obj).value);
+				else return illegal_operation(obj);
+			}
 			
-			if(!currentToken.matches(TokenType.IDENTIFIER))
-				return pr.failure(new Error.SyntaxError("Expected identifier", currentToken.getSeq()));
+			protected Object sub(Object obj) {
+				if(obj instanceof Number) {
+					Number n = (Number) obj;
+					if(integer && n.integer) {
+						long r = longValue-n.longValue;
+						if(((longValue^n.longValue)&(longValue^r)) >= 0) return new Number(r);
+					}
+					return new Number(value-n.value);
+				} else return illegal_operation(obj);
+			}
 			
-			Token varName = currentToken;
+			protected Object mult(Object obj) {
+				if(obj instanceof Number) {
+					Number n = (Number) obj;
+					if(integer && n.integer) {
+						long a = longValue, b = n.longValue, r = a*b;
+						if(((Math.abs(a)|Math.abs(b))>>>31 == 0 || b == 0 || r/b == a) && !(a == Long.MIN_VALUE && b == -1)) return new Number(r);
+					}
+					return new Number(value*n.value);
+				} else return illegal_operation(obj);
+			}
 			
-			pr.register_advancement();
-			advance();
+			protected Object div(Object obj) {
+				if(obj instanceof Number) {
+					Number n = (Number)obj;
+					if(n.value == 0) return new Error.RuntimeError("Division by zero", getSeq());
+					if(integer && n.integer && longValue%n.longValue == 0 && !(longValue == Long.MIN_VALUE && n.longValue == -1))
+						return new Number(longValue/n.longValue);
+					return new Number(value/n.value);
+				} else return illegal_operation(obj);
+			}
 			
-			advanceNewLines(pr);
+			public Object _equals(Object obj) {
+				if(obj instanceof Number) return new Number(isEqualTo((Number)obj)?1:0); else return illegal_operation(obj);
+			}
 			
-			if(!currentToken.matches(TokenType.EQUALS))
-				return pr.failure(new Error.SyntaxError("Expected '='", currentToken.getSeq()));
+			public Object _not_equals(Object obj) {
+				if(obj instanceof Number) return new Number(!isEqualTo((Number)obj)?1:0); else return illegal_operation(obj);
+			}
 			
-			pr.register_advancement();
-			advance();
+			public Object _less(Object obj) {
+				if(obj instanceof Number) return new Number(compare((Number)obj)<0?1:0); else return illegal_operation(obj);
+			}
 			
-			advanceNewLines(pr);
+			public Object _greater(Object obj) {
+				if(obj instanceof Number) return new Number(compare((Number)obj)>0?1:0); else return illegal_operation(obj);
+			}
 			
-			Object start = pr.register(expression());
-			if(pr.error != null) return pr;
+			public Object _less_equals(Object obj) {
+				if(obj instanceof Number) return new Number(compare((Number)obj)<=0&&!isNaN((Number)obj)?1:0); else return illegal_operation(obj);
+			}
 			
-			advanceNewLines(pr);
+			public Object _greater_equals(Object obj) {
+				if(obj instanceof Number) return new Number(compare((Number)obj)>=0&&!isNaN((Number)obj)?1:0); else return illegal_operation(obj);
+			}
 			
-			if(!currentToken.matches("to", TokenType.KEYWORD))
-				return pr.failure(new Error.SyntaxError("Expected 'to'", currentToken.getSeq()));
+			public Object _and(Object obj) {
+				if(obj instanceof Number) return new Number((isTrue()&&((Number)obj).isTrue())?1:0); else return illegal_operation(obj);
+			}
 			
-			pr.register_advancement();
-			advance();
+			public Object _or(Object obj) {
+				if(obj instanceof Number) return new Number((isTrue()||((Number)obj).isTrue())?1:0); else return illegal_operation(obj);
+			}
 			
-			advanceNewLines(pr);
+			public boolean isTrue() { return integer?longValue!=0:!isEqualTo(0); }
+			public Object _not() { return new Number(value==0?1:0); }
 			
-			Object end = pr.register(expression());
-			if(pr.error != null) return pr;
+			/* Order of two numbers, exact between integers. A NaN is neither less nor greater than anything. */
+			public int compare(Number n) {
+				if(integer && n.integer) return Long.compare(longValue, n.longValue);
+				return value<n.value?-1:value>n.value?1:0;
+			}
 			
-			Object by = null;
+			private boolean isNaN(Number n) { return Double.isNaN(value) || Double.isNaN(n.value); }
 			
-			advanceNewLines(pr);
+			public boolean isInteger() { return integer; }
+			public double getValue() { return value; }
+			public long getLongValue() { return integer?longValue:(long) value; }
 			
-			if(currentToken.matches("by", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
-				by = pr.register(expression());
-				if(pr.error != null) return pr;
+			public void setValue(long value) {
+				integer = true;
+				longValue = value;
+				this.value = value;
 			}
 			
-			advanceNewLines(pr);
-			
-			if(currentToken.matches(TokenType.COLON)) {
-//				return pr.failure(new Error.SyntaxError("Expected ':'", currentToken.getSeq()));
-				
-				pr.register_advancement();
-				advance();
+			public void setValue(double value) {
+				integer = false;
+				this.value = value;
 			}
 			
-			advanceNewLines(pr);
+			public boolean isEqualTo(Number n) { return integer && n.integer?longValue==n.longValue:isEqualTo(n.value); }
+			public boolean isEqualTo(double x) { return Math.abs(value-x) < EPSILON; }
 			
-			if(currentToken.matches(TokenType.LBRA)) {
-				pr.register_advancement();
-				advance();
-
-				Object body = pr.register(statements());
-				if(pr.error != null) return pr;
-				
-				if(!currentToken.matches(TokenType.RBRA))
-					return pr.failure(new Error.SyntaxError("Expected '}'", currentToken.getSeq()));
-				
-				pr.register_advancement();
-				advance();
-				
-				return pr.success(new ForNode(varName, start, end, by, body, true));
+			public String toString() {
+				if(integer) return Long.toString(longValue);
+				return value%1==0&&Math.abs(value)<1e15?Long.toString((long) value):Double.toString(value);
 			}
 			
-			Object body = pr.register(expression());
-			if(pr.error != null) return pr;
-			
-			return pr.success(new ForNode(varName, start, end, by, body, false));
+			public Value copy() { return (integer?new Number(longValue):new Number(value)).setContext(this.context); }
 		}
 		
-		private ParseResult while_expression() {
-			if(debug) System.out.println("Parser: while");
-			
-			ParseResult pr = new ParseResult();
-			
-			if(!currentToken.matches("while", TokenType.KEYWORD))
-				return pr.failure(new Error.SyntaxError("Expected 'while'", currentToken.getSeq()));
-			
-			pr.register_advancement();
-			advance();
-			
-			advanceNewLines(pr);
+		/*
+		 * Values a 'for ... in' loop walks through. The loop reads the elements straight from the iterator,
+		 * without going through the methods of the value.
+		 */
+		public static interface IterableValue extends Iterable<Value> {}
+		
+		/* Numbers from start to end (excluded) by step, made one at a time while iterating. */
+		public static class Range extends Value implements IterableValue {
 			
-			Object condition = pr.register(expression());
-			if(pr.error != null) return pr;
+			protected final Number start, end, step;
 			
-			if(currentToken.matches(TokenType.COLON)) {
-				pr.register_advancement();
-				advance();
+			public Range(Number start, Number end, Number step) {
+				this.start = (Number) start.copy();
+				this.end = (Number) end.copy();
+				this.step = (Number) step.copy();
 			}
 			
-			if(currentToken.matches(TokenType.LBRA)) {
-				pr.register_advancement();
-				advance();
-				
-				Object body = pr.register(statements());
-				if(pr.error != null) return pr;
-				
-				if(!currentToken.matches(TokenType.RBRA))
-					return pr.failure(new Error.SyntaxError("Expected '}'", currentToken.getSeq()));
-				
-				pr.register_advancement();
-				advance();
-				
-				return pr.success(new WhileNode(condition, body, true));
+			public Iterator<Value> iterator() {
+				return new Iterator<Value>() {
+					private Number i = start;
+					public boolean hasNext() { return step.value>0?i.compare(end)<0:i.compare(end)>0; }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						Number n = i;
+						i = (Number) i.add(step);
+						return n.copy();
+					}
+				};
 			}
 			
-			Object body = pr.register(statement());
-			if(pr.error != null) return pr;
+			public String toString() { return "range("+start+", "+end+(step.isEqualTo(1)||step.isEqualTo(-1)?"":", "+step)+")"; }
 			
-			return pr.success(new WhileNode(condition, body, false));
 		}
 		
-		private ParseResult function_expression() {
-			if(debug) System.out.println("Parser: function");
+		public static class StringValue extends Value implements IterableValue {
 			
-			ParseResult pr = new ParseResult();
+			protected String value;
 			
-			if(!currentToken.matches("function", TokenType.KEYWORD))
-				return pr.failure(new Error.SyntaxError("Expected 'function'", currentToken.getSeq()));
-
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
+			public StringValue(String value) { this(value, Execution.current()); }
 			
-			Token function_name = null;
-			if(currentToken.matches(TokenType.IDENTIFIER)) {
-				function_name = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				if(!currentToken.matches(TokenType.LPAREN))
-					return pr.failure(new Error.SyntaxError("Expected '('", currentToken.getSeq()));
-			} else {
-				advanceNewLines(pr);
-				if(!currentToken.matches(TokenType.LPAREN))
-					return pr.failure(new Error.SyntaxError("Expected '(' or identifier", currentToken.getSeq()));
+			/* Charged to the given run, for the interpreter which has it at hand. */
+			public StringValue(String value, Execution execution) {
+				this.value = value;
+				execution.allocate(Execution.STRING_BYTES+(value==null?0:value.length()));
+			}
+			public StringValue(Object value) { this((String) value); }
+			private StringValue() {}
+			
+			/*
+			 * The concatenation of 'a' and 'b', its bytes reserved before it is built, or the error ending the run
+			 * if they would go over its budget: a string doubled again and again would be charged too late otherwise.
+			 */
+			protected static Object concat(String a, String b) {
+				Error error = Execution.current().reserve(Execution.STRING_BYTES+(long) a.length()+b.length());
+				if(error != null) return error;
+				StringValue concatenation = new StringValue();
+				concatenation.value = a.concat(b);
+				return concatenation;
+			}
+			
+			/*
+			 * Compiled patterns by regex, shared by all threads, without locking on lookups as in ParseCache: each entry records
+			 * when it was last used, and a put over PATTERNS evicts the least recently used ones. An invalid regex is kept as INVALID,
+			 * so that it is not compiled again.
+			 */
+			private static final int PATTERNS = 64;
+			private static final Pattern INVALID = Pattern.compile("");
+			private static final ConcurrentHashMap<String, CachedPattern> patterns = new ConcurrentHashMap<String, CachedPattern>();
+			/* Held by the thread evicting, the others leave the eviction to it. */
+			private static final ReentrantLock eviction = new ReentrantLock();
+			
+			private static final class CachedPattern {
+				
+				final Pattern pattern;
+				volatile long used = System.nanoTime();
+				
+				CachedPattern(Pattern pattern) { this.pattern = pattern; }
+				
 			}
 			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
-			
-			ArrayList<Token> temp_tokens = new ArrayList<JIPL.Token>();
-			
-			if(currentToken.matches(TokenType.IDENTIFIER)) {
-				temp_tokens.add(currentToken);
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				while(currentToken.matches(TokenType.COMMAS)) {
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
-					if(!currentToken.matches(TokenType.IDENTIFIER))
-						return pr.failure(new Error.SyntaxError("Expected identifier", currentToken.getSeq()));
-					temp_tokens.add(currentToken);
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
+			/* The compiled regex, or null when it is not valid. */
+			protected static Pattern pattern(String regex) {
+				CachedPattern cached = patterns.get(regex);
+				if(cached != null) cached.used = System.nanoTime();
+				else {
+					Pattern pattern;
+					try {
+						pattern = Pattern.compile(regex);
+					} catch (PatternSyntaxException e) { pattern = INVALID; }
+					cached = new CachedPattern(pattern);
+					patterns.put(regex, cached);
+					if(patterns.size() > PATTERNS && eviction.tryLock()) {
+						try {
+							while(patterns.size() > PATTERNS) evictOldest();
+						} finally { eviction.unlock(); }
+					}
 				}
-				if(!currentToken.matches(TokenType.RPAREN))
-					return pr.failure(new Error.SyntaxError("Expected ',' or ')'", currentToken.getSeq()));
-			} else {
-				advanceNewLines(pr);
-				if(!currentToken.matches(TokenType.RPAREN))
-					return pr.failure(new Error.SyntaxError("Expected identifier or ')'", currentToken.getSeq()));
+				return cached.pattern==INVALID?null:cached.pattern;
 			}
 			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
+			private static void evictOldest() {
+				Map.Entry<String, CachedPattern> oldest = null;
+				for(Map.Entry<String, CachedPattern> e:patterns.entrySet())
+					if(oldest == null || e.getValue().used - oldest.getValue().used < 0) oldest = e;
+				if(oldest != null) patterns.remove(oldest.getKey(), oldest.getValue());
+			}
 			
-			if(currentToken.matches(TokenType.COLON)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				
-				Object body = pr.register(expression());
-				if(pr.error != null) return pr;
+			/*
+			 * Text of a string given to a matcher, which polls the run every INTERVAL characters read, so that a regex
+			 * backtracking for ever is ended by the limits of the run or by stop(), through a Stopped exception.
+			 */
+			protected static final class Interruptible implements CharSequence {
 				
-				return pr.success(new FunctionDefNode(function_name, body, true, temp_tokens.toArray(new Token[temp_tokens.size()])));
-			} else {
-				if(!currentToken.matches(TokenType.LBRA))
-					return pr.failure(new SyntaxError("Expected ':' or '{'", currentToken.getSeq()));
+				private static final int INTERVAL = 4096;
 				
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
+				private final String text;
+				private final Execution execution;
+				private int reads = 0;
 				
-				Object body = pr.register(statements());
-				if(pr.error != null) return pr;
+				protected Interruptible(String text, Execution execution) {
+					this.text = text;
+					this.execution = execution;
+				}
 				
-				if(!currentToken.matches(TokenType.RBRA))
-					return pr.failure(new SyntaxError("Function: expected '}'", currentToken.getSeq()));
+				public char charAt(int index) {
+					if(++reads == INTERVAL) {
+						reads = 0;
+						Error error = execution.poll();
+						if(error != null) throw new Stopped(error);
+					}
+					return text.charAt(index);
+				}
 				
-				pr.register_advancement();
-				advance();
+				public int length() { return text.length(); }
+				public CharSequence subSequence(int start, int end) { return text.subSequence(start, end); }
+				public String toString() { return text; }
 				
-				return pr.success(new FunctionDefNode(function_name, body, false, temp_tokens.toArray(new Token[temp_tokens.size()])));
 			}
 			
-		}
-		
-		private ParseResult object_expression() {
-			if(debug) System.out.println("Parser: object");
-			
-			ParseResult pr = new ParseResult();
-			
-			if(!currentToken.matches(TokenType.IDENTIFIER))
-				return pr.failure(new Error.SyntaxError("Expected identifier for the object.", currentToken.getSeq()));
-			
-			Token name = currentToken;
-			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
-			
-			if(!currentToken.matches(TokenType.LPAREN))
-				return pr.failure(new Error.SyntaxError("Expected '('.", currentToken.getSeq()));
-			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
-			
-			ArrayList<Token> args = new ArrayList<JIPL.Token>();
-			if(currentToken.matches(TokenType.IDENTIFIER)) {
-				args.add(currentToken);
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				while(currentToken.matches(TokenType.COMMAS)) {
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
-					if(!currentToken.matches(TokenType.IDENTIFIER))
-						return pr.failure(new Error.SyntaxError("Expected identifier", currentToken.getSeq()));
-					args.add(currentToken);
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
+			/* Thrown out of a matcher to end it, holding the error ending the run. */
+			protected static final class Stopped extends RuntimeException {
+				
+				private static final long serialVersionUID = 1L;
+				protected final Error error;
+				
+				private Stopped(Error error) {
+					super(null, null, false, false);
+					this.error = error;
 				}
+				
 			}
 			
-			if(!currentToken.matches(TokenType.RPAREN))
-				return pr.failure(new Error.SyntaxError("Expected ')'.", currentToken.getSeq()));
+			private Interruptible interruptible() { return new Interruptible(value, Execution.current()); }
 			
-			pr.register_advancement();
-			advance();
+			protected Object add(Object obj) { return concat(value, obj.toString()); }
 			
-			if(!currentToken.matches(TokenType.LBRA))
-				return pr.failure(new SyntaxError("Expected ':' or '{'", currentToken.getSeq()));
+			public Object _equals(Object obj) { return value.equalsIgnoreCase(obj+"")?Number.TRUE:Number.FALSE; }
 			
-			pr.register_advancement();
-			advance();
+			public boolean isTrue() { return value.length() > 0; }
 			
-			Object body = pr.register(statements());
-			if(pr.error != null) return pr;
+			public Context generateContext(Context context) {
+				if(this.context != null) return this.context;
+				/* The methods are made on their first lookup, most strings having one or two of them called, if any. */
+				Context selfContext = new Context("<value>", context, new SymbolTable(context==null?null:context.symbolTable) {
+					public Object get(String name) {
+						if(!symbols.containsKey(name)) {
+							Object method = method(name);
+							if(method != null) symbols.put(name, method);
+						}
+						return super.get(name);
+					}
+				});
+				selfContext.symbolTable.set("length", new Number(value.length()));
+				selfContext.symbolTable.set("this", this);
+				this.context = selfContext;
+				return selfContext;
+			}
 			
-			if(!currentToken.matches(TokenType.RBRA))
-				return pr.failure(new SyntaxError("Expected '}'", currentToken.getSeq()));
+			private NativeFunction method(String name) {
+				switch(name) {
+					case "split": return new NativeFunction("split", 1) {
+						protected Object call1(Value text) {
+							String s = text.toString();
+							String[] strs;
+							/* A single plain character is split on by String without any regex. */
+							if(s.length() == 1 && s.charAt(0) != ' ' && ".$|()[{^?*+\\".indexOf(s.charAt(0)) < 0) strs = value.split(s);
+							else {
+								Pattern pattern = pattern(s.equals(" ")?"\\s+":s);
+								if(pattern == null) return new Error.RuntimeError("Invalid pattern '"+s+"' for the function 'split'", getSeq());
+								try {
+									strs = pattern.split(interruptible());
+								} catch (Stopped e) { return e.error; }
+							}
+							StringValue[] vls = new StringValue[strs.length];
+							for(int i = 0; i < strs.length; i++)
+								vls[i] = new StringValue(strs[i]);
+							
+							return new List(vls);
+						}
+					};
+					case "charAt": return new NativeFunction("charAt", 1) {
+						protected Object call1(Value arg) {
+							if(arg instanceof Number) {
+								int index = (int) ((Number)arg).value;
+								if(index < 0 || index >= value.length())
+									return new Error.RuntimeError("Index out of bounds " + index + ".", null);
+								return new StringValue(""+value.charAt(index));
+							}
+							return new Error.RuntimeError("Invalid argument type, "+arg+" is not allowed to the function 'get'", getSeq());
+						}
+					};
+					case "substring": return new NativeFunction("sub", 2) {
+						protected Object call2(Value from, Value to) {
+							if(from instanceof Number && to instanceof Number) {
+								int start = (int) ((Number)from).value, end = (int) ((Number)to).value;
+								if(start < 0 || start > value.length())
+									return new Error.RuntimeError("Index out of bounds " + start + ".", null);
+								if(end < 0 || end > value.length())
+									return new Error.RuntimeError("Index out of bounds " + end + ".", null);
+								return new StringValue(value.substring(start, end));
+							}
+							
+							return new Error.RuntimeError("Invalid argument type, "+from+"::"+to+" is not allowed to the function 'get'", getSeq());
+						}
+					};
+					case "indexOf": return new NativeFunction("indexOf", 1) {
+						protected Object call1(Value text) { return new Number(value.indexOf(text.toString())); }
+					};
+					case "startsWith": return new NativeFunction("startsWith", 1) {
+						protected Object call1(Value text) { return value.startsWith(text.toString())?Number.TRUE:Number.FALSE; }
+					};
+					case "replace": return new NativeFunction("replace", 2) {
+						protected Object call2(Value target, Value replacement) { return new StringValue(value.replace(target.toString(), replacement.toString())); }
+					};
+					case "matches": return new NativeFunction("matches", 1) {
+						protected Object call1(Value regex) {
+							Pattern pattern = pattern(regex.toString());
+							if(pattern == null) return new Error.RuntimeError("Invalid pattern '"+regex+"' for the function 'matches'", getSeq());
+							try {
+								return pattern.matcher(interruptible()).matches()?Number.TRUE:Number.FALSE;
+							} catch (Stopped e) { return e.error; }
+						}
+					};
+					case "find": return new NativeFunction("find", 1) {
+						protected Object call1(Value regex) {
+							Pattern pattern = pattern(regex.toString());
+							if(pattern == null) return new Error.RuntimeError("Invalid pattern '"+regex+"' for the function 'find'", getSeq());
+							try {
+								Matcher matcher = pattern.matcher(interruptible());
+								return matcher.find()?new StringValue(matcher.group()):Number.NULL;
+							} catch (Stopped e) { return e.error; }
+						}
+					};
+					case "findAll": return new NativeFunction("findAll", 1) {
+						protected Object call1(Value regex) {
+							Pattern pattern = pattern(regex.toString());
+							if(pattern == null) return new Error.RuntimeError("Invalid pattern '"+regex+"' for the function 'findAll'", getSeq());
+							ArrayList<Object> found = new ArrayList<Object>();
+							try {
+								Matcher matcher = pattern.matcher(interruptible());
+								while(matcher.find()) found.add(new StringValue(matcher.group()));
+							} catch (Stopped e) { return e.error; }
+							return new List(found);
+						}
+					};
+					case "trim": return new NativeFunction("trim", 0) {
+						protected Object call0() { return new StringValue(value.trim()); }
+					};
+					case "toUpper": return new NativeFunction("toUpper", 0) {
+						protected Object call0() { return new StringValue(value.toUpperCase()); }
+					};
+					case "toLower": return new NativeFunction("toLower", 0) {
+						protected Object call0() { return new StringValue(value.toLowerCase()); }
+					};
+					default: return null;
+				}
+			}
 			
-			pr.register_advancement();
-			advance();
+			public Iterator<Value> iterator() {
+				return new Iterator<Value>() {
+					private int i = 0;
+					public boolean hasNext() { return i < value.length(); }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						return new StringValue(String.valueOf(value.charAt(i++)));
+					}
+				};
+			}
 			
-			return pr.success(new ObjectDefNode(name, args.toArray(new Token[args.size()]), body));
+			public String toString() { return value; }
 		}
 		
-		private ParseResult new_expression() {
-			ParseResult pr = new ParseResult();
-			
-			if(!currentToken.matches(TokenType.IDENTIFIER))
-				return pr.failure(new Error.SyntaxError("Expected identifier", currentToken.getSeq()));
-			
-			Token name = currentToken;
-			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
-			
-			if(!currentToken.matches(TokenType.LPAREN))
-				return pr.failure(new Error.SyntaxError("Expected '('", currentToken.getSeq()));
+		public static class BaseFunction extends Value {
 			
-			pr.register_advancement();
-			advance();
-			advanceNewLines(pr);
+			public String name;
 			
-			ArrayList<Object> args = new ArrayList<Object>();
+			public BaseFunction(String name) {
+				this.name = name==null?"<anonymous>":name;
+			}
 			
-			if(currentToken.matches(TokenType.RPAREN)) {
-				pr.register_advancement();
-				advance();
-			} else {
-				Object expr1 = pr.register(expression());
-				if(pr.error != null) return pr;
-				args.add(expr1);
-				
-				while(currentToken.matches(TokenType.COMMAS)) {
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
-					args.add(pr.register(expression()));
-					if(pr.error != null) return pr;
-				}
-				
-				if(!currentToken.matches(TokenType.RPAREN))
-					return pr.failure(new Error.SyntaxError("Expected ')'", currentToken.getSeq()));
-				pr.register_advancement();
-				advance();
+			protected Context generateNewContext() {
+				Context new_context = new Context(name, context);
+				return new_context;
 			}
 			
-			return pr.success(new InstantiateNode(new VarAccessNode(name), args.toArray()));
-		}
-		
-		private ParseResult call() {
-			ParseResult pr = new ParseResult();
+			protected Context generateNewContext(Context context) {
+				Context new_context = new Context(name, context);
+				return new_context;
+			}
 			
-			Object atom = pr.register(factor());
-			if(pr.error != null) return pr;
+			protected Object check_args(String[] args_name, Value[] args) {
+				RTResult res = new RTResult();
+				if(args.length != args_name.length)
+					return res.failure(new Error.RuntimeError("Incorrect number of argument have been passed in " + name, getSeq()));
+				return res.success(null);
+			}
 			
-			if(currentToken.matches(TokenType.LPAREN)) {
-				if(debug) System.out.println("Parser: call_"+atom);
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				
-				ArrayList<Object> args = new ArrayList<Object>();
-				
-				if(currentToken.matches(TokenType.RPAREN)) {
-					pr.register_advancement();
-					advance();
-				} else {
-					args.add(pr.register(expression()));
-					if(pr.error != null)
-						return pr.failure(new Error.SyntaxError("Expected ')'", currentToken.getSeq()));
-					while(currentToken.matches(TokenType.COMMAS)) {
-						pr.register_advancement();
-						advance();
-						advanceNewLines(pr);
-						args.add(pr.register(expression()));
-						if(pr.error != null) return pr;
-					}
-					if(!currentToken.matches(TokenType.RPAREN))
-						return pr.failure(new Error.SyntaxError("Expected ')'", currentToken.getSeq()));
-					pr.register_advancement();
-					advance();
+			protected void populate_args(String[] args_name, Value[] args, Context exec_context) {
+				for(int i = 0; i < args.length; i++) {
+					String arg_name = args_name[i];
+					Value arg_value = args[i];
+					exec_context.symbolTable.set(arg_name, arg_value);
 				}
-				return pr.success(new CallNode(atom, args.toArray(new Object[args.size()])));
 			}
 			
-			if(currentToken.matches(TokenType.POINT)) {
-				ArrayList<Object> calls = new ArrayList<Object>();
-				calls.add(atom);
-				
-				while(currentToken.matches(TokenType.POINT)) {
-					pr.register_advancement();
-					advance();
-					advanceNewLines(pr);
-					if(currentToken.matches(TokenType.LBRA)) {
-						pr.register_advancement();
-						advance();
-						advanceNewLines(pr);
-						Object obj = pr.register(statements());
-						if(pr.error != null) return pr;
-						if(!currentToken.matches(TokenType.RBRA))
-							return pr.failure(new SyntaxError("Expected '}'", currentToken.getSeq()));
-						pr.register_advancement();
-						advance();
-						advanceNewLines(pr);
-						calls.add(obj);
-					} else {
-						Object obj = pr.register(call());
-						if(pr.error != null) return pr;
-						calls.add(obj);
-					}
-				}
-				
-				return pr.success(new PointAccessNode(calls.toArray()));
+			protected Object checkThenPopulate(String[] args_name, Value[] args, Context exec_context) {
+				RTResult res = new RTResult();
+				res.register(check_args(args_name, args));
+				if(res.shouldReturn()) return res;
+				populate_args(args_name, args, exec_context);
+				return res.success(null);
 			}
 			
-			return pr.success(atom);
 		}
 		
-		private ParseResult term() {
-			ParseResult pr = new ParseResult();
+		public static abstract class BuildInFunction extends BaseFunction {
 			
-			Object left = pr.register(call());
-			if(pr.error != null) return pr;
+			protected String[] args_name;
+			public BuildInFunction(String name, String... args_name) {
+				super(name);
+				this.args_name = args_name;
+			}
 			
-			while(currentToken.matches(TokenType.MULT, TokenType.DIV)) {
-				Token op = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object right = pr.register(call());
-				if(pr.error != null) return pr;
-				left = new BinaryOperation(left, op, right);
+			public Object execute(Value... args) {
+				RTResult res = new RTResult();
+				Context con = generateNewContext();
+				
+				res.register(checkThenPopulate(args_name, args, con));
+				if(res.shouldReturn()) return res;
+				
+				Object ret = res.register(executeFunction(con, args));
+				if(res.shouldReturn()) return res;
+				
+				return res.success(ret);
 			}
 			
-			return pr.success(left);
+			protected abstract Object executeFunction(Context context, Value... args);
+			
 		}
 		
-		private ParseResult comp_expression() {
-			ParseResult pr = new ParseResult();
+		/*
+		 * Build-in function given its arguments as they are, with no context nor symbol table of its own.
+		 * It overrides the call of its arity, which the interpreter checks at the call site before evaluating
+		 * any argument. The calls return the value itself or an Error, so a call allocates nothing but its result.
+		 */
+		public static abstract class NativeFunction extends BaseFunction {
 			
-			if(currentToken.matches("not", TokenType.KEYWORD)) {
-				Token tok = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object o = pr.register(comp_expression());
-				if(pr.error != null) return pr;
+			/* Metrics of the calls of a function in one registry, its timings only while they are on. */
+			protected static final class Instruments {
+				
+				protected final Metrics metrics;
+				protected final Metrics.Counter calls;
+				protected final Metrics.Histogram nanos;
+				
+				private Instruments(Metrics metrics, Metrics.Counter calls, Metrics.Histogram nanos) {
+					this.metrics = metrics;
+					this.calls = calls;
+					this.nanos = nanos;
+				}
 				
-				return pr.success(new UnaryOperation(tok, o));
 			}
 			
-			Object o = pr.register(comp_arith());
-			if(pr.error != null) return pr;
+			protected final int arity;
+			/* Found on the first call rather than on every one, and again when JIPL.setMetrics changes the registry. */
+			private volatile Instruments instruments;
 			
-			return pr.success(o);
-		}
-		
-		private ParseResult comp_binop() {
-			ParseResult pr = new ParseResult();
+			public NativeFunction(String name, int arity) {
+				super(name);
+				this.arity = arity;
+			}
 			
-			Object left = pr.register(comp_expression());
-			if(pr.error != null) return pr;
+			public int getArity() { return arity; }
 			
-			while(currentToken.matches("and", TokenType.KEYWORD) || currentToken.matches("or", TokenType.KEYWORD)) {
-				Token op = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object right = pr.register(comp_expression());
-				if(pr.error != null) return pr;
-				left = new BinaryOperation(left, op, right);
+			protected Instruments instruments(Metrics metrics) {
+				Instruments instruments = this.instruments;
+				if(instruments != null && instruments.metrics == metrics && (instruments.nanos != null || !metrics.hasBuiltinTimings())) return instruments;
+				Metrics.Counter calls = instruments!=null&&instruments.metrics==metrics?instruments.calls:metrics.counter("builtin.calls."+name);
+				return this.instruments = new Instruments(metrics, calls, metrics.hasBuiltinTimings()?metrics.histogram("builtin.nanos."+name):null);
 			}
 			
-			return pr.success(left);
-		}
-		
-		private ParseResult comp_arith() {
-			ParseResult pr = new ParseResult();
+			protected Object call0() { return callN(); }
+			protected Object call1(Value a) { return callN(a); }
+			protected Object call2(Value a, Value b) { return callN(a, b); }
+			protected Object callN(Value... args) { return new Error.RuntimeError("No implementation of " + name + " for " + args.length + " argument(s)", getSeq()); }
 			
-			Object left = pr.register(arithmetic_expression());
-			if(pr.error != null) return pr;
+			protected Error.RuntimeError arityError(int count) {
+				return new Error.RuntimeError("Incorrect number of argument have been passed in " + name + ", expected " + arity + " but got " + count, getSeq());
+			}
 			
-			while(currentToken.matches(TokenType.DOUBLE_EQUALS, TokenType.NOT_EQUALS, TokenType.LESS, TokenType.LESS_EQUALS, TokenType.GREATER, TokenType.GREATER_EQUALS)) {
-				Token op = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object right = pr.register(arithmetic_expression());
-				if(pr.error != null) return pr;
-				left = new BinaryOperation(left, op, right);
+			public Object execute(Value... args) {
+				if(args.length != arity) return arityError(args.length);
+				switch(arity) {
+					case 0: return call0();
+					case 1: return call1(args[0]);
+					case 2: return call2(args[0], args[1]);
+					default: return callN(args);
+				}
 			}
 			
-			return pr.success(left);
 		}
 		
-		private ParseResult arithmetic_expression() {
-			ParseResult pr = new ParseResult();
+		/* Native function of one number, working on the double itself. */
+		public static abstract class NativeMath extends NativeFunction {
 			
-			Object left = pr.register(term());
-			if(pr.error != null) return pr;
+			public NativeMath(String name) { super(name, 1); }
 			
-			while(currentToken.matches(TokenType.PLUS, TokenType.MINUS)) {
-				Token op = currentToken;
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				Object right = pr.register(term());
-				if(pr.error != null) return pr;
-				left = new BinaryOperation(left, op, right);
+			protected abstract double apply(double value);
+			
+			/* Exact result for an integer, or null to compute it from its double value. */
+			protected Number apply(long value) { return null; }
+			
+			protected Object call1(Value value) {
+				if(value instanceof Number) {
+					Number n = (Number) value;
+					if(n.integer) {
+						Number exact = apply(n.longValue);
+						if(exact != null) return exact;
+					}
+					return new Number(apply(n.value));
+				}
+				return new Error.RuntimeError("Invalid argument type, "+value+" is not allowed to the function '"+name+"'", getSeq());
 			}
 			
-			return pr.success(left);
 		}
 		
-		private ParseResult expression() {
-			ParseResult pr = new ParseResult();
+		public static class Function extends BaseFunction {
 			
-			if(currentToken.matches("var", TokenType.KEYWORD)) {
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
-				
-				if(!currentToken.matches(TokenType.IDENTIFIER)) 
-					return pr.failure(new Error.SyntaxError("Expected identifier for the variable", currentToken.getSeq()));
+			protected Object body_node;
+			protected String[] args_name;
+			protected boolean shouldAutoReturn;
+			
+			public Function(String name, Object body_node, String[] args_name, boolean shouldAutoReturn) {
+				super(name);
+				this.body_node = body_node;
+				this.args_name = args_name;
+				this.shouldAutoReturn = shouldAutoReturn;
+			}
+			
+			public Object execute(Value... args) {
+				RTResult res = new RTResult();
+				Interpreter intepreter = new Interpreter();
 				
-				Token vname = currentToken;
+				Error limit = intepreter.execution.check();
+				if(limit != null) return res.failure(limit);
 				
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
+				Context new_context = new Context(name, context, intepreter.execution);
 				
-				if(!currentToken.matches(TokenType.EQUALS))
-					return pr.failure(new Error.SyntaxError("Expected '='", currentToken.getSeq()));
+				res.register(checkThenPopulate(args_name, args, new_context));
+				if(res.shouldReturn()) return res;
 				
-				pr.register_advancement();
-				advance();
-				advanceNewLines(pr);
+				Object value = res.register(intepreter.visit(body_node, new_context));
 				
-				Object o = pr.register(expression());
-				if(pr.error != null) return pr;
+				if(res.shouldReturn() && res.returnValue == null) return res;
 				
-				return pr.success(new VarAssignNode(vname, o));
+				Object ret = shouldAutoReturn?value:(res.returnValue!=null?res.returnValue:Number.NULL);
+				return res.success(ret);
+			}
+			
+			public Value copy() {
+				Function func = new Function(name, body_node, args_name, shouldAutoReturn);
+				func.setContext(context);
+				func.setPosition(position);
+				return func;
 			}
 			
-			Object o = pr.register(comp_binop());
-			if(pr.error != null) return pr;
+			public String toString() { return "<function "+name+">"; }
 			
-			return pr.success(o);
-		}
-		
-		public Object parse() {
-			ParseResult pr = (ParseResult) statements();
-//			if(pr.error != null)
-//				pr.error.call();
-//			else if(pr.error == null && currentToken.getType() != TokenType.END_OF_CODE)
-//				return pr.failure(new Error.SyntaxError("Expected end... '+', '-', '*' or '/'", currentToken.getSeq()));
-			return pr;
 		}
 		
-	}
-	
-	public static class Interpreter {
-		
-		public static class Value {
-			protected Context context;
-			protected Sequence seq;
+		public static class List extends Value implements IterableValue {
+			protected ArrayList<Object> elements;
+			/* Kept apart from 'context', which copies share. */
+			private Context methods;
+			public List(ArrayList<Object> elements) { this(elements, Execution.current()); }
+			public List(ArrayList<Object> elements, Execution execution) {
+				this.elements = elements;
+				execution.allocate(bytes());
+			}
+			public List(Object[] elements) { this(new ArrayList<Object>(Arrays.asList(elements))); }
 			
-			protected Error.RuntimeError illegal_operation(Object obj) { return new RuntimeError("Illegal operation with " + obj, seq); }
+			/* Approximate bytes of the list, without its elements. */
+			protected long bytes() { return Execution.LIST_BYTES+(long) elements.size()*Execution.REFERENCE_BYTES; }
 			
-			protected Object execute(Value... args) { System.err.println("No execution defined for " + this); return null; }
-			public Value copy() { return this; }
+			/* Charges the run for the last 'count' elements added. */
+			protected void grown(int count) { Execution.current().allocate((long) count*Execution.REFERENCE_BYTES); }
 			
-			public Context getContext() { return context; }
-			public Value setContext(Context context) { this.context = context; return this; }
+			public Value copy() {
+				List list = new List(new ArrayList<Object>(elements));
+				list.context = this.context;
+				return list;
+			}
+			
+			public Object add(Object obj) {
+				List list = (List) copy();
+				if(obj instanceof List) list.elements.addAll(((List) obj).elements);
+				else list.elements.add(obj);
+				list.grown(list.elements.size()-elements.size());
+				return list;
+			}
+			
+			public Object mult(Object obj) {
+				List list = (List) copy();
+				list.elements.add(obj);
+				list.grown(1);
+				return list;
+			}
+			
+			/* Error of a function given to the list which added or removed elements of it while the list walked them. */
+			private Error changed(String name) { return new RuntimeError("The list "+this+" was changed by the function given to '"+name+"'", getSeq()); }
+			
+			/* Kind of the elements for sorting and searching: all integers, all doubles, all numbers, all strings, or none of these. */
+			private static final int EMPTY = 0, INTEGERS = 1, DOUBLES = 2, NUMBERS = 3, STRINGS = 4, MIXED = -1;
+			
+			private static int kind(ArrayList<Object> values) {
+				int kind = EMPTY;
+				for(Object o:values) {
+					int k = o instanceof Number?(((Number) o).integer?INTEGERS:DOUBLES):o instanceof StringValue?STRINGS:MIXED;
+					if(k == MIXED) return MIXED;
+					if(kind == EMPTY || kind == k) kind = k;
+					else if(k != STRINGS && kind != STRINGS) kind = NUMBERS;
+					else return MIXED;
+				}
+				return kind;
+			}
+			
+			/* Natural order of two numbers or of two strings, a total order unlike Number.compare, NaN coming last. */
+			private static int order(Object a, Object b) {
+				if(a instanceof Number) {
+					Number x = (Number) a, y = (Number) b;
+					return x.integer&&y.integer?Long.compare(x.longValue, y.longValue):Double.compare(x.value, y.value);
+				}
+				return ((StringValue) a).value.compareTo(((StringValue) b).value);
+			}
+			
+			private static final Comparator<Object> ORDER = new Comparator<Object>() {
+				public int compare(Object a, Object b) { return order(a, b); }
+			};
+			
+			/* Key of a number ordered as a long: the integer itself, or the bits of a double flipped so that they order as Double.compare does. */
+			private static long key(Number n, int kind) {
+				if(kind == INTEGERS) return n.longValue;
+				long bits = Double.doubleToLongBits(n.value);
+				return bits^((bits>>63)&Long.MAX_VALUE);
+			}
+			
+			/* Positions of the keys in their stable order, by a merge sort of primitive positions rather than of boxed ones. */
+			private static int[] argsort(long[] keys) {
+				int n = keys.length;
+				int[] order = new int[n], merged = new int[n];
+				for(int i = 0; i < n; i++) order[i] = i;
+				for(int width = 1; width < n; width <<= 1) {
+					for(int low = 0; low < n; low += width<<1) {
+						int middle = Math.min(low+width, n), high = Math.min(low+(width<<1), n);
+						int i = low, j = middle, o = low;
+						while(i < middle && j < high) merged[o++] = keys[order[j]]<keys[order[i]]?order[j++]:order[i++];
+						while(i < middle) merged[o++] = order[i++];
+						while(j < high) merged[o++] = order[j++];
+					}
+					int[] swap = order;
+					order = merged;
+					merged = swap;
+				}
+				return order;
+			}
+			
+			/* Sorts in natural order, a list of integers only or of doubles only as primitives, anything else as objects. */
+			private static void sort(ArrayList<Object> elements, int kind) {
+				int size = elements.size();
+				if(kind == INTEGERS) {
+					long[] values = new long[size];
+					for(int i = 0; i < size; i++) values[i] = ((Number) elements.get(i)).longValue;
+					Arrays.sort(values);
+					for(int i = 0; i < size; i++) elements.set(i, new Number(values[i]));
+					return;
+				}
+				if(kind == DOUBLES) {
+					double[] values = new double[size];
+					for(int i = 0; i < size; i++) values[i] = ((Number) elements.get(i)).value;
+					Arrays.sort(values);
+					for(int i = 0; i < size; i++) elements.set(i, new Number(values[i]));
+					return;
+				}
+				elements.sort(ORDER);
+			}
+			
+			/* Value identifying an element for distinct: its content for a string or a number, so that 2 and 2.0 are the same, else the element itself. */
+			private static Object identity(Object o) {
+				if(o instanceof StringValue) return ((StringValue) o).value;
+				if(!(o instanceof Number)) return o;
+				Number n = (Number) o;
+				if(n.integer) return n.longValue;
+				return n.value%1 == 0 && n.value >= Long.MIN_VALUE && n.value < 0x1p63?(Object) (long) n.value:(Object) n.value;
+			}
 			
 			public Context generateContext(Context context) {
-				if(this.context != null) return this.context;
+				if(methods != null) return methods;
+				
 				Context selfContext = new Context("<value>", context);
+				selfContext.symbolTable.set("add", new NativeFunction("add", 1) {
+					protected Object call1(Value element) {
+						elements.add(element);
+						grown(1);
+						return element;
+					}
+				});
+				selfContext.symbolTable.set("get", new NativeFunction("get", 1) {
+					protected Object call1(Value arg) {
+						if(arg instanceof Number) {
+							int index = (int) ((Number)arg).value;
+							if(index < 0 || index >= elements.size())
+								return new Error.RuntimeError("Index out of bounds " + index, null);
+							return elements.get(index);
+						}
+						return new Error.RuntimeError("Invalid argument type, "+arg+" is not allowed to the function 'get'", getSeq());
+					}
+				});
+				selfContext.symbolTable.set("set", new NativeFunction("set", 2) {
+					protected Object call2(Value arg, Value object) {
+						if(arg instanceof Number) {
+							int index = (int) ((Number)arg).value;
+							if(index < 0 || index >= elements.size())
+								return new Error.RuntimeError("Index out of bounds " + index, null);
+							elements.set(index, object);
+							return object;
+						}
+						return new Error.RuntimeError("Invalid argument type, "+arg+" is not allowed to the function 'get'", getSeq());
+					}
+				});
+				selfContext.symbolTable.set("insert", new NativeFunction("insert", 2) {
+					protected Object call2(Value arg, Value object) {
+						if(arg instanceof Number) {
+							int index = (int) ((Number)arg).value;
+							if(index < 0 || index > elements.size())
+								return new Error.RuntimeError("Index out of bounds " + index, null);
+							elements.add(index, object);
+							grown(1);
+							return object;
+						}
+						return new Error.RuntimeError("Invalid argument type, "+arg+" is not allowed to the function 'get'", getSeq());
+					}
+				});
+				selfContext.symbolTable.set("join", new NativeFunction("join", 1) {
+					protected Object call1(Value by) {
+						StringBuilder el = new StringBuilder();
+						for(int i = 0; i < elements.size(); i++) {
+							el.append(elements.get(i));
+							if(i!=elements.size()-1)
+								el.append(by);
+						}
+						return new StringValue(el.toString());
+					}
+				});
+				selfContext.symbolTable.set("clear", new NativeFunction("clear", 0) {
+					protected Object call0() {
+						elements.clear();
+						return Number.NULL;
+					}
+				});
+				selfContext.symbolTable.set("foreach", new NativeFunction("foreach", 1) {
+					protected Object call1(Value function) {
+						RTResult res = new RTResult();
+						
+						BaseFunction fun = null;
+						if(function instanceof BaseFunction) fun = (BaseFunction) function;
+						else return res.failure(new RuntimeError("Invalid argument type, "+function+" is not allowed in the function 'foreach'", null));
+						
+						/* By index, the function being free to change the list, which ends the call rather than the iteration failing. */
+						List l = new List(new ArrayList<Object>());
+						int size = elements.size();
+						for(int i = 0; i < size; i++) {
+							Object o = res.register(fun.execute((Value) elements.get(i)));
+							if(res.shouldReturn()) return res;
+							if(elements.size() != size) return res.failure(changed("foreach"));
+							l.elements.add(o);
+							l.grown(1);
+						}
+						
+						return res.success(l);
+					}
+				});
+				selfContext.symbolTable.set("size", new NativeFunction("size", 0) {
+					protected Object call0() { return new Number(elements.size()); }
+				});
+				selfContext.symbolTable.set("sort", new NativeFunction("sort", 0) {
+					protected Object call0() {
+						int kind = kind(elements);
+						if(kind == MIXED) return new Error.RuntimeError("The list "+List.this+" can not be sorted, it is neither all numbers nor all strings", getSeq());
+						sort(elements, kind);
+						return List.this;
+					}
+				});
+				selfContext.symbolTable.set("sortBy", new NativeFunction("sortBy", 1) {
+					protected Object call1(Value function) {
+						RTResult res = new RTResult();
+						if(!(function instanceof BaseFunction))
+							return res.failure(new RuntimeError("Invalid argument type, "+function+" is not allowed in the function 'sortBy'", getSeq()));
+						
+						int size = elements.size();
+						final ArrayList<Object> keys = new ArrayList<Object>(size);
+						for(int i = 0; i < size; i++) {
+							Object key = res.register(((BaseFunction) function).execute((Value) elements.get(i)));
+							if(res.shouldReturn()) return res;
+							if(elements.size() != size) return res.failure(changed("sortBy"));
+							keys.add(key);
+						}
+						int kind = kind(keys);
+						if(kind == MIXED) return res.failure(new RuntimeError("The keys "+keys+" can not be sorted, they are neither all numbers nor all strings", getSeq()));
+						
+						/* A stable sort of the positions by key, the elements being put in place after. */
+						Object[] sorted = new Object[elements.size()];
+						if(kind == INTEGERS || kind == DOUBLES) {
+							long[] k = new long[sorted.length];
+							for(int i = 0; i < k.length; i++) k[i] = key((Number) keys.get(i), kind);
+							int[] order = argsort(k);
+							for(int i = 0; i < order.length; i++) sorted[i] = elements.get(order[i]);
+						} else {
+							Integer[] order = new Integer[sorted.length];
+							for(int i = 0; i < order.length; i++) order[i] = i;
+							Arrays.sort(order, new Comparator<Integer>() {
+								public int compare(Integer a, Integer b) { return order(keys.get(a), keys.get(b)); }
+							});
+							for(int i = 0; i < order.length; i++) sorted[i] = elements.get(order[i]);
+						}
+						for(int i = 0; i < sorted.length; i++) elements.set(i, sorted[i]);
+						return res.success(List.this);
+					}
+				});
+				selfContext.symbolTable.set("binarySearch", new NativeFunction("binarySearch", 1) {
+					protected Object call1(Value key) {
+						if(!(key instanceof Number) && !(key instanceof StringValue))
+							return new Error.RuntimeError("Invalid argument type, "+key+" is not allowed to the function 'binarySearch'", getSeq());
+						int low = 0, high = elements.size()-1;
+						while(low <= high) {
+							int middle = (low+high)>>>1;
+							Object element = elements.get(middle);
+							if(element.getClass() != key.getClass() && !(element instanceof Number && key instanceof Number))
+								return new Error.RuntimeError("The list can not be searched for "+key+", it holds "+element, getSeq());
+							int order = order(element, key);
+							if(order < 0) low = middle+1;
+							else if(order > 0) high = middle-1;
+							else return new Number(middle);
+						}
+						return new Number(-(low+1));
+					}
+				});
+				selfContext.symbolTable.set("slice", new NativeFunction("slice", 2) {
+					protected Object call2(Value from, Value to) {
+						if(!(from instanceof Number) || !(to instanceof Number))
+							return new Error.RuntimeError("Invalid argument type, "+from+"::"+to+" is not allowed to the function 'slice'", getSeq());
+						long start = ((Number) from).getLongValue(), end = ((Number) to).getLongValue();
+						if(start < 0 || end > elements.size() || start > end)
+							return new Error.RuntimeError("Invalid range " + start + " to " + end + " of a list of " + elements.size(), getSeq());
+						return new List(new ArrayList<Object>(elements.subList((int) start, (int) end)));
+					}
+				});
+				selfContext.symbolTable.set("reverse", new NativeFunction("reverse", 0) {
+					protected Object call0() {
+						Collections.reverse(elements);
+						return List.this;
+					}
+				});
+				selfContext.symbolTable.set("distinct", new NativeFunction("distinct", 0) {
+					protected Object call0() {
+						HashMap<Object, Object> seen = new HashMap<Object, Object>();
+						ArrayList<Object> distinct = new ArrayList<Object>();
+						for(Object el:elements)
+							if(seen.put(identity(el), el) == null) distinct.add(el);
+						return new List(distinct);
+					}
+				});
 				selfContext.symbolTable.set("this", this);
-				this.context = selfContext;
-				return this.context;
+				methods = selfContext;
+				return selfContext;
 			}
 			
-			protected Object add(Object obj) { return new StringValue(this+""+obj); }
-			protected Object sub(Object obj) { return illegal_operation(obj); }
-			protected Object mult(Object obj) { return illegal_operation(obj); }
-			protected Object div(Object obj) { return illegal_operation(obj); }
-			
-			public Object _equals(Object obj) { return this.equals(obj)?Number.TRUE:Number.FALSE; }
-			public Object _not_equals(Object obj) { return illegal_operation(obj); }
-			public Object _less(Object obj) { return illegal_operation(obj); }
-			public Object _greater(Object obj) { return illegal_operation(obj); }
-			public Object _less_equals(Object obj) { return illegal_operation(obj); }
-			public Object _greater_equals(Object obj) { return illegal_operation(obj); }
-			public Object _and(Object obj) { return illegal_operation(obj); }
-			public Object _or(Object obj) { return illegal_operation(obj); }
-			
-			public boolean isTrue() { return false; }
+			/* Reads the live list, so elements added by the loop body are walked through too. */
+			public Iterator<Value> iterator() {
+				return new Iterator<Value>() {
+					private int i = 0;
+					public boolean hasNext() { return i < elements.size(); }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						return (Value) elements.get(i++);
+					}
+				};
+			}
 			
-			public Object _not() { return !isTrue(); }
+			public String toString() { return elements.toString(); }
 			
-			public Sequence getSeq() { return seq; }
-			public Value setSeq(Sequence seq) { this.seq = seq; return this; }
 		}
 		
-		public static class Number extends Value {
+		/*
+		 * A hash map from strings and numbers to values, walked in insertion order. The entries are kept densely in
+		 * 'hashes', 'keys' and 'values', and 'slots' is an open-addressing table of entry indexes probed linearly.
+		 */
+		public static class MapValue extends Value implements IterableValue {
 			
-			public static final Number NULL = new Number(0);
-			public static final Number FALSE = new Number(0);
-			public static final Number TRUE = new Number(1);
+			/* Content of a slot: the index of its entry plus one, or one of these. */
+			private static final int FREE = 0, REMOVED = -1;
 			
-			protected float value;
+			protected int[] slots, hashes;
+			protected Value[] keys, values;
+			/* Entries used, the removed ones included, and entries still in the map. */
+			protected int count, size;
+			/* The methods of the map, made on first use. */
+			private Context methods;
 			
-			public Number(float value) { this.value = value; }
-			public Number(Object value) { this.value = Float.parseFloat((String) value); }
+			public MapValue() { this(0); }
 			
-			protected Object add(Object obj) {
-				if(obj instanceof Number) return new Number(value+((Number)obj).value);
-				else if(obj instanceof StringValue) return new StringValue(toString()+((StringValue)obj).value);
-				else return illegal_operation(obj);
+			public MapValue(int expected) {
+				int capacity = 8;
+				while(capacity*3 < expected*4) capacity <<= 1;
+				table(capacity);
+				Execution.current().allocate(bytes());
 			}
 			
-			protected Object sub(Object obj) {
-				if(obj instanceof Number) return new Number(value-((Number)obj).value); else return illegal_operation(obj);
+			private void table(int capacity) {
+				slots = new int[capacity];
+				hashes = new int[capacity*3/4];
+				keys = new Value[hashes.length];
+				values = new Value[hashes.length];
 			}
 			
-			protected Object mult(Object obj) {
-				if(obj instanceof Number) return new Number(value*((Number)obj).value); else return illegal_operation(obj);
+			/* Approximate bytes of the map, without its keys and values. */
+			protected long bytes() { return Execution.LIST_BYTES+(long) slots.length*4+(long) keys.length*(4+2*Execution.REFERENCE_BYTES); }
+			
+			/* Strings hash by content, and numbers by value so that 2 and 2.0 are the same key. */
+			private static int hash(Value key) {
+				int h;
+				if(key instanceof StringValue) h = ((StringValue) key).value.hashCode();
+				else {
+					Number n = (Number) key;
+					double d = n.value;
+					if(n.integer || (d%1 == 0 && d >= Long.MIN_VALUE && d < 0x1p63)) h = Long.hashCode(n.integer?n.longValue:(long) d);
+					else h = Double.hashCode(d);
+				}
+				return h^(h>>>16);
 			}
 			
-			protected Object div(Object obj) {
-				if(obj instanceof Number) {
-					Number n = (Number)obj;
-					if(n.value == 0) return new Error.RuntimeError("Division by zero", seq);
-					return new Number(value/n.value);
-				} else return illegal_operation(obj);
+			private static boolean same(Value a, Value b) {
+				if(a instanceof StringValue) return b instanceof StringValue && ((StringValue) a).value.equals(((StringValue) b).value);
+				if(!(b instanceof Number)) return false;
+				Number x = (Number) a, y = (Number) b;
+				if(x.integer && y.integer) return x.longValue == y.longValue;
+				if(x.integer) return y.value%1 == 0 && y.value == x.longValue && (long) y.value == x.longValue;
+				if(y.integer) return x.value%1 == 0 && x.value == y.longValue && (long) x.value == y.longValue;
+				return x.value == y.value;
 			}
 			
-			public Object _equals(Object obj) {
-				if(obj instanceof Number) return new Number(isEqualTo(((Number)obj).value)?1:0); else return illegal_operation(obj);
+			private static Error.RuntimeError invalidKey(Value key, String function, Sequence seq) {
+				return new Error.RuntimeError("Invalid key type, "+key+" is not allowed to the function '"+function+"', only strings and numbers are", seq);
 			}
 			
-			public Object _not_equals(Object obj) {
-				if(obj instanceof Number) return new Number(!isEqualTo(((Number)obj).value)?1:0); else return illegal_operation(obj);
+			private static boolean isKey(Value key) { return key instanceof StringValue || key instanceof Number; }
+			
+			/* Slot holding the key, or -1. */
+			private int find(Value key, int hash) {
+				int mask = slots.length-1;
+				for(int i = hash&mask;; i = (i+1)&mask) {
+					int slot = slots[i];
+					if(slot == FREE) return -1;
+					if(slot != REMOVED && hashes[slot-1] == hash && same(keys[slot-1], key)) return i;
+				}
 			}
 			
-			public Object _less(Object obj) {
-				if(obj instanceof Number) return new Number(value<((Number)obj).value?1:0); else return illegal_operation(obj);
+			public Value get(Value key) {
+				int slot = find(key, hash(key));
+				return slot<0?null:values[slots[slot]-1];
 			}
 			
-			public Object _greater(Object obj) {
-				if(obj instanceof Number) return new Number(value>((Number)obj).value?1:0); else return illegal_operation(obj);
+			/* Returns the error ending the run when the table can not grow within its budget, else null. */
+			public Error set(Value key, Value value) {
+				int hash = hash(key), slot = find(key, hash);
+				if(slot >= 0) {
+					values[slots[slot]-1] = value;
+					return null;
+				}
+				if(count == keys.length) {
+					Error error = resize();
+					if(error != null) return error;
+				}
+				int mask = slots.length-1, i = hash&mask;
+				while(slots[i] > 0) i = (i+1)&mask;
+				hashes[count] = hash;
+				keys[count] = key;
+				values[count] = value;
+				slots[i] = ++count;
+				size++;
+				return null;
+			}
+			
+			public Value remove(Value key) {
+				int slot = find(key, hash(key));
+				if(slot < 0) return null;
+				int entry = slots[slot]-1;
+				Value old = values[entry];
+				slots[slot] = REMOVED;
+				keys[entry] = null;
+				values[entry] = null;
+				size--;
+				return old;
+			}
+			
+			/* Rebuilds the table without the removed entries, twice as large only when they were few. */
+			private Error resize() {
+				int capacity = size*2 < keys.length?slots.length:slots.length*2;
+				if(capacity > slots.length) {
+					Error error = Execution.current().reserve((long) (capacity-slots.length)*4+(long) (capacity*3/4-keys.length)*(4+2*Execution.REFERENCE_BYTES));
+					if(error != null) return error;
+				}
+				int[] oldHashes = hashes;
+				Value[] oldKeys = keys, oldValues = values;
+				int oldCount = count;
+				table(capacity);
+				count = 0;
+				int mask = slots.length-1;
+				for(int e = 0; e < oldCount; e++) {
+					if(oldKeys[e] == null) continue;
+					int i = oldHashes[e]&mask;
+					while(slots[i] != FREE) i = (i+1)&mask;
+					hashes[count] = oldHashes[e];
+					keys[count] = oldKeys[e];
+					values[count] = oldValues[e];
+					slots[i] = ++count;
+				}
+				return null;
 			}
 			
-			public Object _less_equals(Object obj) {
-				if(obj instanceof Number) return new Number(value<=((Number)obj).value?1:0); else return illegal_operation(obj);
+			public int size() { return size; }
+			
+			public Context generateContext(Context context) {
+				if(methods != null) return methods;
+				
+				Context selfContext = new Context("<value>", context);
+				selfContext.symbolTable.set("get", new NativeFunction("get", 1) {
+					protected Object call1(Value key) {
+						if(!isKey(key)) return invalidKey(key, name, getSeq());
+						Value value = MapValue.this.get(key);
+						return value==null?Number.NULL:value;
+					}
+				});
+				selfContext.symbolTable.set("set", new NativeFunction("set", 2) {
+					protected Object call2(Value key, Value value) {
+						if(!isKey(key)) return invalidKey(key, name, getSeq());
+						Error error = MapValue.this.set(key, value);
+						return error==null?value:error;
+					}
+				});
+				selfContext.symbolTable.set("has", new NativeFunction("has", 1) {
+					protected Object call1(Value key) {
+						if(!isKey(key)) return invalidKey(key, name, getSeq());
+						return find(key, hash(key))<0?Number.FALSE:Number.TRUE;
+					}
+				});
+				selfContext.symbolTable.set("remove", new NativeFunction("remove", 1) {
+					protected Object call1(Value key) {
+						if(!isKey(key)) return invalidKey(key, name, getSeq());
+						Value old = MapValue.this.remove(key);
+						return old==null?Number.NULL:old;
+					}
+				});
+				selfContext.symbolTable.set("keys", new NativeFunction("keys", 0) {
+					protected Object call0() { return new List(entries(keys)); }
+				});
+				selfContext.symbolTable.set("values", new NativeFunction("values", 0) {
+					protected Object call0() { return new List(entries(values)); }
+				});
+				selfContext.symbolTable.set("size", new NativeFunction("size", 0) {
+					protected Object call0() { return new Number(size); }
+				});
+				selfContext.symbolTable.set("this", this);
+				methods = selfContext;
+				return selfContext;
 			}
 			
-			public Object _greater_equals(Object obj) {
-				if(obj instanceof Number) return new Number(value>=((Number)obj).value?1:0); else return illegal_operation(obj);
+			private ArrayList<Object> entries(Value[] column) {
+				ArrayList<Object> list = new ArrayList<Object>(size);
+				for(int e = 0; e < count; e++)
+					if(keys[e] != null) list.add(column[e]);
+				return list;
 			}
 			
-			public Object _and(Object obj) {
-				if(obj instanceof Number) return new Number((isTrue()&&((Number)obj).isTrue())?1:0); else return illegal_operation(obj);
+			/* Walks the keys the map had when the loop started, whatever the body sets or removes. */
+			public Iterator<Value> iterator() {
+				final ArrayList<Object> snapshot = entries(keys);
+				return new Iterator<Value>() {
+					private int i = 0;
+					public boolean hasNext() { return i < snapshot.size(); }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						return (Value) snapshot.get(i++);
+					}
+				};
 			}
 			
-			public Object _or(Object obj) {
-				if(obj instanceof Number) return new Number((isTrue()||((Number)obj).isTrue())?1:0); else return illegal_operation(obj);
+			public String toString() {
+				StringBuilder sb = new StringBuilder("{");
+				for(int e = 0; e < count; e++) {
+					if(keys[e] == null) continue;
+					if(sb.length() > 1) sb.append(", ");
+					sb.append(keys[e]).append(": ").append(values[e]);
+				}
+				return sb.append('}').toString();
 			}
 			
-			public boolean isTrue() { return !isEqualTo(0); }
-			public Object _not() { return new Number(value==0?1:0); }
+		}
+		
+		/* Index argument of a collection method, or -1 when it is not a number in [0, limit). */
+		private static int index(Value arg, long limit) {
+			if(!(arg instanceof Number)) return -1;
+			long index = ((Number) arg).getLongValue();
+			return index<0||index>=limit?-1:(int) index;
+		}
+		
+		/* A double-ended queue in a ring buffer, adding and removing at both ends in constant time. */
+		public static class Deque extends Value implements IterableValue {
 			
-			public float getValue() { return value; }
-			public void setValue(float value) { this.value = value; }
+			protected Value[] elements = new Value[8];
+			protected int head, size;
+			private Context methods;
 			
-			public boolean isEqualTo(float x) { return Math.abs(value-x) < 0.00025f; }
+			public Deque() { Execution.current().allocate(bytes()); }
 			
-			public String toString() { return (value%1==0?(int)value+"":value+""); }
+			/* Approximate bytes of the deque, without its elements. */
+			protected long bytes() { return Execution.LIST_BYTES+(long) elements.length*Execution.REFERENCE_BYTES; }
 			
-			public Value copy() { return new Number(value).setContext(this.context); }
-		}
-		
-		public static class StringValue extends Value {
+			/* Returns the error ending the run when the deque can not grow within its budget, else null. */
+			private Error grow() {
+				if(size < elements.length) return null;
+				Error error = Execution.current().reserve((long) size*Execution.REFERENCE_BYTES);
+				if(error != null) return error;
+				Value[] grown = new Value[elements.length*2];
+				for(int i = 0; i < size; i++) grown[i] = elements[(head+i)&(elements.length-1)];
+				elements = grown;
+				head = 0;
+				return null;
+			}
 			
-			protected String value;
+			public Value get(int i) { return elements[(head+i)&(elements.length-1)]; }
 			
-			public StringValue(String value) { this.value = value; }
-			public StringValue(Object value) { this.value = (String) value; }
+			public Error addFirst(Value value) {
+				Error error = grow();
+				if(error != null) return error;
+				head = (head-1)&(elements.length-1);
+				elements[head] = value;
+				size++;
+				return null;
+			}
 			
-			protected Object add(Object obj) { return new StringValue(value+obj.toString()); }
+			public Error addLast(Value value) {
+				Error error = grow();
+				if(error != null) return error;
+				elements[(head+size)&(elements.length-1)] = value;
+				size++;
+				return null;
+			}
 			
-			public Object _equals(Object obj) { return value.equalsIgnoreCase(obj+"")?Number.TRUE:Number.FALSE; }
+			public Value removeFirst() {
+				Value value = elements[head];
+				elements[head] = null;
+				head = (head+1)&(elements.length-1);
+				size--;
+				return value;
+			}
 			
-			public boolean isTrue() { return value.length() > 0; }
+			public Value removeLast() {
+				int last = (head+size-1)&(elements.length-1);
+				Value value = elements[last];
+				elements[last] = null;
+				size--;
+				return value;
+			}
+			
+			public int size() { return size; }
 			
 			public Context generateContext(Context context) {
-				if(this.context != null) return this.context;
+				if(methods != null) return methods;
+				
 				Context selfContext = new Context("<value>", context);
-				selfContext.symbolTable.set("length", new Number(value.length()));
-				selfContext.symbolTable.set("split", new BuildInFunction("split", "text") {
-					protected Object executeFunction(Context context, Value... args) {
-						String s = args[0].toString();
-						String[] strs = s.equals(" ")?value.split("\\s+"):value.split(s);
-						StringValue[] vls = new StringValue[strs.length];
-						for(int i = 0; i < strs.length; i++)
-							vls[i] = new StringValue(strs[i]);
-						
-						return new List(vls);
+				selfContext.symbolTable.set("pushFront", new NativeFunction("pushFront", 1) {
+					protected Object call1(Value value) {
+						Error error = addFirst(value);
+						return error==null?value:error;
 					}
 				});
-				selfContext.symbolTable.set("charAt", new BuildInFunction("charAt", "index") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						if(args[0] instanceof Number) {
-							int index = (int) ((Number)args[0]).value;
-							if(index < 0 || index >= value.length())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + index + ".", null));
-							return res.success(new StringValue(""+value.charAt(index)));
-						}
-						return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'get'", seq));
+				selfContext.symbolTable.set("pushBack", new NativeFunction("pushBack", 1) {
+					protected Object call1(Value value) {
+						Error error = addLast(value);
+						return error==null?value:error;
+					}
+				});
+				selfContext.symbolTable.set("popFront", new NativeFunction("popFront", 0) {
+					protected Object call0() { return size==0?new Error.RuntimeError("The deque is empty", getSeq()):removeFirst(); }
+				});
+				selfContext.symbolTable.set("popBack", new NativeFunction("popBack", 0) {
+					protected Object call0() { return size==0?new Error.RuntimeError("The deque is empty", getSeq()):removeLast(); }
+				});
+				selfContext.symbolTable.set("front", new NativeFunction("front", 0) {
+					protected Object call0() { return size==0?new Error.RuntimeError("The deque is empty", getSeq()):get(0); }
+				});
+				selfContext.symbolTable.set("back", new NativeFunction("back", 0) {
+					protected Object call0() { return size==0?new Error.RuntimeError("The deque is empty", getSeq()):get(size-1); }
+				});
+				selfContext.symbolTable.set("get", new NativeFunction("get", 1) {
+					protected Object call1(Value arg) {
+						int index = index(arg, size);
+						if(index < 0) return new Error.RuntimeError("Index out of bounds " + arg, getSeq());
+						return get(index);
 					}
 				});
-				selfContext.symbolTable.set("substring", new BuildInFunction("sub", "start", "end") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						
-						if(args[0] instanceof Number && args[1] instanceof Number) {
-							int start = (int) ((Number)args[0]).value, end = (int) ((Number)args[1]).value;
-							if(start < 0 || start > value.length())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + start + ".", null));
-							if(end < 0 || end > value.length())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + end + ".", null));
-							return res.success(new StringValue(value.substring(start, end)));
-						}
-						
-						return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+"::"+args[1]+" is not allowed to the function 'get'", seq));
+				selfContext.symbolTable.set("clear", new NativeFunction("clear", 0) {
+					protected Object call0() {
+						Arrays.fill(elements, null);
+						head = size = 0;
+						return Number.NULL;
 					}
 				});
+				selfContext.symbolTable.set("size", new NativeFunction("size", 0) {
+					protected Object call0() { return new Number(size); }
+				});
 				selfContext.symbolTable.set("this", this);
-				this.context = selfContext;
-				return context;
+				methods = selfContext;
+				return selfContext;
+			}
+			
+			/* From front to back, reading the live deque as List does. */
+			public Iterator<Value> iterator() {
+				return new Iterator<Value>() {
+					private int i = 0;
+					public boolean hasNext() { return i < size; }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						return get(i++);
+					}
+				};
+			}
+			
+			public String toString() {
+				StringBuilder sb = new StringBuilder("[");
+				for(int i = 0; i < size; i++) sb.append(i==0?"":", ").append(get(i));
+				return sb.append(']').toString();
 			}
 			
-			public String toString() { return value; }
 		}
 		
-		public static class BaseFunction extends Value {
+		/*
+		 * A binary heap, giving back its smallest element first. Without a comparator, the elements are all numbers or all strings
+		 * in their natural order; a comparator is a script function of two elements returning a negative number when the first comes first.
+		 */
+		public static class Heap extends Value {
 			
-			public String name;
+			protected Value[] elements = new Value[8];
+			protected int size;
+			protected final BaseFunction comparator;
+			private Context methods;
 			
-			public BaseFunction(String name) {
-				this.name = name==null?"<anonymous>":name;
+			public Heap(BaseFunction comparator) {
+				this.comparator = comparator;
+				Execution.current().allocate(bytes());
 			}
 			
-			protected Context generateNewContext() {
-				Context new_context = new Context(name, context);
-				return new_context;
-			}
+			/* Approximate bytes of the heap, without its elements. */
+			protected long bytes() { return Execution.LIST_BYTES+(long) elements.length*Execution.REFERENCE_BYTES; }
 			
-			protected Context generateNewContext(Context context) {
-				Context new_context = new Context(name, context);
-				return new_context;
+			/* 'res' is the result of the operation, holding the error of a failed call of the comparator, local to it since the comparator may use the heap. */
+			private int compare(RTResult res, Value a, Value b) {
+				if(comparator == null) {
+					if(a instanceof Number) return ((Number) a).compare((Number) b);
+					return ((StringValue) a).value.compareTo(((StringValue) b).value);
+				}
+				Object order = res.register(comparator.execute(a, b));
+				if(res.shouldReturn()) return 0;
+				if(!(order instanceof Number)) {
+					res.failure(new Error.RuntimeError("The comparator of the heap returned "+order+", not a number", getSeq()));
+					return 0;
+				}
+				return Double.compare(((Number) order).value, 0);
 			}
 			
-			protected Object check_args(String[] args_name, Value[] args) {
+			private Object push(Value value) {
 				RTResult res = new RTResult();
-				if(args.length != args_name.length)
-					return res.failure(new Error.RuntimeError("Incorrect number of argument have been passed in " + name, seq));
-				return res.success(null);
-			}
-			
-			protected void populate_args(String[] args_name, Value[] args, Context exec_context) {
-				for(int i = 0; i < args.length; i++) {
-					String arg_name = args_name[i];
-					Value arg_value = args[i];
-					arg_value.setContext(exec_context);
-					exec_context.symbolTable.set(arg_name, arg_value);
+				if(comparator == null) {
+					if(!(value instanceof Number) && !(value instanceof StringValue))
+						return res.failure(new Error.RuntimeError("Invalid element, "+value+" can not be ordered without a comparator", getSeq()));
+					if(size > 0 && value.getClass() != elements[0].getClass() && !(value instanceof Number && elements[0] instanceof Number))
+						return res.failure(new Error.RuntimeError("Invalid element, "+value+" can not be ordered with "+elements[0], getSeq()));
+				}
+				if(size == elements.length) {
+					Error error = Execution.current().reserve((long) size*Execution.REFERENCE_BYTES);
+					if(error != null) return res.failure(error);
+					elements = Arrays.copyOf(elements, size*2);
 				}
+				int i = size++;
+				while(i > 0) {
+					int parent = (i-1)>>>1;
+					int order = compare(res, value, elements[parent]);
+					if(res.shouldReturn()) break;
+					if(order >= 0) break;
+					elements[i] = elements[parent];
+					i = parent;
+				}
+				elements[i] = value;
+				return res.shouldReturn()?res:res.success(value);
 			}
 			
-			protected Object checkThenPopulate(String[] args_name, Value[] args, Context exec_context) {
+			private Object pop() {
 				RTResult res = new RTResult();
-				res.register(check_args(args_name, args));
-				if(res.shouldReturn()) return res;
-				populate_args(args_name, args, exec_context);
-				return res.success(null);
+				if(size == 0) return res.failure(new Error.RuntimeError("The heap is empty", getSeq()));
+				Value top = elements[0], last = elements[--size];
+				elements[size] = null;
+				if(size == 0) return res.success(top);
+				int i = 0;
+				while(true) {
+					int child = 2*i+1;
+					if(child >= size) break;
+					if(child+1 < size) {
+						int order = compare(res, elements[child+1], elements[child]);
+						if(res.shouldReturn()) break;
+						if(order < 0) child++;
+					}
+					int order = compare(res, elements[child], last);
+					if(res.shouldReturn() || order >= 0) break;
+					elements[i] = elements[child];
+					i = child;
+				}
+				elements[i] = last;
+				return res.shouldReturn()?res:res.success(top);
 			}
 			
-		}
-		
-		public static abstract class BuildInFunction extends BaseFunction {
-			
-			protected String[] args_name;
-			public BuildInFunction(String name, String... args_name) {
-				super(name);
-				this.args_name = args_name;
-			}
+			public int size() { return size; }
 			
-			public Object execute(Value... args) {
-				RTResult res = new RTResult();
-				Context con = generateNewContext();
-				
-				res.register(checkThenPopulate(args_name, args, con));
-				if(res.shouldReturn()) return res;
-				
-				Object ret = res.register(executeFunction(con, args));
-				if(res.shouldReturn()) return res;
+			public Context generateContext(Context context) {
+				if(methods != null) return methods;
 				
-				return res.success(ret);
+				Context selfContext = new Context("<value>", context);
+				selfContext.symbolTable.set("push", new NativeFunction("push", 1) {
+					protected Object call1(Value value) { return push(value); }
+				});
+				selfContext.symbolTable.set("pop", new NativeFunction("pop", 0) {
+					protected Object call0() { return pop(); }
+				});
+				selfContext.symbolTable.set("peek", new NativeFunction("peek", 0) {
+					protected Object call0() { return size==0?new Error.RuntimeError("The heap is empty", getSeq()):elements[0]; }
+				});
+				selfContext.symbolTable.set("clear", new NativeFunction("clear", 0) {
+					protected Object call0() {
+						Arrays.fill(elements, null);
+						size = 0;
+						return Number.NULL;
+					}
+				});
+				selfContext.symbolTable.set("size", new NativeFunction("size", 0) {
+					protected Object call0() { return new Number(size); }
+				});
+				selfContext.symbolTable.set("this", this);
+				methods = selfContext;
+				return selfContext;
 			}
 			
-			protected abstract Object executeFunction(Context context, Value... args);
+			/* In the order of the underlying array, only the first element being sure to come first. */
+			public String toString() { return Arrays.asList(elements).subList(0, size).toString(); }
 			
 		}
 		
-		public static class Function extends BaseFunction {
+		/* A set of small non-negative integers, one bit each in a growing array of words. */
+		public static class BitSet extends Value implements IterableValue {
 			
-			protected Object body_node;
-			protected String[] args_name;
-			protected boolean shouldAutoReturn;
+			/* Most bits a set may hold, 32 MB of words, whatever the budget of the run. */
+			public static final int MAX_BITS = 1<<28;
 			
-			public Function(String name, Object body_node, String[] args_name, boolean shouldAutoReturn) {
-				super(name);
-				this.body_node = body_node;
-				this.args_name = args_name;
-				this.shouldAutoReturn = shouldAutoReturn;
-			}
+			protected long[] words;
+			private Context methods;
 			
-			public Object execute(Value... args) {
-				RTResult res = new RTResult();
-				Interpreter intepreter = new Interpreter();
-				Context new_context = generateNewContext();
-				
-				res.register(checkThenPopulate(args_name, args, new_context));
-				if(res.shouldReturn()) return res;
-				
-				Object value = res.register(intepreter.visit(body_node, new_context));
-				
-				if(res.shouldReturn() && res.returnValue == null) return res;
-				
-				Object ret = shouldAutoReturn?value:(res.returnValue!=null?res.returnValue:Number.NULL);
-				return res.success(ret);
+			public BitSet(int bits) {
+				if(bits < 0 || bits > MAX_BITS) throw new IllegalArgumentException("A bit set holds up to "+MAX_BITS+" bits, not "+bits);
+				words = new long[words(bits)];
+				Execution.current().allocate(bytes());
 			}
 			
-			public Value copy() {
-				Function func = new Function(name, body_node, args_name, shouldAutoReturn);
-				func.setContext(context);
-				func.setSeq(seq);
-				return func;
+			private BitSet(long[] words) { this.words = words; }
+			
+			/* Set of 'bits' bits between 0 and MAX_BITS, or the error ending the run when its budget can not afford it, checked before allocating. */
+			public static Object create(int bits) {
+				Error error = Execution.current().reserve(Execution.OBJECT_BYTES+(long) words(bits)*8);
+				return error==null?new BitSet(new long[words(bits)]):error;
 			}
 			
-			public String toString() { return "<function "+name+">"; }
+			private static int words(int bits) { return Math.max(1, (int) ((bits+63L)>>>6)); }
 			
-		}
-		
-		public static class List extends Value {
-			protected ArrayList<Object> elements;
-			public List(ArrayList<Object> elements) { this.elements = elements; }
-			public List(Object[] elements) { this.elements = new ArrayList<Object>(); for(Object o:elements) this.elements.add(o); }
+			/* Approximate bytes of the set. */
+			protected long bytes() { return Execution.OBJECT_BYTES+(long) words.length*8; }
 			
-			public Value copy() {
-				List list = new List(new ArrayList<Object>());
-				list.elements.addAll(elements);
-				list.context = this.context;
-				return list;
+			public boolean get(int i) { return (i>>>6) < words.length && (words[i>>>6]&(1L<<i)) != 0; }
+			
+			/* Returns the error ending the run when the set can not grow to the bit within its budget, else null. The bit must be below MAX_BITS. */
+			public Error set(int i, boolean value) {
+				int w = i>>>6;
+				if(w >= words.length) {
+					if(!value) return null;
+					int length = Math.min(Math.max(words.length*2, w+1), words(MAX_BITS));
+					Error error = Execution.current().reserve((long) (length-words.length)*8);
+					if(error != null) return error;
+					words = Arrays.copyOf(words, length);
+				}
+				if(value) words[w] |= 1L<<i;
+				else words[w] &= ~(1L<<i);
+				return null;
+			}
+			
+			/* First index set from 'from' on, or -1. */
+			public int next(int from) {
+				int w = from>>>6;
+				if(w >= words.length) return -1;
+				long word = words[w]&(-1L<<from);
+				while(true) {
+					if(word != 0) return (w<<6)+Long.numberOfTrailingZeros(word);
+					if(++w == words.length) return -1;
+					word = words[w];
+				}
 			}
 			
-			public Object add(Object obj) {
-				List list = (List) copy();
-				if(obj instanceof List) list.elements.addAll(((List) obj).elements);
-				else list.elements.add(obj);
-				return list;
+			public int count() {
+				int count = 0;
+				for(long word:words) count += Long.bitCount(word);
+				return count;
 			}
 			
-			public Object mult(Object obj) {
-				List list = (List) copy();
-				list.elements.add(obj);
-				return list;
+			/* Highest index set plus one. */
+			public int length() {
+				for(int w = words.length-1; w >= 0; w--)
+					if(words[w] != 0) return (w<<6)+64-Long.numberOfLeadingZeros(words[w]);
+				return 0;
 			}
 			
 			public Context generateContext(Context context) {
-				if(this.context != null) return this.context;
+				if(methods != null) return methods;
 				
 				Context selfContext = new Context("<value>", context);
-				selfContext.symbolTable.set("add", new BuildInFunction("add", "element") {
-					protected Object executeFunction(Context context, Value... args) {
-						elements.add(args[0]);
-						return args[0];
-					}
-				});
-				selfContext.symbolTable.set("get", new BuildInFunction("get", "index") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						if(args[0] instanceof Number) {
-							int index = (int) ((Number)args[0]).value;
-							if(index < 0 || index >= elements.size())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + index, null));
-							return res.success(elements.get(index));
-						}
-						return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'get'", seq));
-					}
-				});
-				selfContext.symbolTable.set("set", new BuildInFunction("set", "index", "object") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						if(args[0] instanceof Number) {
-							int index = (int) ((Number)args[0]).value;
-							if(index < 0 || index >= elements.size())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + index, null));
-							elements.set(index, args[1]);
-							return args[1];
-						}
-						return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'get'", seq));
+				selfContext.symbolTable.set("set", new NativeFunction("set", 1) {
+					protected Object call1(Value arg) {
+						int index = index(arg, MAX_BITS);
+						if(index < 0) return new Error.RuntimeError("Invalid bit index " + arg, getSeq());
+						Error error = set(index, true);
+						return error==null?Number.NULL:error;
 					}
 				});
-				selfContext.symbolTable.set("insert", new BuildInFunction("insert", "index", "object") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						if(args[0] instanceof Number) {
-							int index = (int) ((Number)args[0]).value;
-							if(index < 0 || index > elements.size())
-								return res.failure(new Error.RuntimeError("Index out of bounds " + index, null));
-							elements.add(index, args[1]);
-							return args[1];
-						}
-						return res.failure(new Error.RuntimeError("Invalid argument type, "+args[0]+" is not allowed to the function 'get'", seq));
+				selfContext.symbolTable.set("clear", new NativeFunction("clear", 1) {
+					protected Object call1(Value arg) {
+						int index = index(arg, MAX_BITS);
+						if(index < 0) return new Error.RuntimeError("Invalid bit index " + arg, getSeq());
+						set(index, false);
+						return Number.NULL;
 					}
 				});
-				selfContext.symbolTable.set("join", new BuildInFunction("join", "by") {
-					protected Object executeFunction(Context context, Value... args) {
-						String el = "";
-						for(int i = 0; i < elements.size(); i++) {
-							el+=elements.get(i);
-							if(i!=elements.size()-1)
-								el+=args[0];
-						}
-						return new RTResult().success(new StringValue(el));
+				selfContext.symbolTable.set("flip", new NativeFunction("flip", 1) {
+					protected Object call1(Value arg) {
+						int index = index(arg, MAX_BITS);
+						if(index < 0) return new Error.RuntimeError("Invalid bit index " + arg, getSeq());
+						boolean value = !get(index);
+						Error error = set(index, value);
+						return error!=null?error:value?Number.TRUE:Number.FALSE;
 					}
 				});
-				selfContext.symbolTable.set("clear", new BuildInFunction("clear") {
-					protected Object executeFunction(Context context, Value... args) {
-						elements.clear();
-						return Number.NULL;
+				selfContext.symbolTable.set("get", new NativeFunction("get", 1) {
+					protected Object call1(Value arg) {
+						int index = index(arg, Integer.MAX_VALUE);
+						if(index < 0) return new Error.RuntimeError("Invalid bit index " + arg, getSeq());
+						return get(index)?Number.TRUE:Number.FALSE;
 					}
 				});
-				selfContext.symbolTable.set("foreach", new BuildInFunction("foreach", "function") {
-					protected Object executeFunction(Context context, Value... args) {
-						RTResult res = new RTResult();
-						
-						BaseFunction fun = null;
-						if(args[0] instanceof BaseFunction) fun = (BaseFunction) args[0];
-						else return res.failure(new RuntimeError("Invalid argument type, "+args[0]+" is not allowed in the function 'foreach'", null));
-						
-						List l = new List(new ArrayList<Object>());
-						for(Object el:elements) {
-							Object o = res.register(fun.execute((Value) el));
-							if(res.shouldReturn()) return res;
-							l.elements.add(o);
-						}
-						
-						return res.success(l);
-					}
+				selfContext.symbolTable.set("count", new NativeFunction("count", 0) {
+					protected Object call0() { return new Number(count()); }
 				});
-				selfContext.symbolTable.set("size", new BuildInFunction("size") {
-					protected Object executeFunction(Context context, Value... args) { return new Number(elements.size()); }
+				selfContext.symbolTable.set("length", new NativeFunction("length", 0) {
+					protected Object call0() { return new Number(length()); }
 				});
 				selfContext.symbolTable.set("this", this);
-				this.context = selfContext;
+				methods = selfContext;
 				return selfContext;
 			}
 			
-			public String toString() { return elements.toString(); }
+			/* The indexes set, in increasing order. */
+			public Iterator<Value> iterator() {
+				return new Iterator<Value>() {
+					private int i = BitSet.this.next(0);
+					public boolean hasNext() { return i >= 0; }
+					public Value next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						Number n = new Number(i);
+						i = i==Integer.MAX_VALUE-1?-1:BitSet.this.next(i+1);
+						return n;
+					}
+				};
+			}
+			
+			public String toString() {
+				StringBuilder sb = new StringBuilder("{");
+				for(int i = next(0); i >= 0; i = next(i+1)) sb.append(sb.length()==1?"":", ").append(i);
+				return sb.append('}').toString();
+			}
 			
 		}
 		
@@ -2163,9 +6097,33 @@ public class JIPL {
 			
 		}
 		
+		/* Class of a native value: 'new' gives the value made by create, or the error it returns, instead of an object. */
+		public static abstract class NativeClass extends ObjectClass {
+			
+			protected final int minArity, maxArity;
+			
+			public NativeClass(String name, int minArity, int maxArity) {
+				super(name, new String[0], null);
+				this.minArity = minArity;
+				this.maxArity = maxArity;
+			}
+			
+			public Object execute(Context con, Value... args) {
+				if(args.length < minArity || args.length > maxArity)
+					return new Error.RuntimeError("Incorrect number of argument have been passed in " + name + ", expected " + (minArity==maxArity?""+minArity:minArity+" to "+maxArity) + " but got " + args.length, getSeq());
+				return create(args);
+			}
+			
+			protected abstract Object create(Value... args);
+			
+		}
+		
 		public static class ObjectValue extends Value {
 			protected Context selfContext;
-			public ObjectValue(Context selfContext) { this.selfContext = selfContext; }
+			public ObjectValue(Context selfContext) {
+				this.selfContext = selfContext;
+				Execution.current().allocate(Execution.OBJECT_BYTES);
+			}
 			
 			public Context generateContext(Context context) { return selfContext; }
 			
@@ -2248,9 +6206,13 @@ public class JIPL {
 			}
 		}
 		
+		/* Resolved once per interpreter, rather than for every visited node. */
+		protected final Execution execution = Execution.current();
+		private Value[] inlineArgs = null;
+		
 		private Object visit(Object node, Context context) {
 			if(debug) System.out.println("Intepreter: Visit " + node);
-			if(stop) return new RTResult().failure(new Error.Stop("Stop.", null));
+			execution.nodes++;
 			
 				 if(node instanceof NumberNode) 		return visitNumberNode((NumberNode) node, context);
 			else if(node instanceof StringNode) 		return visitStringNode((StringNode) node, context);
@@ -2261,10 +6223,14 @@ public class JIPL {
 			else if(node instanceof IfNode) 			return visitIfNode((IfNode) node, context);
 			else if(node instanceof VarModifyNode) 		return visitVarModifyNode((VarModifyNode) node, context);
 			else if(node instanceof ForNode) 			return visitForNode((ForNode) node, context);
+			else if(node instanceof ForInNode) 			return visitForInNode((ForInNode) node, context);
 			else if(node instanceof WhileNode) 			return visitWhileNode((WhileNode) node, context);
 			else if(node instanceof CallNode) 			return visitCallNode((CallNode) node, context);
+			else if(node instanceof InlinedCallNode) 	return visitInlinedCallNode((InlinedCallNode) node, context);
+			else if(node instanceof InlineArgNode) 		return new RTResult().success(inlineArgs[((InlineArgNode) node).index]);
 			else if(node instanceof FunctionDefNode) 	return visitFunctionDefNode((FunctionDefNode) node, context);
 			else if(node instanceof ListNode)			return visitListNode((ListNode) node, context);
+			else if(node instanceof MapNode)			return visitMapNode((MapNode) node, context);
 			else if(node instanceof ReturnNode)			return visitReturnNode((ReturnNode) node, context);
 			else if(node instanceof ContinueNode)		return visitContinueNode((ContinueNode) node, context);
 			else if(node instanceof BreakNode)			return visitBreakNode((BreakNode) node, context);
@@ -2273,24 +6239,24 @@ public class JIPL {
 			else if(node instanceof ObjectDefNode)		return visitObjectDefNode((ObjectDefNode) node, context);
 			
 //			if(debug)
-			System.err.println("Intepreter: No visit for " + node + ".");
+			Engine.current().err.println("Intepreter: No visit for " + node + ".");
 			return new RTResult().failure(new RuntimeError("Impossible interpretation.", null));
 		}
 
 		private Object visitNumberNode(NumberNode node, Context context) {
-			return new RTResult().success(new Number(node.token.getValue()).setSeq(node.token.getSeq()));
+			return new RTResult().success(node.value.copy().setPosition(node.position));
 		}
 		
 		private Object visitStringNode(StringNode node, Context context) {
-			return new RTResult().success(new StringValue(node.token.getValue()).setSeq(node.token.getSeq()));
+			return new RTResult().success(new StringValue(node.value, execution).setPosition(node.position));
 		}
 		
 		private Object visitVarAccessNode(VarAccessNode node, Context context) {
 			RTResult res = new RTResult();
-			String vname = (String) node.name.value;
+			String vname = node.name;
 			Object value = context.symbolTable.get(vname);
 			
-			if(value == null) return res.failure(new Error.RuntimeError(vname + " is not defined", node.name.getSeq()));
+			if(value == null) return res.failure(new Error.RuntimeError(vname + " is not defined", Sequence.of(node.position)));
 			
 			return res.success(value);
 		}
@@ -2298,7 +6264,7 @@ public class JIPL {
 		private Object visitVarAssignNode(VarAssignNode node, Context context) {
 			RTResult res = new RTResult();
 			
-			String vname = (String) node.name.value;
+			String vname = node.name;
 			Object value = res.register(visit(node.expression, context));
 			
 			if(res.shouldReturn()) return res;
@@ -2319,25 +6285,30 @@ public class JIPL {
 			if(res.shouldReturn()) return res;
 			Value right = (Value) rightObj;
 			
-				 if(node.operationToken.matches(TokenType.PLUS)) 	return res.success(left.add(right));
-			else if(node.operationToken.matches(TokenType.MINUS))	return res.success(left.sub(right));
-			else if(node.operationToken.matches(TokenType.MULT)) 	return res.success(left.mult(right));
-			else if(node.operationToken.matches(TokenType.DIV)) {
-				if(right instanceof Number)
-					left.seq = node.operationToken.getSeq();
-				Object o = left.div(right);
-				if(o instanceof Error) return res.failure((Error) o);
-				return res.success(o);
-			} else if(node.operationToken.matches(TokenType.DOUBLE_EQUALS))return res.success(left._equals(right));
-			else if(node.operationToken.matches(TokenType.NOT_EQUALS)) 	return res.success(left._not_equals(right));
-			else if(node.operationToken.matches(TokenType.LESS)) 			return res.success(left._less(right));
-			else if(node.operationToken.matches(TokenType.LESS_EQUALS)) 	return res.success(left._less_equals(right));
-			else if(node.operationToken.matches(TokenType.GREATER)) 		return res.success(left._greater(right));
-			else if(node.operationToken.matches(TokenType.GREATER_EQUALS)) return res.success(left._greater_equals(right));
-			else if(node.operationToken.matches("and", TokenType.KEYWORD)) 	return res.success(left._and(right));
-			else if(node.operationToken.matches("or", TokenType.KEYWORD))	return res.success(left._or(right));
-			
-			return res.failure(new Error.SyntaxError("Unknown symbol", node.operationToken.getSeq()));
+			Object o;
+			switch(node.operation) {
+				case PLUS: 				o = left.add(right); break;
+				case MINUS: 			o = left.sub(right); break;
+				case MULT: 				o = left.mult(right); break;
+				case DIV: {
+					if(right instanceof Number)
+						left.setPosition(node.position);
+					o = left.div(right);
+					break;
+				}
+				case EQUALS: 			o = left._equals(right); break;
+				case NOT_EQUALS: 		o = left._not_equals(right); break;
+				case LESS: 				o = left._less(right); break;
+				case LESS_EQUALS: 		o = left._less_equals(right); break;
+				case GREATER: 			o = left._greater(right); break;
+				case GREATER_EQUALS: 	o = left._greater_equals(right); break;
+				case AND: 				o = left._and(right); break;
+				case OR: 				o = left._or(right); break;
+				default: 				return res.failure(new Error.SyntaxError("Unknown symbol", Sequence.of(node.position)));
+			}
+			/* An illegal operation, or a result over the allocation budget. */
+			if(o instanceof Error) return res.failure((Error) o);
+			return res.success(o);
 		}
 		
 		private static final Number MINUS_ONE = new Number(-1);
@@ -2351,8 +6322,8 @@ public class JIPL {
 			if(obj instanceof Number) n = (Number) obj; 
 			else if(obj instanceof RTResult) n = (Number)((RTResult) obj).value;
 			
-			if(node.operationToken.matches(TokenType.MINUS)) n = (Number) n.mult(MINUS_ONE);
-			else if(node.operationToken.matches("not", TokenType.KEYWORD)) n = (Number) n._not();
+			if(node.operation == Operator.MINUS) n = (Number) n.mult(MINUS_ONE);
+			else if(node.operation == Operator.NOT) n = (Number) n._not();
 			
 			return res.success(n);
 		}
@@ -2386,7 +6357,7 @@ public class JIPL {
 		
 		private Object visitVarModifyNode(VarModifyNode node, Context context) {
 			RTResult res = new RTResult();
-			String name = (String) node.name.value;
+			String name = node.name;
 			Object value = res.register(visit(node.node, context));
 			if(res.shouldReturn()) return res;
 			
@@ -2408,7 +6379,8 @@ public class JIPL {
 		
 		private Object visitForNode(ForNode node, Context context) {
 			RTResult res = new RTResult();
-			ArrayList<Object> elements = new ArrayList<Object>();
+			/* The values of the iterations, charged one by one as the list grows, unless the loop returns null. */
+			List elements = node.shouldReturnNull?null:new List(new ArrayList<Object>(), execution);
 			
 			Number start_value = (Number) res.register(visit(node.start, context));
 			if(res.shouldReturn()) return res;
@@ -2416,7 +6388,7 @@ public class JIPL {
 			Number end_value = (Number) res.register(visit(node.end, context));
 			if(res.shouldReturn()) return res;
 			
-			Number step_value = new Number(start_value.value<end_value.value?1:-1);
+			Number step_value = new Number(start_value.compare(end_value)<0?1:-1);
 			if(node.step != null) {
 				step_value = (Number) res.register(visit(node.step, context));
 				if(res.shouldReturn()) return res;
@@ -2424,29 +6396,73 @@ public class JIPL {
 			
 			Number i = ((Number)start_value);
 			
-			while((step_value.value >= 0?i.value<((Number)end_value).value:i.value>((Number)end_value).value)) {
-				context.symbolTable.set((String) node.varName.value, i);
+			while((step_value.value >= 0?i.compare(end_value)<0:i.compare(end_value)>0)) {
+				Error limit = execution.check();
+				if(limit != null) return res.failure(limit);
+				
+				context.symbolTable.set(node.varName, i);
 				
 				Object value = res.register(visit(node.body, context));
 				if(res.shouldReturn() && !res.shouldContinue && !res.shouldBreak) return res;
 				
-				i = (Number) i.copy();
-				i.value = i.value+step_value.value;
+				i = (Number) ((Number) i.add(step_value)).setContext(i.context);
+				
+				if(res.shouldContinue) continue;
+				if(res.shouldBreak) break;
+				
+				if(elements != null) {
+					Error error = execution.reserve(Execution.REFERENCE_BYTES);
+					if(error != null) return res.failure(error);
+					elements.elements.add(value);
+				}
+			}
+			
+			return res.success(elements==null?Number.NULL:elements);
+		}
+		
+		private Object visitForInNode(ForInNode node, Context context) {
+			RTResult res = new RTResult();
+			/* The values of the iterations, charged one by one as the list grows, unless the loop returns null. */
+			List elements = node.shouldReturnNull?null:new List(new ArrayList<Object>(), execution);
+			
+			Object iterable = res.register(visit(node.iterable, context));
+			if(res.shouldReturn()) return res;
+			
+			if(!(iterable instanceof IterableValue))
+				return res.failure(new RuntimeError(iterable+" can not be iterated over", ((Value) iterable).getSeq()));
+			
+			Iterator<Value> iterator = ((IterableValue) iterable).iterator();
+			while(iterator.hasNext()) {
+				Error limit = execution.check();
+				if(limit != null) return res.failure(limit);
+				
+				context.symbolTable.set(node.varName, iterator.next());
+				
+				Object value = res.register(visit(node.body, context));
+				if(res.shouldReturn() && !res.shouldContinue && !res.shouldBreak) return res;
 				
 				if(res.shouldContinue) continue;
 				if(res.shouldBreak) break;
 				
-				elements.add(value);
+				if(elements != null) {
+					Error error = execution.reserve(Execution.REFERENCE_BYTES);
+					if(error != null) return res.failure(error);
+					elements.elements.add(value);
+				}
 			}
 			
-			return res.success(node.shouldReturnNull?Number.NULL:new List(elements));
+			return res.success(elements==null?Number.NULL:elements);
 		}
 		
 		private Object visitWhileNode(WhileNode node, Context context) {
 			RTResult res = new RTResult();
-			ArrayList<Object> elements = new ArrayList<Object>();
+			/* The values of the iterations, charged one by one as the list grows, unless the loop returns null. */
+			List elements = node.shouldReturnNull?null:new List(new ArrayList<Object>(), execution);
 			
 			while(true) {
+				Error limit = execution.check();
+				if(limit != null) return res.failure(limit);
+				
 				Object condition = res.register(visit(node.condition, context));
 				if(res.shouldReturn()) return res;
 				
@@ -2459,19 +6475,21 @@ public class JIPL {
 				if(res.shouldContinue) continue;
 				if(res.shouldBreak) break;
 				
-				elements.add(value);
+				if(elements != null) {
+					Error error = execution.reserve(Execution.REFERENCE_BYTES);
+					if(error != null) return res.failure(error);
+					elements.elements.add(value);
+				}
 			}
 			
-			return res.success(node.shouldReturnNull?Number.NULL:new List(elements));
+			return res.success(elements==null?Number.NULL:elements);
 		}
 		
 		private Object visitFunctionDefNode(FunctionDefNode node, Context context) {
 			RTResult res = new RTResult();
-			String fname = node.name==null?null:(String)node.name.value;
-			String[] args_name = new String[node.args.length];
-			for(int i = 0; i < args_name.length; i++) args_name[i] = (String) node.args[i].value;
+			String fname = node.name;
 			
-			Object function = new Function(fname, node.body, args_name, node.shouldAutoReturn).setContext(context).setSeq(node.name==null?null:node.name.getSeq());
+			Object function = new Function(fname, node.body, node.args, node.shouldAutoReturn).setContext(context).setPosition(node.position);
 			
 			if(node.name != null)
 				context.symbolTable.set(fname, function);
@@ -2485,7 +6503,14 @@ public class JIPL {
 			Object obj = res.register(visit(node.nodeToCall, context));
 			if(res.shouldReturn()) return res;
 			
+			return call(obj, node, context);
+		}
+		
+		private Object call(Object obj, CallNode node, Context context) {
+			RTResult res = new RTResult();
+			
 			if(!(obj instanceof BaseFunction)) return obj;
+			if(obj instanceof NativeFunction) return callNative((NativeFunction) obj, node, context);
 			BaseFunction value_to_call = (BaseFunction) obj;
 			
 			ArrayList<Value> args_value = new ArrayList<Value>();
@@ -2496,7 +6521,12 @@ public class JIPL {
 				if(res.shouldReturn()) return res;
 			}
 			
+			execution.calls++;
+			if(execution.profiler != null) execution.enter(value_to_call);
+			Events.Call event = Events.Call.start();
 			Object exe = res.register(value_to_call.execute(args_value.toArray(new Value[args_value.size()])));
+			if(event != null) event.commit(value_to_call.name, node);
+			if(execution.profiler != null) execution.exit();
 //			System.out.println(exe);
 			if(res.shouldReturn()) return res;
 			
@@ -2506,14 +6536,116 @@ public class JIPL {
 			return res.success(return_value);
 		}
 		
+		private Object visitInlinedCallNode(InlinedCallNode node, Context context) {
+			RTResult res = new RTResult();
+			
+			Object obj = res.register(visit(node.call.nodeToCall, context));
+			if(res.shouldReturn()) return res;
+			
+			if(!(obj instanceof Function) || ((Function) obj).body_node != node.function.body || !sees(context.symbolTable, ((Function) obj).context, node.free))
+				return call(obj, node.call, context);
+			
+			Value[] args = new Value[node.call.args.length];
+			for(int i = 0; i < args.length; i++) {
+				args[i] = argument(res, node.call.args[i], context);
+				if(res.shouldReturn()) return res;
+			}
+			
+			execution.calls++;
+			Value[] outer = inlineArgs;
+			inlineArgs = args;
+			Events.Call event = Events.Call.start();
+			Object value = res.register(visit(node.body, context));
+			if(event != null) event.commit(node.function.name, node.call);
+			inlineArgs = outer;
+			if(res.shouldReturn()) return res;
+			
+			return res.success(value);
+		}
+		
+		/* Whether the variables are the same seen from the symbol table as from the context of the definition. */
+		private static boolean sees(SymbolTable from, Context definition, String[] names) {
+			if(definition == null) return false;
+			for(SymbolTable st = from; st != definition.symbolTable; st = st.parent) {
+				if(st == null) return false;
+				for(String name:names)
+					if(st.symbols.containsKey(name)) return false;
+			}
+			return true;
+		}
+		
+		private Object callNative(NativeFunction function, CallNode node, Context context) {
+			RTResult res = new RTResult();
+			int count = node.args.length;
+			if(count != function.arity) return res.failure(function.arityError(count));
+			
+			Value a = null, b = null;
+			Value[] args = null;
+			if(count <= 2) {
+				if(count > 0) {
+					a = argument(res, node.args[0], context);
+					if(res.shouldReturn()) return res;
+				}
+				if(count > 1) {
+					b = argument(res, node.args[1], context);
+					if(res.shouldReturn()) return res;
+				}
+			} else {
+				args = new Value[count];
+				for(int i = 0; i < count; i++) {
+					args[i] = argument(res, node.args[i], context);
+					if(res.shouldReturn()) return res;
+				}
+			}
+			
+			execution.calls++;
+			Metrics metrics = JIPL.metrics;
+			NativeFunction.Instruments instruments = function.instruments(metrics);
+			instruments.calls.increment();
+			long start = instruments.nanos!=null&&metrics.hasBuiltinTimings()?System.nanoTime():0;
+			if(execution.profiler != null) execution.enter(function);
+			Object exe = count==0?function.call0():count==1?function.call1(a):count==2?function.call2(a, b):function.callN(args);
+			if(execution.profiler != null) execution.exit();
+			if(start != 0) instruments.nanos.record(System.nanoTime()-start);
+			
+			Object return_value = res.register(exe);
+			if(res.shouldReturn()) return res;
+			
+			return res.success(return_value);
+		}
+		
+		private Value argument(RTResult res, Object node, Context context) {
+			Object a = res.register(visit(node, context));
+			if(a instanceof Error) res.failure((Error) a);
+			return res.shouldReturn()?null:(Value) a;
+		}
+		
 		private Object visitListNode(ListNode node, Context context) {
 			RTResult res = new RTResult();
 			ArrayList<Object> elements = new ArrayList<Object>();
+			boolean profiled = execution.profiler != null;
 			for(Object o:node.elementNodes) {
+				if(profiled) execution.at(o);
 				elements.add(res.register(visit(o, context)));
 				if(res.shouldReturn()) return res;
 			}
-			return res.success(new List(elements));
+			return res.success(new List(elements, execution));
+		}
+		
+		private Object visitMapNode(MapNode node, Context context) {
+			RTResult res = new RTResult();
+			MapValue map = new MapValue(node.keys.length);
+			for(int i = 0; i < node.keys.length; i++) {
+				Object key = res.register(visit(node.keys[i], context));
+				if(res.shouldReturn()) return res;
+				Object value = res.register(visit(node.values[i], context));
+				if(res.shouldReturn()) return res;
+				if(!(key instanceof StringValue) && !(key instanceof Number))
+					return res.failure(new RuntimeError("Invalid key type, "+key+" is not allowed in a map, only strings and numbers are", Sequence.of(node.position)));
+				Error error = map.set((Value) key, (Value) value);
+				if(error != null) return res.failure(error);
+			}
+			return res.success(map);
 		}
 		
 		private Object visitReturnNode(ReturnNode node, Context context) {
@@ -2536,7 +6668,13 @@ public class JIPL {
 			Object currentReturn = Number.NULL;
 			Context currentContext = context;
 			for(Object index:node.nodes) {
-				Object value = res.register(visit(index, currentContext));
+				Object value;
+				/* A method is looked up in the value, but its arguments are evaluated where the call is written. */
+				if(index instanceof CallNode && currentContext != context) {
+					value = res.register(visit(((CallNode) index).nodeToCall, currentContext));
+					if(res.shouldReturn()) return res;
+					value = res.register(call(value, (CallNode) index, context));
+				} else value = res.register(visit(index, currentContext));
 				if(res.shouldReturn()) return res;
 				
 				if(value instanceof RTResult) currentContext = ((Value)((RTResult)value).value).generateContext(currentContext);
@@ -2549,12 +6687,8 @@ public class JIPL {
 		private Object visitObjectDefNode(ObjectDefNode node, Context context) {
 			RTResult res = new RTResult();
 			
-			String[] args_name = new String[node.args.length];
-			for(int i = 0; i < args_name.length; i++)
-				args_name[i] = (String) node.args[i].value;
-			
-			ObjectClass oc = new ObjectClass((String) node.name.value, args_name, node.body);
-			context.symbolTable.set((String) node.name.value, oc);
+			ObjectClass oc = new ObjectClass(node.name, node.args, node.body);
+			context.symbolTable.set(node.name, oc);
 			
 			return res.success(oc);
 		}
@@ -2589,16 +6723,20 @@ public class JIPL {
 		public Context parent = null;
 		public SymbolTable symbolTable;
 		
-		public Context(String displayName, Context parent) {
-			this.displayName = displayName;
-			this.parent = parent;
-			this.symbolTable = new SymbolTable(parent==null?null:parent.symbolTable);
+		public Context(String displayName, Context parent) { this(displayName, parent, Execution.current()); }
+		
+		/* Charged to the given run, for the interpreter which has it at hand. */
+		public Context(String displayName, Context parent, Execution execution) {
+			this(displayName, parent, new SymbolTable(parent==null?null:parent.symbolTable), execution);
 		}
 		
-		public Context(String displayName, Context parent, SymbolTable st) {
+		public Context(String displayName, Context parent, SymbolTable st) { this(displayName, parent, st, Execution.current()); }
+		
+		public Context(String displayName, Context parent, SymbolTable st, Execution execution) {
 			this.displayName = displayName;
 			this.parent = parent;
 			this.symbolTable = st;
+			execution.allocate(Execution.CONTEXT_BYTES);
 		}
 		
 		public void set(String name, Object value) { symbolTable.set(name, value); }
@@ -2637,6 +6775,20 @@ public class JIPL {
 	}
 	
 	public static class Sequence {
+		
+		/*
+		 * Positions stored in the tree are packed in a single int: the line in the high bits
+		 * and the column, capped to 4095, in the low 12 bits.
+		 */
+		public static final int NONE = -1;
+		
+		public static int pack(int line, int column) { return Math.min(line, 0x7FFFF) << 12 | Math.min(Math.max(column, 0), 0xFFF); }
+		public static int line(int position) { return position >>> 12; }
+		public static int column(int position) { return position & 0xFFF; }
+		
+		/* Unpacks a position, the offset of the sequence being the column. */
+		public static Sequence of(int position) { return position == NONE?null:new Sequence(line(position), column(position), 0); }
+		
 		private int line, offset, size;
 		
 		public Sequence(int line, int offset, int size) {
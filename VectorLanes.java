@@ -0,0 +1,75 @@
+package fr.holo.interpreter;
+
+import fr.holo.interpreter.JIPL.Parser.Operator;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Operations of JIPL.Kernel with the Vector API, loaded by Kernel when the module is there:
+ *   javac --add-modules jdk.incubator.vector -d out JIPL.java VectorLanes.java
+ *   java --add-modules jdk.incubator.vector -cp out ...
+ * The lanes left over at the end of a column, and the operations the API has no lanewise form of, are done by the plain loops.
+ */
+final class VectorLanes extends JIPL.Kernel.Lanes {
+	
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	
+	private static final FloatVector ZERO = FloatVector.zero(SPECIES), ONE = FloatVector.broadcast(SPECIES, 1), NAN = FloatVector.broadcast(SPECIES, Float.NaN);
+	
+	protected void binary(Operator operator, float[] a, float[] b, float[] out, int from, int to) {
+		int i = from, bound = from+SPECIES.loopBound(to-from);
+		for(; i < bound; i += SPECIES.length()) {
+			FloatVector x = FloatVector.fromArray(SPECIES, a, i), y = FloatVector.fromArray(SPECIES, b, i), r;
+			switch(operator) {
+				case PLUS: r = x.add(y); break;
+				case MINUS: r = x.sub(y); break;
+				case MULT: r = x.mul(y); break;
+				case DIV: r = x.div(y).blend(NAN, y.eq(0)); break;
+				case EQUALS: r = ZERO.blend(ONE, x.sub(y).abs().lt(EPSILON)); break;
+				case NOT_EQUALS: r = ONE.blend(ZERO, x.sub(y).abs().lt(EPSILON)); break;
+				case LESS: r = ZERO.blend(ONE, x.lt(y)); break;
+				case GREATER: r = ZERO.blend(ONE, x.compare(VectorOperators.GT, y)); break;
+				case LESS_EQUALS: r = ZERO.blend(ONE, x.compare(VectorOperators.LE, y)); break;
+				case GREATER_EQUALS: r = ZERO.blend(ONE, x.compare(VectorOperators.GE, y)); break;
+				case AND: r = ZERO.blend(ONE, isTrue(x).and(isTrue(y))); break;
+				case OR: r = ZERO.blend(ONE, isTrue(x).or(isTrue(y))); break;
+				default: throw new IllegalArgumentException("Not a binary operator "+operator);
+			}
+			r.intoArray(out, i);
+		}
+		super.binary(operator, a, b, out, i, to);
+	}
+	
+	protected void unary(Operator operator, float[] a, float[] out, int from, int to) {
+		int i = from, bound = from+SPECIES.loopBound(to-from);
+		for(; i < bound; i += SPECIES.length()) {
+			FloatVector x = FloatVector.fromArray(SPECIES, a, i);
+			if(operator == Operator.MINUS) x.mul(-1).intoArray(out, i);
+			else if(operator == Operator.NOT) ZERO.blend(ONE, x.eq(0)).intoArray(out, i);
+			else throw new IllegalArgumentException("Not a unary operator "+operator);
+		}
+		super.unary(operator, a, out, i, to);
+	}
+	
+	protected void math(String function, float[] a, float[] out, int from, int to) {
+		VectorOperators.Unary operator;
+		switch(function) {
+			case "sin": operator = VectorOperators.SIN; break;
+			case "cos": operator = VectorOperators.COS; break;
+			case "abs": operator = VectorOperators.ABS; break;
+			case "sqrt": operator = VectorOperators.SQRT; break;
+			default:
+				super.math(function, a, out, from, to);
+				return;
+		}
+		int i = from, bound = from+SPECIES.loopBound(to-from);
+		for(; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, a, i).lanewise(operator).intoArray(out, i);
+		super.math(function, a, out, i, to);
+	}
+	
+	private static VectorMask<Float> isTrue(FloatVector x) { return x.abs().compare(VectorOperators.GE, EPSILON); }
+	
+}
@@ -0,0 +1,52 @@
+package fr.holo.interpreter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Runs scripts parsed once, each on a fresh global context. Run with "-prof gc" for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+	
+	@Param({"arithmetic", "fib", "strings", "lists", "objects"})
+	public String workload;
+	
+	private JIPL.Engine engine;
+	private JIPL.Parser.ParseResult script;
+	
+	@Setup
+	public void setup() {
+		engine = Scripts.silentEngine();
+		switch(workload) {
+			case "arithmetic": script = JIPL.getParseResult(Scripts.ARITHMETIC); break;
+			case "fib": script = JIPL.getParseResult(Scripts.FIB); break;
+			case "strings": script = JIPL.getParseResult(Scripts.STRINGS); break;
+			case "lists": script = JIPL.getParseResult(Scripts.LISTS); break;
+			case "objects": script = JIPL.getParseResult(Scripts.OBJECTS); break;
+			default: throw new IllegalArgumentException("Unknown workload " + workload);
+		}
+		JIPL.Interpreter.RTResult result = engine.run(script, JIPL.getGlobalContext());
+		if(result == null || result.error != null) throw new IllegalStateException("The " + workload + " script fails");
+	}
+	
+	@Benchmark
+	public JIPL.Interpreter.RTResult run() { return engine.run(script, JIPL.getGlobalContext()); }
+	
+}
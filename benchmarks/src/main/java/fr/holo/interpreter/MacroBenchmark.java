@@ -0,0 +1,210 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Runs the scripts of a corpus end to end, each in several fresh JVMs (forks), and compares the results with a baseline.
+ * A fork times the first run of a script from a cold start, then its steady runs after the warmup, and reads the peak heap.
+ * A script reads its input from the file of the same name ending in ".in", if there is one.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar fr.holo.interpreter.MacroBenchmark [options]
+ *
+ *   --corpus <dir>       scripts to run, benchmarks/corpus by default
+ *   --baseline <file>    results to compare with, <corpus>/baseline.txt by default
+ *   --forks <n>          JVMs per script, 3 by default
+ *   --warmup <n>         runs before measuring, 5 by default
+ *   --iterations <n>     measured runs, 10 by default
+ *   --threshold <pct>    slowdown failing the run, 10 by default
+ *   --save               writes the results as the new baseline instead of comparing
+ *
+ * Exits with 1 when a script is slower than the baseline by more than the threshold, on its first or steady runs.
+ */
+public final class MacroBenchmark {
+	
+	private static final String RESULT = "RESULT";
+	
+	private MacroBenchmark() {}
+	
+	/* Measures of one script: millis to the first result, median millis of the steady runs and peak heap in megabytes. */
+	static final class Measure {
+		
+		final double first, steady, heap;
+		
+		Measure(double first, double steady, double heap) {
+			this.first = first;
+			this.steady = steady;
+			this.heap = heap;
+		}
+		
+		static Measure parse(String line) {
+			String[] parts = line.trim().split("\\s+");
+			return new Measure(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+		}
+		
+		public String toString() { return String.format(Locale.ROOT, "%.3f %.3f %.1f", first, steady, heap); }
+		
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if(args.length == 4 && args[0].equals("--fork")) {
+			fork(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			return;
+		}
+		
+		File corpus = new File("benchmarks/corpus"), baseline = null;
+		int forks = 3, warmup = 5, iterations = 10;
+		double threshold = 10;
+		boolean save = false;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--corpus": corpus = new File(args[++i]); break;
+				case "--baseline": baseline = new File(args[++i]); break;
+				case "--forks": forks = Integer.parseInt(args[++i]); break;
+				case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+				case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+				case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+				case "--save": save = true; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if(baseline == null) baseline = new File(corpus, "baseline.txt");
+		
+		File[] scripts = corpus.listFiles((dir, name) -> name.endsWith(".jipl"));
+		if(scripts == null || scripts.length == 0) throw new IllegalArgumentException("No script in " + corpus);
+		Arrays.sort(scripts);
+		
+		Map<String, Measure> results = new LinkedHashMap<String, Measure>();
+		for(File script:scripts) {
+			ArrayList<Measure> measures = new ArrayList<Measure>();
+			for(int f = 0; f < forks; f++) measures.add(runFork(script, warmup, iterations));
+			results.put(name(script), median(measures));
+		}
+		
+		if(save) {
+			StringBuilder sb = new StringBuilder("# script, millis to the first result, steady millis, peak heap in megabytes\n");
+			for(Map.Entry<String, Measure> e:results.entrySet()) sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+			Files.write(baseline.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+			System.out.print(sb);
+			System.out.println("Saved to " + baseline);
+			return;
+		}
+		
+		Map<String, Measure> base = baseline.exists()?readBaseline(baseline):new LinkedHashMap<String, Measure>();
+		boolean regressed = false;
+		System.out.println(String.format(Locale.ROOT, "%-12s %12s %12s %10s", "script", "first ms", "steady ms", "heap MB"));
+		for(Map.Entry<String, Measure> e:results.entrySet()) {
+			Measure m = e.getValue(), b = base.get(e.getKey());
+			System.out.println(String.format(Locale.ROOT, "%-12s %12.3f %12.3f %10.1f", e.getKey(), m.first, m.steady, m.heap));
+			if(b == null) continue;
+			
+			double first = change(b.first, m.first), steady = change(b.steady, m.steady), heap = change(b.heap, m.heap);
+			boolean slower = first > threshold || steady > threshold;
+			regressed |= slower;
+			System.out.println(String.format(Locale.ROOT, "%-12s %+11.1f%% %+11.1f%% %+9.1f%%%s", "", first, steady, heap, slower?"  REGRESSION":""));
+		}
+		if(base.isEmpty()) System.out.println("No baseline in " + baseline + ", run with --save to make one.");
+		if(regressed) {
+			System.out.println("Slower than the baseline by more than " + threshold + "%.");
+			System.exit(1);
+		}
+	}
+	
+	private static String name(File script) {
+		String name = script.getName();
+		return name.substring(0, name.length()-".jipl".length());
+	}
+	
+	private static double change(double before, double after) { return before<=0?0:(after-before)*100/before; }
+	
+	private static Measure median(List<Measure> measures) {
+		double[] first = new double[measures.size()], steady = new double[measures.size()], heap = new double[measures.size()];
+		for(int i = 0; i < measures.size(); i++) {
+			first[i] = measures.get(i).first;
+			steady[i] = measures.get(i).steady;
+			heap[i] = measures.get(i).heap;
+		}
+		return new Measure(median(first), median(steady), median(heap));
+	}
+	
+	private static double median(double[] values) {
+		Arrays.sort(values);
+		int n = values.length;
+		return n%2==1?values[n/2]:(values[n/2-1]+values[n/2])/2;
+	}
+	
+	private static Map<String, Measure> readBaseline(File file) throws IOException {
+		Map<String, Measure> base = new LinkedHashMap<String, Measure>();
+		for(String line:Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) continue;
+			int space = line.indexOf(' ');
+			base.put(line.substring(0, space), Measure.parse(line.substring(space+1)));
+		}
+		return base;
+	}
+	
+	/* Runs the script in a new JVM with the same class path, reading its measures from the output. */
+	private static Measure runFork(File script, int warmup, int iterations) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), MacroBenchmark.class.getName(),
+				"--fork", script.getPath(), String.valueOf(warmup), String.valueOf(iterations)).redirectErrorStream(true).start();
+		String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+		if(process.waitFor() != 0) throw new IllegalStateException("The fork running " + script + " failed:\n" + output);
+		for(String line:output.split("\n"))
+			if(line.startsWith(RESULT)) return Measure.parse(line.substring(RESULT.length()));
+		throw new IllegalStateException("No result from the fork running " + script + ":\n" + output);
+	}
+	
+	/* Inside a fork: every run gets a new engine, with the canned input, and a new global context. */
+	private static void fork(File script, int warmup, int iterations) throws IOException {
+		for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+		
+		String source = JIPL.read(script);
+		File inputFile = new File(script.getParentFile(), name(script) + ".in");
+		byte[] input = inputFile.exists()?Files.readAllBytes(inputFile.toPath()):new byte[0];
+		
+		long start = System.nanoTime();
+		run(source, input, script);
+		double first = (System.nanoTime()-start)/1e6;
+		
+		for(int i = 0; i < warmup; i++) run(source, input, script);
+		
+		double[] steady = new double[Math.max(1, iterations)];
+		for(int i = 0; i < steady.length; i++) {
+			long s = System.nanoTime();
+			run(source, input, script);
+			steady[i] = (System.nanoTime()-s)/1e6;
+		}
+		
+		long heap = 0;
+		for(MemoryPoolMXBean pool:ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP) heap += pool.getPeakUsage().getUsed();
+		
+		System.out.println(RESULT + " " + new Measure(first, median(steady), heap/(1024.0*1024.0)));
+	}
+	
+	private static void run(String source, byte[] input, File script) {
+		InputStream in = new ByteArrayInputStream(input);
+		PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+		JIPL.Engine engine = new JIPL.Engine(in, nowhere, System.err);
+		JIPL.Interpreter.RTResult result = engine.run(source, JIPL.getGlobalContext());
+		if(result == null || result.error != null) throw new IllegalStateException(script + " fails");
+	}
+	
+}
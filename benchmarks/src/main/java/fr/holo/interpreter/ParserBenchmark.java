@@ -0,0 +1,40 @@
+package fr.holo.interpreter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Parses tokens lexed once, so that only the parser is measured. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+	
+	@Param({"deepExpression", "longStatements"})
+	public String shape;
+	
+	private JIPL.TokenBuffer tokens;
+	
+	@Setup
+	public void setup() {
+		tokens = JIPL.Lexer.tokenize(shape.equals("deepExpression")?Scripts.deepExpression(500):Scripts.statements(5000));
+		if(tokens.getError() != null) throw new IllegalStateException("Lexer error in the " + shape + " source");
+	}
+	
+	@Benchmark
+	public JIPL.Parser.ParseResult parse() { return new JIPL.Parser(tokens).parse(); }
+	
+}
@@ -0,0 +1,85 @@
+package fr.holo.interpreter;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/* Sources shared by the benchmarks, made in code so that their sizes are easy to scale. */
+final class Scripts {
+	
+	static final String SMALL = String.join("\n",
+			"function fib(n): if n <= 1: n else fib(n - 1) + fib(n - 2)",
+			"var total = 0",
+			"for i = 0 to 10 {",
+			"	total = total + fib(i) * 2 / 3",
+			"}",
+			"var name = \"value \" + total",
+			"if total > 10: print(name) else print(\"small\")");
+	
+	static final String LARGE = repeat(SMALL, 2000);
+	
+	/* A single expression of nested parentheses and operators, 'depth' levels deep. */
+	static String deepExpression(int depth) {
+		StringBuilder sb = new StringBuilder("var x = ");
+		for(int i = 0; i < depth; i++) sb.append("(").append(i).append(i%2==0?" + ":" * ");
+		sb.append("1");
+		for(int i = 0; i < depth; i++) sb.append(")");
+		return sb.toString();
+	}
+	
+	/* 'count' short statements, one per line. */
+	static String statements(int count) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < count; i++) sb.append("var v").append(i).append(" = ").append(i).append(" * 2 + v").append(Math.max(0, i-1)).append("\n");
+		return sb.toString();
+	}
+	
+	static final String ARITHMETIC = String.join("\n",
+			"var total = 0",
+			"for i = 0 to 10000 {",
+			"	total = total + i * 3 - i / 2",
+			"}");
+	
+	static final String FIB = "function fib(n): if n <= 1: n else fib(n - 1) + fib(n - 2)\nfib(15)";
+	
+	static final String STRINGS = String.join("\n",
+			"var s = \"\"",
+			"for i = 0 to 1000 {",
+			"	s = s + \"ab\"",
+			"}",
+			"s.length");
+	
+	static final String LISTS = String.join("\n",
+			"var l = []",
+			"for i = 0 to 1000 {",
+			"	l.add(i)",
+			"}",
+			"var total = 0",
+			"for i = 0 to l.size() {",
+			"	total = total + l.get(i)",
+			"}");
+	
+	static final String OBJECTS = String.join("\n",
+			"object Point(x, y) {",
+			"	function len(): sqrt(x*x + y*y)",
+			"}",
+			"var total = 0",
+			"for i = 0 to 500 {",
+			"	var p = new Point(i, i + 1)",
+			"	total = total + p.x + p.len()",
+			"}");
+	
+	private Scripts() {}
+	
+	static String repeat(String text, int times) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < times; i++) sb.append(text).append("\n");
+		return sb.toString();
+	}
+	
+	/* Engine writing its output nowhere, so that printing does not weigh on the measures. */
+	static JIPL.Engine silentEngine() {
+		PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+		return new JIPL.Engine(System.in, nowhere, nowhere);
+	}
+	
+}
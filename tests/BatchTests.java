@@ -0,0 +1,60 @@
+package fr.holo.interpreter;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import fr.holo.interpreter.JIPL.Interpreter.Number;
+import fr.holo.interpreter.JIPL.Interpreter.Value;
+
+/*
+ * Checks of batches: rows evaluated apart from each other, each within the limits, the same on a pool as on a single thread.
+ *
+ *   javac -d out JIPL.java tests/BatchTests.java
+ *   java -cp out fr.holo.interpreter.BatchTests
+ */
+public final class BatchTests {
+	
+	private static int failed = 0;
+	
+	private BatchTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		JIPL.Batch batch = new JIPL.Batch("var y = x * 2\ny + 1", new String[] {"x"}, "y");
+		JIPL.Batch.Result result = batch.evaluate(rows(3));
+		check("values of the rows", text(result.getValues()).equals("[1, 3, 5]") && text(result.getColumn("y")).equals("[0, 2, 4]"));
+		
+		/* A row assigning a variable the next one does not must not see it. */
+		JIPL.Batch isolated = new JIPL.Batch("if x == 0 { var seen = 1 } else { 0 }\nseen", new String[] {"x"}, "seen");
+		result = isolated.evaluate(rows(2));
+		check("variable of a row kept from the next", text(result.getValues()).equals("[1, 0]") && result.getColumn("seen")[1] == Number.NULL);
+		
+		/* The limits hold for each row, not for the rows together. */
+		JIPL.Limits limits = new JIPL.Limits(100, 0, null);
+		JIPL.Batch loop = new JIPL.Batch(JIPL.Engine.getDefault(), JIPL.getParseResult("var n = 0\nwhile n < x { n = n + 1 }\nn"), limits, new String[] {"x"});
+		result = loop.evaluate(new Value[][] {{new Number(50)}, {new Number(50)}, {new Number(500)}, {new Number(50)}});
+		check("limits of each row", result.getErrorCount() == 1 && result.getError(2) != null && text(result.getValues()).equals("[50, 50, null, 50]"));
+		
+		Value[][] many = rows(10000);
+		String sequential = text(batch.evaluate(many).getValues());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		check("same values on a pool", text(batch.evaluate(many, pool).getValues()).equals(sequential));
+		pool.shutdown();
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static Value[][] rows(int count) {
+		Value[][] rows = new Value[count][];
+		for(int i = 0; i < count; i++) rows[i] = new Value[] {new Number(i)};
+		return rows;
+	}
+	
+	private static String text(Value[] values) { return Arrays.toString(values); }
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,108 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import fr.holo.interpreter.JIPL.Parser.Operator;
+import fr.holo.interpreter.JIPL.Parser.ParseResult;
+
+/*
+ * Checks of .jiplc files: trees read back as written, and damaged or hostile files falling back to parsing the source.
+ *
+ *   javac -d out JIPL.java tests/CompiledFileTests.java
+ *   java -cp out fr.holo.interpreter.CompiledFileTests
+ */
+public final class CompiledFileTests {
+	
+	/* Tags of CompiledFile. */
+	private static final byte NUMBER = 1, STRING = 2, UNARY = 4;
+	
+	private static int failed = 0;
+	
+	private CompiledFileTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		File dir = Files.createTempDirectory("jiplc").toFile();
+		File script = new File(dir, "script.jipl");
+		String source = "var total = 0\nfor i = 1 to 5 { total = total + i }\nif total == 10 { \"ten\" } else { -total }";
+		Files.write(script.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		File compiled = JIPL.CompiledFile.of(script);
+		
+		ParseResult parsed = JIPL.compile(script);
+		ParseResult read = JIPL.CompiledFile.read(compiled, source);
+		check("compiled file written", compiled.isFile());
+		check("tree read back as written", read != null && read.error == null && String.valueOf(read.node).equals(String.valueOf(parsed.node)));
+		check("run from the compiled file", String.valueOf(JIPL.run(script, JIPL.getGlobalContext()).value).equals(String.valueOf(JIPL.run(source, JIPL.getGlobalContext()).value)));
+		check("other source ignored", JIPL.CompiledFile.read(compiled, source + "\n") == null);
+		
+		byte[] bytes = Files.readAllBytes(compiled.toPath());
+		Files.write(compiled.toPath(), Arrays.copyOf(bytes, bytes.length - 7));
+		check("truncated file ignored", JIPL.CompiledFile.read(compiled, source) == null);
+		check("run despite a truncated file", JIPL.run(script, JIPL.getGlobalContext()).error == null);
+		
+		bytes[6] ^= 1;
+		Files.write(compiled.toPath(), bytes);
+		check("file of another engine ignored", JIPL.CompiledFile.read(compiled, source) == null);
+		
+		/* A string claiming 2GB in a file of a few bytes. */
+		DataOutputStream out = header(source);
+		out.writeByte(STRING);
+		out.writeInt(Integer.MAX_VALUE);
+		out.writeInt(0);
+		check("huge length refused", read(compiled, out, source) == null);
+		
+		out = header(source);
+		out.writeByte(STRING);
+		out.writeInt(-2);
+		out.writeInt(0);
+		check("negative length refused", read(compiled, out, source) == null);
+		
+		/* A hundred thousand nested negations, deeper than any stack reading them back. */
+		out = header(source);
+		for(int i = 0; i < 100000; i++) {
+			out.writeByte(UNARY);
+			out.writeByte(Operator.MINUS.ordinal());
+			out.writeInt(0);
+		}
+		out.writeByte(NUMBER);
+		out.writeBoolean(true);
+		out.writeLong(1);
+		out.writeInt(0);
+		check("deep nesting refused", read(compiled, out, source) == null);
+		
+		for(File f:dir.listFiles()) f.delete();
+		dir.delete();
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static ByteArrayOutputStream buffer;
+	
+	private static DataOutputStream header(String source) throws IOException {
+		buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(0x4A495043);
+		out.writeShort(1);
+		out.writeInt(JIPL.ENGINE_VERSION);
+		out.write(JIPL.CompiledFile.hash(source));
+		return out;
+	}
+	
+	private static ParseResult read(File compiled, DataOutputStream out, String source) throws IOException {
+		out.flush();
+		Files.write(compiled.toPath(), buffer.toByteArray());
+		return JIPL.CompiledFile.read(compiled, source);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,127 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+/*
+ * Checks of the daemon: runs for the clients holding the token only, files under the root only, and requests of any length refused before anything is allocated.
+ *
+ *   javac -d out JIPL.java tests/DaemonTests.java
+ *   java -cp out fr.holo.interpreter.DaemonTests
+ */
+public final class DaemonTests {
+	
+	private static int failed = 0;
+	
+	private DaemonTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		Path home = Files.createTempDirectory("home"), root = Files.createTempDirectory("root"), outside = Files.createTempDirectory("outside");
+		/* The token is written under the home of the user, a temporary one here. */
+		System.setProperty("user.home", home.toString());
+		File script = root.resolve("script.jipl").toFile(), other = outside.resolve("other.jipl").toFile();
+		Files.write(script.toPath(), "print(40 + 2)".getBytes(StandardCharsets.UTF_8));
+		Files.write(other.toPath(), "print(0)".getBytes(StandardCharsets.UTF_8));
+		
+		try(JIPL.Daemon daemon = new JIPL.Daemon(0, JIPL.Limits.NONE, root)) {
+			int port = daemon.getPort();
+			check("token written", Files.isRegularFile(JIPL.Daemon.tokenFile(port)));
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+			int status = JIPL.Daemon.runSource(port, "print(1 + 1)", empty(), new PrintStream(out, true), new PrintStream(err, true));
+			check("source run", status == 0 && text(out).trim().equals("2"));
+			
+			out.reset();
+			status = JIPL.Daemon.runFile(port, script, empty(), new PrintStream(out, true), new PrintStream(err, true));
+			check("file under the root run", status == 0 && text(out).trim().equals("42"));
+			
+			err.reset();
+			status = JIPL.Daemon.runFile(port, other, empty(), new PrintStream(out, true), new PrintStream(err, true));
+			check("file outside the root refused", status == 1 && text(err).startsWith("No file"));
+			
+			byte[] token = HexFormat.of().parseHex(new String(Files.readAllBytes(JIPL.Daemon.tokenFile(port)), StandardCharsets.US_ASCII).trim());
+			byte[] wrong = token.clone();
+			wrong[0] ^= 1;
+			try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+				DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+				frame(output, 'a', wrong);
+				check("wrong token refused", closed(new DataInputStream(socket.getInputStream())));
+			}
+			
+			check("huge request refused", refused(port, token, Integer.MAX_VALUE));
+			check("negative request refused", refused(port, token, -1));
+			
+			/* Nested deeply enough to overflow the stack of the parser. */
+			StringBuilder source = new StringBuilder();
+			for(int i = 0; i < 100000; i++) source.append('(');
+			err.reset();
+			status = JIPL.Daemon.runSource(port, source.toString(), empty(), new PrintStream(out, true), new PrintStream(err, true));
+			check("failure of the engine reported", status == 1 && text(err).length() > 0);
+			
+			out.reset();
+			status = JIPL.Daemon.runSource(port, "print(3)", empty(), new PrintStream(out, true), new PrintStream(err, true));
+			check("served after a failure", status == 0 && text(out).trim().equals("3"));
+		}
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	/* Whether a request of the given length gets an error and a status of 1 without the daemon waiting for its bytes. */
+	private static boolean refused(int port, byte[] token, int length) throws IOException {
+		try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setSoTimeout(10000);
+			DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			frame(output, 'a', token);
+			output.writeByte('s');
+			output.writeInt(length);
+			output.flush();
+			DataInputStream input = new DataInputStream(socket.getInputStream());
+			if(input.readByte() != 'e') return false;
+			input.readFully(new byte[input.readInt()]);
+			return input.readByte() == 'x' && input.readInt() == 1;
+		}
+	}
+	
+	private static boolean closed(DataInputStream input) throws IOException {
+		try {
+			input.readByte();
+			return false;
+		} catch (EOFException e) {
+			return true;
+		} catch (SocketException e) {
+			/* Reset by the daemon closing the connection. */
+			return true;
+		}
+	}
+	
+	private static void frame(DataOutputStream output, char type, byte[] bytes) throws IOException {
+		output.writeByte(type);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+		output.flush();
+	}
+	
+	private static ByteArrayInputStream empty() { return new ByteArrayInputStream(new byte[0]); }
+	
+	private static String text(ByteArrayOutputStream bytes) { return new String(bytes.toByteArray(), StandardCharsets.UTF_8); }
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
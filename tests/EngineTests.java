@@ -0,0 +1,82 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.holo.interpreter.JIPL.Interpreter.RTResult;
+
+/*
+ * Checks of engines run from many threads: each run printing to its own engine, reading its own input, and stopped with its engine only.
+ *
+ *   javac -d out JIPL.java tests/EngineTests.java
+ *   java -cp out fr.holo.interpreter.EngineTests
+ */
+public final class EngineTests {
+	
+	private static int failed = 0;
+	
+	private EngineTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		final int engines = 8;
+		final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[engines];
+		final JIPL.Engine[] all = new JIPL.Engine[engines];
+		for(int i = 0; i < engines; i++) {
+			outputs[i] = new ByteArrayOutputStream();
+			PrintStream print = new PrintStream(outputs[i], true, "UTF-8");
+			all[i] = new JIPL.Engine(new ByteArrayInputStream(("word"+i).getBytes(StandardCharsets.UTF_8)), print, print);
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(engines);
+		ArrayList<Future<RTResult>> runs = new ArrayList<Future<RTResult>>();
+		for(int i = 0; i < engines; i++) {
+			final int id = i;
+			runs.add(pool.submit(new Callable<RTResult>() {
+				public RTResult call() { return all[id].run("print(input())\nvar n = 0\nwhile n < 200 {\n\tprint(" + id + ")\n\tn = n + 1\n}", JIPL.getGlobalContext()); }
+			}));
+		}
+		for(Future<RTResult> run:runs) run.get();
+		boolean own = true;
+		for(int i = 0; i < engines; i++) {
+			String[] lines = new String(outputs[i].toByteArray(), StandardCharsets.UTF_8).split("\\R");
+			own &= lines.length == 201 && lines[0].equals("word"+i);
+			for(int j = 1; j < lines.length; j++) own &= lines[j].equals(""+i);
+		}
+		check("output and input of each engine its own", own);
+		check("default engine outside of any run", JIPL.Engine.current() == JIPL.Engine.getDefault());
+		
+		/* Two endless runs, one engine being stopped. */
+		final String endless = "var n = 0\nwhile true { n = n + 1 }";
+		Future<RTResult> first = pool.submit(new Callable<RTResult>() {
+			public RTResult call() { return all[0].run(endless, JIPL.getGlobalContext()); }
+		});
+		Future<RTResult> second = pool.submit(new Callable<RTResult>() {
+			public RTResult call() { return all[1].run(endless, JIPL.getGlobalContext()); }
+		});
+		Thread.sleep(200);
+		all[0].stop();
+		RTResult stopped = first.get();
+		Thread.sleep(100);
+		check("run of the stopped engine stopped", stopped != null && stopped.error instanceof JIPL.Error.Stop);
+		check("run of another engine going on", !second.isDone());
+		all[1].stop();
+		check("run of the other engine stopped", second.get().error instanceof JIPL.Error.Stop);
+		pool.shutdown();
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,73 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/*
+ * Checks of the Flight Recorder events: runs, calls, parses and errors recorded while a recording enables them.
+ *
+ *   javac -d out JIPL.java tests/EventsTests.java
+ *   java -cp out fr.holo.interpreter.EventsTests
+ */
+public final class EventsTests {
+	
+	private static final String SOURCE = "function slow(n) {\n\tvar total = 0\n\tfor i = 0 to n { total = total + i }\n\treturn total\n}\nprint(slow(300000))\nvar list = [1]\nlist.get(5)";
+	
+	private static int failed = 0;
+	
+	private EventsTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+		JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), quiet, quiet);
+		
+		/* Once before any recording, the events being off then. */
+		engine.run(SOURCE, JIPL.getGlobalContext());
+		
+		Path file = Files.createTempFile("jipl", ".jfr");
+		try(Recording recording = new Recording()) {
+			for(String event:new String[] {"Execution", "Call", "Parse", "ParseCache", "Error"})
+				recording.enable("fr.holo.jipl."+event).withThreshold(Duration.ZERO);
+			recording.start();
+			engine.run(JIPL.getEditableParseResult(SOURCE), JIPL.getGlobalContext(), new JIPL.Execution(engine, JIPL.Limits.NONE).named("recorded"));
+			engine.run("print(1)", JIPL.getGlobalContext());
+			recording.stop();
+			recording.dump(file);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		Files.delete(file);
+		
+		RecordedEvent execution = find(events, "fr.holo.jipl.Execution", "script", "recorded");
+		check("run recorded", execution != null && execution.getBoolean("failed") && execution.getLong("calls") >= 1 && execution.getLong("nodes") > 0);
+		RecordedEvent error = find(events, "fr.holo.jipl.Error", "script", "recorded");
+		check("error recorded", error != null && error.getString("type").equals("Runtime Error") && error.getString("message").equals("Index out of bounds 5"));
+		check("call recorded", find(events, "fr.holo.jipl.Call", "function", "slow") != null);
+		check("parse recorded", find(events, "fr.holo.jipl.Parse", "phase", "parse") != null && find(events, "fr.holo.jipl.Parse", "phase", "lex") != null);
+		check("parse cache recorded", find(events, "fr.holo.jipl.ParseCache", null, null) != null);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	/* First event of the type whose field has the value, any event of the type when 'field' is null. */
+	private static RecordedEvent find(List<RecordedEvent> events, String type, String field, String value) {
+		for(RecordedEvent event:events)
+			if(event.getEventType().getName().equals(type) && (field == null || value.equals(event.getValue(field)))) return event;
+		return null;
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,73 @@
+package fr.holo.interpreter;
+
+import java.util.Random;
+
+/*
+ * Checks of kernels: columns evaluated as the interpreter evaluates each row, with NaN where a row fails.
+ *
+ *   javac -d out JIPL.java tests/KernelTests.java
+ *   java -cp out fr.holo.interpreter.KernelTests
+ */
+public final class KernelTests {
+	
+	private static int failed = 0;
+	
+	private KernelTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		int n = 1000;
+		Random random = new Random(7);
+		float[] a = new float[n], b = new float[n];
+		for(int i = 0; i < n; i++) {
+			a[i] = random.nextInt(200)-100;
+			b[i] = random.nextInt(20)+1;
+		}
+		
+		float[] sum = JIPL.Kernel.compile("a * 2 + b / 4 - 1", "a", "b").evaluate(a, b);
+		boolean same = true;
+		for(int i = 0; i < n; i++) same &= sum[i] == a[i]*2+b[i]/4-1;
+		check("arithmetic over columns", same);
+		
+		float[] compared = JIPL.Kernel.compile("a < b", "a", "b").evaluate(a, b);
+		same = true;
+		for(int i = 0; i < n; i++) same &= compared[i] == (a[i] < b[i]?1:0);
+		check("comparisons giving 1 or 0", same);
+		
+		float[] math = JIPL.Kernel.compile("sqrt(b) + abs(a) + PI", "a", "b").evaluate(a, b);
+		same = true;
+		for(int i = 0; i < n; i++) same &= Math.abs(math[i]-(float) (Math.sqrt(b[i])+Math.abs(a[i])+Math.PI)) < 1e-3;
+		check("math functions and constants", same);
+		
+		float[] divided = JIPL.Kernel.compile("1 / (a - a)", "a").evaluate(a);
+		check("division by zero giving NaN", Float.isNaN(divided[0]) && Float.isNaN(divided[n-1]));
+		
+		float[] constant = JIPL.Kernel.compile("2 * 3", "a").evaluate(a);
+		check("constant expression", constant.length == n && constant[0] == 6 && constant[n-1] == 6);
+		
+		float[] column = JIPL.Kernel.compile("a", "a").evaluate(a);
+		column[0] = 12345;
+		check("column given back as a copy", a[0] != 12345);
+		
+		try {
+			JIPL.Kernel.compile("a + 1\nb", "a", "b");
+			check("several statements refused", false);
+		} catch (IllegalArgumentException e) {
+			check("several statements refused", true);
+		}
+		try {
+			JIPL.Kernel.compile("a + b", "a", "b").evaluate(a, new float[3]);
+			check("columns of different lengths refused", false);
+		} catch (IllegalArgumentException e) {
+			check("columns of different lengths refused", true);
+		}
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
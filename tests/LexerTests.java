@@ -0,0 +1,47 @@
+package fr.holo.interpreter;
+
+import fr.holo.interpreter.JIPL.TokenBuffer;
+import fr.holo.interpreter.JIPL.TokenType;
+
+/*
+ * Checks of the token buffer: types, positions and lines of the tokens of a source, and the lookups by offset.
+ *
+ *   javac -d out JIPL.java tests/LexerTests.java
+ *   java -cp out fr.holo.interpreter.LexerTests
+ */
+public final class LexerTests {
+	
+	private static int failed = 0;
+	
+	private LexerTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		String source = "var x = 1.5\nprint(\"a b\", x >= 2)";
+		TokenBuffer tokens = JIPL.getEditableParseResult(source).getTokens();
+		
+		TokenType[] types = {TokenType.KEYWORD, TokenType.IDENTIFIER, TokenType.EQUALS, TokenType.FLOAT, TokenType.NLINE,
+			TokenType.IDENTIFIER, TokenType.LPAREN, TokenType.STRING, TokenType.COMMAS, TokenType.IDENTIFIER, TokenType.GREATER_EQUALS, TokenType.INT, TokenType.RPAREN, TokenType.END_OF_CODE};
+		boolean same = tokens.size() == types.length;
+		for(int i = 0; same && i < types.length; i++) same = tokens.type(i) == types[i];
+		check("types of the tokens", same);
+		
+		int print = 5;
+		check("position of a token", tokens.start(print) == source.indexOf("print") && tokens.length(print) == 5 && tokens.end(print) == source.indexOf('('));
+		check("lines of the tokens", tokens.line(0) == 0 && tokens.line(3) == 0 && tokens.line(print) == 1);
+		check("string token spans its quotes", source.substring(tokens.start(7), tokens.end(7)).contains("a b"));
+		check("token found by offset", tokens.find(source.indexOf("x >=")) == 9 && tokens.find(0) == 0);
+		check("line found by offset", tokens.lineOf(0) == 0 && tokens.lineOf(source.indexOf('\n')+1) == 1 && tokens.lineOf(source.length()-1) == 1);
+		
+		TokenBuffer bad = JIPL.getEditableParseResult("var y = 1 $ 2").getTokens();
+		check("illegal character reported", bad.getError() != null && JIPL.getEditableParseResult("var y = 1 $ 2").error != null);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,73 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.holo.interpreter.JIPL.Interpreter.RTResult;
+
+/*
+ * Checks of the limits of a run: steps, time, cancellation tokens and stop, each ending the run with its error.
+ *
+ *   javac -d out JIPL.java tests/LimitsTests.java
+ *   java -cp out fr.holo.interpreter.LimitsTests
+ */
+public final class LimitsTests {
+	
+	private static final String ENDLESS = "var n = 0\nwhile true { n = n + 1 }";
+	
+	private static int failed = 0;
+	
+	private LimitsTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		/* On an engine of its own, which the errors are reported to. */
+		PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+		final JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), quiet, quiet);
+		
+		JIPL.Execution execution = new JIPL.Execution(engine, new JIPL.Limits(1000, 0, null));
+		RTResult result = engine.run(JIPL.getParseResult(ENDLESS), JIPL.getGlobalContext(), execution);
+		check("steps", result.error instanceof JIPL.Error.LimitExceeded && result.error.getText().equals("More than 1000 steps") && execution.getSteps() == 1001);
+		
+		result = engine.run(JIPL.getParseResult("var n = 0\nwhile n < 100 { n = n + 1 }\nn"), JIPL.getGlobalContext(), new JIPL.Limits(1000, 0, null));
+		check("run within its steps", result.error == null);
+		
+		long start = System.nanoTime();
+		result = engine.run(ENDLESS, JIPL.getGlobalContext(), new JIPL.Limits(0, 200, null));
+		long millis = (System.nanoTime()-start)/1000000;
+		check("time", result.error instanceof JIPL.Error.LimitExceeded && result.error.getText().equals("More than 200 millis") && millis >= 200 && millis < 5000);
+		
+		start = System.nanoTime();
+		result = engine.run("wait(60000)", JIPL.getGlobalContext(), new JIPL.Limits(0, 200, null));
+		check("time spent waiting", result.error instanceof JIPL.Error.LimitExceeded && (System.nanoTime()-start)/1000000 < 5000);
+		
+		final JIPL.CancellationToken token = new JIPL.CancellationToken();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		Future<RTResult> first = pool.submit(new Callable<RTResult>() {
+			public RTResult call() { return engine.run(ENDLESS, JIPL.getGlobalContext(), new JIPL.Limits(0, 0, token)); }
+		});
+		Future<RTResult> second = pool.submit(new Callable<RTResult>() {
+			public RTResult call() { return engine.run("wait(60000)", JIPL.getGlobalContext(), new JIPL.Limits(0, 0, token)); }
+		});
+		Thread.sleep(200);
+		token.cancel();
+		check("token cancelling the runs", first.get().error instanceof JIPL.Error.Stop && second.get().error instanceof JIPL.Error.Stop);
+		pool.shutdown();
+		
+		result = engine.run("var n = 0\nwhile n < 10 { n = n + 1 }", JIPL.getGlobalContext(), new JIPL.Limits(0, 0, token));
+		check("token cancelling the runs after it", token.isCancelled() && result.error instanceof JIPL.Error.Stop);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
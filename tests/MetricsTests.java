@@ -0,0 +1,63 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Checks of the metrics: what a run counts and times, named scripts, build-in calls, and the view of the registry over JMX.
+ *
+ *   javac -d out JIPL.java tests/MetricsTests.java
+ *   java -cp out fr.holo.interpreter.MetricsTests
+ */
+public final class MetricsTests {
+	
+	private static int failed = 0;
+	
+	private MetricsTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		JIPL.Metrics metrics = new JIPL.Metrics();
+		JIPL.setMetrics(metrics);
+		metrics.setBuiltinTimings(true);
+		PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+		JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), quiet, quiet);
+		
+		String source = "function f(x) {\n\tvar y = x + 1\n\treturn y\n}\nvar n = 0\nwhile n < 10 {\n\tprint(f(n))\n\tn = n + 1\n}";
+		JIPL.Execution execution = new JIPL.Execution(engine, JIPL.Limits.NONE).named("counting");
+		engine.run(JIPL.getEditableParseResult(source), JIPL.getGlobalContext(), execution);
+		
+		check("runs timed", metrics.histogram("execution.nanos").getCount() == 1 && metrics.histogram("execution.nanos").getMax() > 0);
+		check("named runs timed apart", metrics.getHistograms().containsKey("execution.nanos.counting") && metrics.script("counting").getCount() == 1);
+		check("nodes and calls counted", metrics.counter("execution.nodes").get() == execution.getNodes() && execution.getNodes() > 0 && metrics.counter("execution.calls").get() == execution.getCalls());
+		check("build-in calls counted and timed", metrics.counter("builtin.calls.print").get() == 10 && metrics.histogram("builtin.nanos.print").getCount() == 10);
+		check("active runs back to 0", metrics.counter("executions.active").get() == 0);
+		
+		engine.run("var x = 1\nx.nothing()", JIPL.getGlobalContext());
+		engine.run("var = 1", JIPL.getGlobalContext());
+		check("errors counted by type", metrics.getCounters().keySet().toString().contains("errors.") && metrics.counter("errors.SyntaxError").get() == 1);
+		check("parses timed", metrics.histogram("parse.nanos").getCount() >= 2);
+		
+		for(int i = 0; i < JIPL.Metrics.SCRIPTS+10; i++) metrics.script("script"+i).record(1);
+		check("named scripts bounded", metrics.getHistograms().containsKey("execution.nanos.<other>") && !metrics.getHistograms().containsKey("execution.nanos.script"+(JIPL.Metrics.SCRIPTS+5)));
+		
+		ObjectName name = metrics.registerMBean("fr.holo.interpreter.tests:type=Metrics");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		check("counters over JMX", ((Long) server.getAttribute(name, "builtin.calls.print")) == 10);
+		check("histograms over JMX", ((Long) server.getAttribute(name, "execution.nanos.count")) == metrics.histogram("execution.nanos").getCount());
+		server.unregisterMBean(name);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
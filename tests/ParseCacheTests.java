@@ -0,0 +1,69 @@
+package fr.holo.interpreter;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.holo.interpreter.JIPL.Parser.ParseResult;
+
+/*
+ * Checks of the parse cache: results shared by source, holding the tree alone, and lookups from many threads at once.
+ *
+ *   javac -d out JIPL.java tests/ParseCacheTests.java
+ *   java -cp out fr.holo.interpreter.ParseCacheTests
+ */
+public final class ParseCacheTests {
+	
+	private static int failed = 0;
+	
+	private ParseCacheTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		String source = "var cached = 1\nprint(cached + 1)";
+		ParseResult first = JIPL.getParseResult(source), second = JIPL.getParseResult(new String(source.toCharArray()));
+		check("same source, same result", first == second);
+		check("cached result without tokens", first.getTokens() == null);
+		
+		ParseResult editable = JIPL.getEditableParseResult(source);
+		check("editable result with tokens", editable.getTokens() != null && editable != first);
+		ParseResult edited = JIPL.getParseResult(editable, source.indexOf("1\n"), 1, "2");
+		check("edit of an editable result", edited.getTokens() != null && edited.getTokens().source.equals("var cached = 2\nprint(cached + 1)"));
+		try {
+			JIPL.getParseResult(first, 0, 0, " ");
+			check("edit of a cached result refused", false);
+		} catch (IllegalArgumentException e) {
+			check("edit of a cached result refused", true);
+		}
+		
+		JIPL.ParseCache cache = new JIPL.ParseCache(2);
+		cache.put("a", first);
+		cache.put("b", first);
+		cache.get("a");
+		cache.put("c", first);
+		check("least recently used evicted", cache.get("b") == null && cache.get("a") == first && cache.get("c") == first && cache.size() == 2);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		ArrayList<Future<ParseResult>> results = new ArrayList<Future<ParseResult>>();
+		for(int i = 0; i < 64; i++) {
+			final String text = "print(" + (i%4) + ")";
+			results.add(pool.submit(new Callable<ParseResult>() {
+				public ParseResult call() { return JIPL.getParseResult(text); }
+			}));
+		}
+		boolean same = true;
+		for(int i = 0; i < results.size(); i++) same &= results.get(i).get() == JIPL.getParseResult("print(" + (i%4) + ")");
+		pool.shutdown();
+		check("results shared between threads", same);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,57 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/*
+ * Checks of the sampling profiler: the stacks of a profiled run in the collapsed format, its functions and lines in the report.
+ *
+ *   javac -d out JIPL.java tests/ProfilerTests.java
+ *   java -cp out fr.holo.interpreter.ProfilerTests
+ */
+public final class ProfilerTests {
+	
+	/* Most of the time spent in 'slow', called from 'outer' on line 9, the lines counting from 0. */
+	private static final String SOURCE = "function slow(n) {\n\tvar total = 0\n\tfor i = 0 to n {\n\t\ttotal = total + i\n\t}\n\treturn total\n}\nfunction outer(n) {\n\tvar t = 0\n\tt = slow(n)\n\treturn t\n}\nvar k = 0\nwhile k < 40 {\n\touter(20000)\n\tk = k + 1\n}";
+	
+	private static int failed = 0;
+	
+	private ProfilerTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+		JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), quiet, quiet);
+		
+		JIPL.Profiler profiler = new JIPL.Profiler(1);
+		JIPL.Execution execution = new JIPL.Execution(engine, JIPL.Limits.NONE).profile(profiler);
+		engine.run(JIPL.getParseResult(SOURCE), JIPL.getGlobalContext(), execution);
+		profiler.close();
+		
+		String collapsed = profiler.toCollapsed(), report = profiler.report();
+		check("samples taken", profiler.getSamples() > 10);
+		check("stacks from the main frame", collapsed.length() > 0 && collapsed.startsWith("<main>"));
+		check("stack of the slow function", collapsed.contains(";outer:9;slow:"));
+		long sum = 0;
+		for(String line:collapsed.split("\n")) sum += Long.parseLong(line.substring(line.lastIndexOf(' ')+1));
+		check("one stack per sample", sum == profiler.getSamples());
+		check("functions and lines in the report", report.contains("slow") && report.contains("outer:9") && report.contains(" samples every 1 millis"));
+		
+		profiler.reset();
+		check("reset", profiler.getSamples() == 0 && profiler.toCollapsed().isEmpty());
+		
+		JIPL.Profiler idle = new JIPL.Profiler(1);
+		engine.run(JIPL.getParseResult(SOURCE), JIPL.getGlobalContext(), new JIPL.Execution(engine, JIPL.Limits.NONE));
+		idle.close();
+		check("runs not profiled left alone", idle.getSamples() == 0);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,80 @@
+package fr.holo.interpreter;
+
+import java.util.Random;
+
+import fr.holo.interpreter.JIPL.Parser.ParseResult;
+import fr.holo.interpreter.JIPL.TokenBuffer;
+
+/*
+ * Checks of incremental parsing: after every edit, the tokens and the tree of the edited result are the ones of the edited source parsed from scratch.
+ *
+ *   javac -d out JIPL.java tests/ReparseTests.java
+ *   java -cp out fr.holo.interpreter.ReparseTests
+ */
+public final class ReparseTests {
+	
+	private static final String SOURCE = "var total = 0\nfor i = 0 to 10 {\n\ttotal = total + i * 2\n}\nfunction half(x): x / 2\nprint(half(total))\nvar names = [\"a\", \"b\"]\nif total > 10 { print(names) } else { print(0) }";
+	/* Pieces of source inserted by the random edits, whole tokens or not. */
+	private static final String[] PIECES = {"1", " ", "\n", "x", "+ 3", "(", ")", "\"s\"", "var y = 2\n", "{", "}", "print(total)\n", "to", ":"};
+	
+	private static int failed = 0;
+	
+	private ReparseTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		ParseResult pr = JIPL.getEditableParseResult(SOURCE);
+		check("tokens of a new source", sameTokens(pr.getTokens(), JIPL.getEditableParseResult(SOURCE).getTokens()));
+		
+		ParseResult edited = JIPL.getParseResult(pr, SOURCE.indexOf("10"), 2, "20");
+		check("edit of a number", same(edited, SOURCE.replace("0 to 10", "0 to 20")));
+		edited = JIPL.getParseResult(edited, 0, 0, "var first = 1\n");
+		check("line added before the others", same(edited, "var first = 1\n" + SOURCE.replace("0 to 10", "0 to 20")));
+		
+		/* Random edits, each one applied to the result of the one before. */
+		Random random = new Random(42);
+		String text = SOURCE;
+		ParseResult current = pr;
+		int mismatches = 0, errors = 0;
+		for(int i = 0; i < 500; i++) {
+			int offset = random.nextInt(text.length()+1);
+			int removed = random.nextInt(Math.min(4, text.length()-offset)+1);
+			String inserted = random.nextBoolean()?PIECES[random.nextInt(PIECES.length)]:"";
+			current = JIPL.getParseResult(current, offset, removed, inserted);
+			text = text.substring(0, offset) + inserted + text.substring(offset+removed);
+			if(!same(current, text)) mismatches++;
+			if(current.error != null) errors++;
+			/* Back to a source that parses now and then, as an editor would be. */
+			if(i % 50 == 49) {
+				current = JIPL.getParseResult(current, 0, text.length(), SOURCE);
+				text = SOURCE;
+			}
+		}
+		check("random edits parsed as from scratch", mismatches == 0);
+		check("random edits making errors", errors > 0);
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	/* Whether the result has the tokens, the tree and the error of 'text' parsed from scratch. */
+	private static boolean same(ParseResult pr, String text) {
+		ParseResult expected = JIPL.getEditableParseResult(text);
+		if(pr.getTokens() == null || !pr.getTokens().getSource().equals(text)) return false;
+		if((pr.error == null) != (expected.error == null)) return false;
+		if(pr.error != null) return pr.error.getText().equals(expected.error.getText());
+		return sameTokens(pr.getTokens(), expected.getTokens()) && String.valueOf(pr.node).equals(String.valueOf(expected.node));
+	}
+	
+	private static boolean sameTokens(TokenBuffer a, TokenBuffer b) {
+		if(a.size() != b.size()) return false;
+		for(int i = 0; i < a.size(); i++)
+			if(a.type(i) != b.type(i) || a.start(i) != b.start(i) || a.length(i) != b.length(i) || a.line(i) != b.line(i)) return false;
+		return true;
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
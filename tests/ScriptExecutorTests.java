@@ -0,0 +1,68 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+import fr.holo.interpreter.JIPL.Interpreter.RTResult;
+
+/*
+ * Checks of the script executor: results of many scripts at once, parse errors in the result, and cancellation stopping a run.
+ *
+ *   javac -d out JIPL.java tests/ScriptExecutorTests.java
+ *   java -cp out fr.holo.interpreter.ScriptExecutorTests
+ */
+public final class ScriptExecutorTests {
+	
+	private static int failed = 0;
+	
+	private ScriptExecutorTests() {}
+	
+	public static void main(String[] args) throws Exception {
+		try(JIPL.ScriptExecutor executor = new JIPL.ScriptExecutor()) {
+			check("virtual threads when the runtime has them", executor.isVirtual() == (Runtime.version().feature() >= 21));
+			
+			ArrayList<Future<RTResult>> results = new ArrayList<Future<RTResult>>();
+			for(int i = 0; i < 1000; i++)
+				results.add(executor.submit("var n = " + i + "\nn * 2", JIPL.getGlobalContext()));
+			boolean all = true;
+			for(int i = 0; i < results.size(); i++) {
+				RTResult result = results.get(i).get();
+				all &= result.error == null && result.value.toString().equals("[" + i + ", " + i*2 + "]");
+			}
+			check("results of many scripts", all);
+			
+			/* On an engine of its own, which the error is reported to. */
+			PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+			JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), quiet, quiet);
+			check("parse error in the result", executor.submit(engine, "var = 1", JIPL.getGlobalContext()).get().error instanceof JIPL.Error.SyntaxError);
+			
+			Future<RTResult> endless = executor.submit("while true { 0 }", JIPL.getGlobalContext());
+			Thread.sleep(100);
+			check("cancelled while running", endless.cancel(true));
+			try {
+				endless.get();
+				check("cancelled future without a result", false);
+			} catch (CancellationException e) {
+				check("cancelled future without a result", true);
+			}
+			
+			/* The run itself ends too, so that the queue and the threads empty. */
+			long deadline = System.currentTimeMillis()+5000;
+			while(JIPL.getMetrics().counter("executions.active").get() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+			check("cancelled run stopped", JIPL.getMetrics().counter("executions.active").get() == 0 && JIPL.getMetrics().counter("executions.queued").get() == 0);
+		}
+		
+		System.out.println(failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static void check(String name, boolean ok) {
+		if(!ok) failed++;
+		System.out.println((ok?"ok      ":"FAILED  ") + name);
+	}
+	
+}
@@ -0,0 +1,91 @@
+package fr.holo.interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/*
+ * Runs every script of a directory and compares what it prints, output and errors together, with the file of the same name ending in ".out".
+ * A first line "# limits: steps=<n> millis=<n> bytes=<n>" runs the script under those Limits, any of them may be left out.
+ *
+ *   javac -d out JIPL.java tests/ScriptTests.java
+ *   java -cp out fr.holo.interpreter.ScriptTests [directory, tests by default] [--update]
+ *
+ * Exits with 1 when a script prints anything else. --update writes what every script prints as its expected output instead.
+ */
+public final class ScriptTests {
+	
+	private static final String LIMITS = "# limits:";
+	
+	private ScriptTests() {}
+	
+	public static void main(String[] args) throws IOException {
+		File directory = new File("tests");
+		boolean update = false;
+		for(String arg:args) {
+			if(arg.equals("--update")) update = true;
+			else directory = new File(arg);
+		}
+		
+		File[] scripts = directory.listFiles((dir, name) -> name.endsWith(".jipl"));
+		if(scripts == null || scripts.length == 0) throw new IllegalArgumentException("No script in " + directory);
+		Arrays.sort(scripts);
+		
+		int failed = 0;
+		for(File script:scripts) {
+			String name = script.getName().substring(0, script.getName().length()-".jipl".length());
+			File expected = new File(directory, name + ".out");
+			String actual = run(read(script));
+			
+			if(update) {
+				Files.write(expected.toPath(), actual.getBytes(StandardCharsets.UTF_8));
+				System.out.println("updated " + name);
+			} else if(expected.exists() && read(expected).equals(actual)) {
+				System.out.println("ok      " + name);
+			} else {
+				failed++;
+				System.out.println("FAILED  " + name);
+				System.out.println(expected.exists()?"--- expected\n" + read(expected) + "--- actual\n" + actual:"--- no " + expected.getName() + ", actual\n" + actual);
+			}
+		}
+		
+		System.out.println(scripts.length + " scripts, " + failed + " failed");
+		if(failed > 0) System.exit(1);
+	}
+	
+	private static String run(String source) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream print = new PrintStream(bytes, true, "UTF-8");
+		JIPL.Engine engine = new JIPL.Engine(new ByteArrayInputStream(new byte[0]), print, print);
+		engine.run(source, JIPL.getGlobalContext(), limits(source));
+		print.flush();
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+	}
+	
+	private static JIPL.Limits limits(String source) {
+		if(!source.startsWith(LIMITS)) return JIPL.Limits.NONE;
+		long steps = 0, millis = 0, bytes = 0;
+		String line = source.substring(LIMITS.length(), source.indexOf('\n')<0?source.length():source.indexOf('\n'));
+		for(String bound:line.trim().split("\\s+")) {
+			String[] pair = bound.split("=");
+			long value = Long.parseLong(pair[1]);
+			switch(pair[0]) {
+				case "steps": steps = value; break;
+				case "millis": millis = value; break;
+				case "bytes": bytes = value; break;
+				default: throw new IllegalArgumentException("Unknown limit " + pair[0]);
+			}
+		}
+		return new JIPL.Limits(steps, millis, bytes, null);
+	}
+	
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).replace("\r\n", "\n");
+	}
+	
+}